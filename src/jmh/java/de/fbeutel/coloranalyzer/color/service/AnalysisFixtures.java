@@ -0,0 +1,110 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorDistribution;
+import de.fbeutel.coloranalyzer.color.domain.ColorDistributionEntry;
+import de.fbeutel.coloranalyzer.color.domain.LabColor;
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
+import de.fbeutel.coloranalyzer.color.domain.RgbColor;
+
+// the fixture images decoded at full resolution, with the intermediate results each analysis step starts from, so
+// every benchmark measures one step only
+@State(Scope.Benchmark)
+public class AnalysisFixtures {
+
+  // colors taken evenly from all fixture images for the per color benchmarks
+  private static final int SAMPLE_SIZE = 4096;
+
+  final ImageService imageService = new ImageService();
+  final ColorConversionService colorConversionService = new ColorConversionService(false);
+  final ColorDistanceService colorDistanceService = new ColorDistanceService(colorConversionService);
+  final ImageBorderService imageBorderService = new ImageBorderService(imageService, colorDistanceService);
+  final ColorDistributionService colorDistributionService = new ColorDistributionService(imageService,
+    new BorderColorFilterService(colorConversionService, colorDistanceService), new MedianCutService(),
+    new ColorGroupingService(imageService, colorDistanceService, 5, 10, false), 1_000_000);
+  ImageScoringService imageScoringService;
+
+  PixelBuffer[] pixelBuffers;
+  RgbColor[] borderColors;
+  ColorDistribution[] distributions;
+  RgbColor[] sampleColors;
+  LabColor[] sampleLabColors;
+  LabColor[] paletteLabColors;
+
+  @Setup(Level.Trial)
+  public void load() throws IOException {
+    final Path fixtures = Paths.get(System.getProperty("fixtures", "src/jmh/resources/fixtures"));
+    final ColorTileService colorTileService = colorTileService(colorConversionService,
+      fixtures.resolve("color-tiles.json"));
+    imageScoringService = new ImageScoringService(colorDistanceService, colorConversionService, colorTileService,
+      Integer.MAX_VALUE);
+
+    final List<Path> images;
+    try (Stream<Path> files = Files.list(fixtures.resolve("images"))) {
+      images = files.sorted().toList();
+    }
+    if (images.isEmpty()) {
+      throw new IllegalStateException("no fixture images in " + fixtures.resolve("images").toAbsolutePath());
+    }
+
+    pixelBuffers = images.stream().map(this::decode).toArray(PixelBuffer[]::new);
+    borderColors = Stream.of(pixelBuffers)
+      .map(pixels -> imageBorderService.determineBorderColor(pixels).getBorderColor())
+      .toArray(RgbColor[]::new);
+    distributions = new ColorDistribution[pixelBuffers.length];
+    for (int image = 0; image < pixelBuffers.length; image++) {
+      distributions[image] = colorDistributionService.colorDistribution(pixelBuffers[image], borderColors[image]);
+    }
+
+    sampleColors = new RgbColor[SAMPLE_SIZE];
+    final int samplesPerImage = (SAMPLE_SIZE + pixelBuffers.length - 1) / pixelBuffers.length;
+    for (int sample = 0; sample < SAMPLE_SIZE; sample++) {
+      final PixelBuffer pixels = pixelBuffers[sample % pixelBuffers.length];
+      final long offset = (long) (sample / pixelBuffers.length) * pixels.size() / samplesPerImage;
+      sampleColors[sample] = RgbColor.fromPackedRgb(pixels.getPixels()[(int) offset]);
+    }
+    sampleLabColors = Stream.of(sampleColors).map(colorConversionService::toLab).toArray(LabColor[]::new);
+    paletteLabColors = Stream.of(distributions)
+      .flatMap(distribution -> distribution.getColorDistributionEntries().stream())
+      .map(ColorDistributionEntry::getColor)
+      .map(colorConversionService::toLab)
+      .toArray(LabColor[]::new);
+  }
+
+  // scores against the catalog of the tiles file, the tile service is never asked
+  static ColorTileService colorTileService(final ColorConversionService colorConversionService, final Path tilesFile) {
+    final ColorTileProperties colorTileProperties = new ColorTileProperties();
+    colorTileProperties.setUrl("http://localhost:0/unused");
+    colorTileProperties.setSnapshotFile(tilesFile.toString());
+    colorTileProperties.setAwaitTimeout(Duration.ZERO);
+    return new ColorTileService(new RestTemplateBuilder(), new ObjectMapper(), colorConversionService,
+      colorTileProperties);
+  }
+
+  private PixelBuffer decode(final Path image) {
+    try (ImageInputStream input = ImageIO.createImageInputStream(image.toFile())) {
+      return imageService.toPixelBuffer(imageService.decode(input, 0));
+    } catch (IOException exception) {
+      throw new UncheckedIOException("could not decode fixture image " + image, exception);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// prints time and allocation per operation of two jmh json result files side by side, e.g. from two commits
+public class BenchmarkComparison {
+
+  private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+  public static void main(final String[] args) throws IOException {
+    if (args.length != 2) {
+      throw new IllegalArgumentException("usage: BenchmarkComparison <baseline.json> <candidate.json>");
+    }
+
+    final Map<String, JsonNode> baseline = read(Paths.get(args[0]));
+    final Map<String, JsonNode> candidate = read(Paths.get(args[1]));
+
+    System.out.printf("%-60s %14s %14s %9s %14s %14s %9s%n", "benchmark", "baseline", "candidate", "time",
+      "baseline B/op", "candidate B/op", "alloc");
+    candidate.forEach((name, result) -> {
+      final JsonNode baselineResult = baseline.get(name);
+      final double time = result.path("primaryMetric").path("score").asDouble();
+      final double allocation = allocation(result);
+      if (baselineResult == null) {
+        System.out.printf("%-60s %14s %14.3f %9s %14s %14.0f %9s%n", name, "-", time, "new", "-", allocation, "new");
+        return;
+      }
+
+      final double baselineTime = baselineResult.path("primaryMetric").path("score").asDouble();
+      final double baselineAllocation = allocation(baselineResult);
+      System.out.printf("%-60s %14.3f %14.3f %9s %14.0f %14.0f %9s%n", name, baselineTime, time,
+        change(baselineTime, time), baselineAllocation, allocation, change(baselineAllocation, allocation));
+    });
+    baseline.keySet().stream()
+      .filter(name -> !candidate.containsKey(name))
+      .forEach(name -> System.out.printf("%-60s %14s%n", name, "removed"));
+  }
+
+  // benchmark name plus its parameters, the score unit is part of the name so a changed unit is not compared
+  private static Map<String, JsonNode> read(final Path file) throws IOException {
+    final Map<String, JsonNode> results = new LinkedHashMap<>();
+    for (final JsonNode result : new ObjectMapper().readTree(file.toFile())) {
+      final StringBuilder name = new StringBuilder(result.path("benchmark").asText()
+        .replace(BenchmarkComparison.class.getPackageName() + ".", ""));
+      final Map<String, String> params = new TreeMap<>();
+      result.path("params").fields().forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+      params.forEach((param, value) -> name.append(' ').append(param).append('=').append(value));
+      name.append(" [").append(result.path("primaryMetric").path("scoreUnit").asText()).append(']');
+      results.put(name.toString(), result);
+    }
+    return results;
+  }
+
+  // jmh prefixes profiler metrics with a separator character, which differs between jmh versions
+  private static double allocation(final JsonNode result) {
+    final Iterator<Map.Entry<String, JsonNode>> metrics = result.path("secondaryMetrics").fields();
+    while (metrics.hasNext()) {
+      final Map.Entry<String, JsonNode> metric = metrics.next();
+      if (metric.getKey().endsWith(ALLOCATION_METRIC)) {
+        return metric.getValue().path("score").asDouble(Double.NaN);
+      }
+    }
+    return Double.NaN;
+  }
+
+  private static String change(final double baseline, final double candidate) {
+    if (Double.isNaN(baseline) || Double.isNaN(candidate) || baseline == 0) {
+      return "-";
+    }
+    return String.format("%+.1f%%", (candidate - baseline) / baseline * 100);
+  }
+}
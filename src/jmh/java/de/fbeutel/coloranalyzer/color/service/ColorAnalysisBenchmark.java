@@ -0,0 +1,68 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.fbeutel.coloranalyzer.color.domain.LabColor;
+import de.fbeutel.coloranalyzer.color.domain.RgbColor;
+
+// the analysis steps of the import over the checked in fixture images, one operation covers the whole fixture set
+// (all images, or all sampled colors) so results stay comparable as long as the fixtures do not change
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorAnalysisBenchmark {
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void toLab(final AnalysisFixtures fixtures, final Blackhole blackhole) {
+    for (final RgbColor color : fixtures.sampleColors) {
+      blackhole.consume(fixtures.colorConversionService.toLab(color));
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void calculateDistance(final AnalysisFixtures fixtures, final Blackhole blackhole) {
+    final LabColor[] palette = fixtures.paletteLabColors;
+    final LabColor[] samples = fixtures.sampleLabColors;
+    for (int sample = 0; sample < samples.length; sample++) {
+      blackhole.consume(fixtures.colorDistanceService.calculateDistance(samples[sample],
+        palette[sample % palette.length]));
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void determineBorderColor(final AnalysisFixtures fixtures, final Blackhole blackhole) {
+    for (int image = 0; image < fixtures.pixelBuffers.length; image++) {
+      blackhole.consume(fixtures.imageBorderService.determineBorderColor(fixtures.pixelBuffers[image]));
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void colorDistribution(final AnalysisFixtures fixtures, final Blackhole blackhole) {
+    for (int image = 0; image < fixtures.pixelBuffers.length; image++) {
+      blackhole.consume(fixtures.colorDistributionService.colorDistribution(fixtures.pixelBuffers[image],
+        fixtures.borderColors[image]));
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void calculateScores(final AnalysisFixtures fixtures, final Blackhole blackhole) {
+    for (int image = 0; image < fixtures.distributions.length; image++) {
+      blackhole.consume(fixtures.imageScoringService.calculateScores(fixtures.distributions[image]));
+    }
+  }
+}
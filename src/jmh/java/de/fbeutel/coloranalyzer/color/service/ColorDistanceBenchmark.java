@@ -0,0 +1,82 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.fbeutel.coloranalyzer.color.domain.LabColor;
+import de.fbeutel.coloranalyzer.color.domain.RgbColor;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorDistanceBenchmark {
+
+  private static final int BLOCK_SIZE = 512;
+
+  private ColorDistanceService colorDistanceService;
+
+  private LabColor reference;
+  private LabColor[] colors;
+  private double[] lightness;
+  private double[] a;
+  private double[] b;
+  private double[] distances;
+
+  @Setup
+  public void setUp() {
+    final ColorConversionService colorConversionService = new ColorConversionService(false);
+    colorDistanceService = new ColorDistanceService(colorConversionService);
+
+    final Random random = new Random(42);
+    reference = colorConversionService.toLab(RgbColor.builder().r(255).g(255).b(255).build());
+    colors = new LabColor[BLOCK_SIZE];
+    lightness = new double[BLOCK_SIZE];
+    a = new double[BLOCK_SIZE];
+    b = new double[BLOCK_SIZE];
+    distances = new double[BLOCK_SIZE];
+
+    for (int index = 0; index < BLOCK_SIZE; index++) {
+      colors[index] = colorConversionService.toLab(RgbColor.fromPackedRgb(random.nextInt(0x1000000)));
+      lightness[index] = colors[index].getL();
+      a[index] = colors[index].getA();
+      b[index] = colors[index].getB();
+    }
+
+    colorDistanceService.calculateDistances(reference, lightness, a, b, BLOCK_SIZE, distances);
+    for (int index = 0; index < BLOCK_SIZE; index++) {
+      final double scalarDistance = colorDistanceService.calculateDistance(colors[index], reference);
+      if (Math.abs(scalarDistance - distances[index]) > 1e-9) {
+        throw new IllegalStateException("batch distance " + distances[index] + " deviates from scalar distance " +
+          scalarDistance + " for " + colors[index]);
+      }
+    }
+  }
+
+  @Benchmark
+  public void scalarDistances(final Blackhole blackhole) {
+    for (final LabColor color : colors) {
+      blackhole.consume(colorDistanceService.calculateDistance(color, reference));
+    }
+  }
+
+  @Benchmark
+  public double[] batchDistances() {
+    colorDistanceService.calculateDistances(reference, lightness, a, b, BLOCK_SIZE, distances);
+    return distances;
+  }
+}
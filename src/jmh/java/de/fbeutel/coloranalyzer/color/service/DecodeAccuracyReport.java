@@ -0,0 +1,182 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
+import de.fbeutel.coloranalyzer.color.domain.BorderColorDeterminationResult;
+import de.fbeutel.coloranalyzer.color.domain.ColorDistribution;
+import de.fbeutel.coloranalyzer.color.domain.ColorDistributionEntry;
+import de.fbeutel.coloranalyzer.color.domain.LabColor;
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
+import de.fbeutel.coloranalyzer.color.domain.TileScores;
+
+// compares palettes and tile scores of subsampled decodes against the full resolution analysis of every fixture image
+public class DecodeAccuracyReport {
+
+  private static final int TOP_TILES = 5;
+
+  private final ImageService imageService = new ImageService();
+  private final ColorConversionService colorConversionService = new ColorConversionService(false);
+  private final ColorDistanceService colorDistanceService = new ColorDistanceService(colorConversionService);
+  private final ImageBorderService imageBorderService = new ImageBorderService(imageService, colorDistanceService);
+  private final ColorDistributionService colorDistributionService = new ColorDistributionService(imageService,
+    new BorderColorFilterService(colorConversionService, colorDistanceService), new MedianCutService(),
+    new ColorGroupingService(imageService, colorDistanceService, 5, 10, false), 1_000_000);
+  private final ImageScoringService imageScoringService;
+
+  private DecodeAccuracyReport(final Path tilesFile) {
+    final ColorTileService colorTileService = AnalysisFixtures.colorTileService(colorConversionService, tilesFile);
+    this.imageScoringService = new ImageScoringService(colorDistanceService, colorConversionService, colorTileService,
+      Integer.MAX_VALUE);
+  }
+
+  public static void main(final String[] args) throws IOException {
+    final Path fixtures = Paths.get(args.length > 0 ? args[0] : "src/jmh/resources/fixtures");
+    final int[] pixelBudgets = Arrays.stream((args.length > 1 ? args[1] : "16384,65536,262144").split(","))
+      .mapToInt(Integer::parseInt)
+      .toArray();
+
+    final List<Path> images;
+    try (Stream<Path> files = Files.list(fixtures.resolve("images"))) {
+      images = files.sorted().toList();
+    }
+
+    new DecodeAccuracyReport(fixtures.resolve("color-tiles.json")).report(images, pixelBudgets);
+  }
+
+  private void report(final List<Path> images, final int[] pixelBudgets) throws IOException {
+    // one untimed pass so the first measured row does not pay for class loading and jit warm up
+    for (final Path image : images) {
+      analyze(image, 0);
+    }
+
+    final List<Analysis> fullAnalyses = new ArrayList<>();
+    for (final Path image : images) {
+      fullAnalyses.add(analyze(image, 0));
+    }
+
+    System.out.printf("%d fixture images, %d tiles, top %d tile overlap%n%n", images.size(),
+      fullAnalyses.get(0).scores.size(), TOP_TILES);
+    System.out.printf("%12s %14s %12s %14s %14s %12s %12s%n", "budget", "decoded px", "decode ms", "palette dE",
+      "score mae", "score max", "top overlap");
+    printRow("full", fullAnalyses, fullAnalyses);
+
+    for (final int pixelBudget : pixelBudgets) {
+      final List<Analysis> analyses = new ArrayList<>();
+      for (final Path image : images) {
+        analyses.add(analyze(image, pixelBudget));
+      }
+      printRow(String.valueOf(pixelBudget), analyses, fullAnalyses);
+    }
+  }
+
+  private void printRow(final String budget, final List<Analysis> analyses, final List<Analysis> fullAnalyses) {
+    double decodedPixels = 0;
+    double decodeMillis = 0;
+    double paletteDistance = 0;
+    double scoreMae = 0;
+    double scoreMax = 0;
+    double topOverlap = 0;
+
+    for (int index = 0; index < analyses.size(); index++) {
+      final Analysis analysis = analyses.get(index);
+      final Analysis fullAnalysis = fullAnalyses.get(index);
+      decodedPixels += analysis.pixels;
+      decodeMillis += analysis.decodeNanos / 1e6;
+      paletteDistance += paletteDistance(analysis.distribution, fullAnalysis.distribution);
+
+      final double[] scores = analysis.scores.getScores();
+      final double[] fullScores = fullAnalysis.scores.getScores();
+      double absoluteError = 0;
+      for (int tile = 0; tile < scores.length; tile++) {
+        absoluteError += Math.abs(scores[tile] - fullScores[tile]);
+        scoreMax = Math.max(scoreMax, Math.abs(scores[tile] - fullScores[tile]));
+      }
+      scoreMae += absoluteError / scores.length;
+      topOverlap += topTileOverlap(scores, fullScores);
+    }
+
+    final int count = analyses.size();
+    System.out.printf("%12s %14.0f %12.2f %14.3f %14.3f %12.3f %12.2f%n", budget, decodedPixels / count,
+      decodeMillis / count, paletteDistance / count, scoreMae / count, scoreMax, topOverlap / count);
+  }
+
+  private Analysis analyze(final Path image, final int pixelBudget) throws IOException {
+    final long decodeStart = System.nanoTime();
+    final BufferedImage decodedImage;
+    try (ImageInputStream input = ImageIO.createImageInputStream(image.toFile())) {
+      decodedImage = imageService.decode(input, pixelBudget);
+    }
+    final long decodeNanos = System.nanoTime() - decodeStart;
+
+    final PixelBuffer pixels = imageService.toPixelBuffer(decodedImage);
+    final BorderColorDeterminationResult borderColorResult = imageBorderService.determineBorderColor(pixels);
+    final ColorDistribution distribution = colorDistributionService.colorDistribution(pixels,
+      borderColorResult.getBorderColor());
+
+    return new Analysis(pixels.size(), decodeNanos, distribution, imageScoringService.calculateScores(distribution));
+  }
+
+  // share weighted distance from every palette color to the closest color of the reference palette, in both directions
+  private double paletteDistance(final ColorDistribution distribution, final ColorDistribution reference) {
+    return (directedPaletteDistance(distribution, reference) + directedPaletteDistance(reference, distribution)) / 2;
+  }
+
+  private double directedPaletteDistance(final ColorDistribution distribution, final ColorDistribution reference) {
+    final List<ColorDistributionEntry> entries = distribution.getColorDistributionEntries();
+    final double shareAmount = entries.stream().mapToInt(ColorDistributionEntry::getShare).sum();
+
+    double distance = 0;
+    for (final ColorDistributionEntry entry : entries) {
+      final LabColor color = colorConversionService.toLab(entry.getColor());
+      final double closest = reference.getColorDistributionEntries().stream()
+        .mapToDouble(referenceEntry -> colorDistanceService.calculateDistance(color,
+          colorConversionService.toLab(referenceEntry.getColor())))
+        .min()
+        .orElse(0);
+      distance += entry.getShare() / shareAmount * closest;
+    }
+    return distance;
+  }
+
+  private double topTileOverlap(final double[] scores, final double[] fullScores) {
+    final List<Integer> topTiles = topTiles(scores);
+    return topTiles(fullScores).stream().filter(topTiles::contains).count() / (double) TOP_TILES;
+  }
+
+  // lower scores are closer matches
+  private List<Integer> topTiles(final double[] scores) {
+    return IntStream.range(0, scores.length).boxed()
+      .sorted(Comparator.comparingDouble(tile -> scores[tile]))
+      .limit(TOP_TILES)
+      .toList();
+  }
+
+  private static final class Analysis {
+
+    private final int pixels;
+    private final long decodeNanos;
+    private final ColorDistribution distribution;
+    private final TileScores scores;
+
+    private Analysis(final int pixels, final long decodeNanos, final ColorDistribution distribution,
+                     final TileScores scores) {
+      this.pixels = pixels;
+      this.decodeNanos = decodeNanos;
+      this.distribution = distribution;
+      this.scores = scores;
+    }
+  }
+}
@@ -1,12 +1,23 @@
 package de.fbeutel.coloranalyzer;
 
+import java.time.Clock;
+
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
+@EnableScheduling
 @SpringBootApplication
 public class ColorAnalyzerApplication {
 
   public static void main(String[] args) {
     SpringApplication.run(ColorAnalyzerApplication.class, args);
   }
+
+  // leases and retry delays are computed from it, tests move it forward instead of waiting
+  @Bean
+  public Clock clock() {
+    return Clock.systemUTC();
+  }
 }
@@ -0,0 +1,45 @@
+package de.fbeutel.coloranalyzer.color.domain;
+
+import java.util.Map;
+
+import lombok.Value;
+
+@Value
+public class BorderColorFilter {
+
+  public static final int CELLS_PER_CHANNEL = 32;
+  public static final int CELL_COUNT = CELLS_PER_CHANNEL * CELLS_PER_CHANNEL * CELLS_PER_CHANNEL;
+  public static final int COLORS_PER_CELL = 8 * 8 * 8;
+
+  public static final byte OUTSIDE = 0;
+  public static final byte INSIDE = 1;
+  public static final byte AMBIGUOUS = 2;
+
+  private final int borderColor;
+  private final byte[] cells;
+  // one bit per color of an ambiguous cell, set if the color is within the allowed border color distance
+  private final Map<Integer, long[]> ambiguousCellMasks;
+
+  public static int cellIndex(final int packedRgb) {
+    return PixelBuffer.red(packedRgb) >>> 3 << 10 | PixelBuffer.green(packedRgb) >>> 3 << 5 | PixelBuffer.blue(packedRgb) >>> 3;
+  }
+
+  public static int cellOffset(final int packedRgb) {
+    return (PixelBuffer.red(packedRgb) & 7) << 6 | (PixelBuffer.green(packedRgb) & 7) << 3 | PixelBuffer.blue(packedRgb) & 7;
+  }
+
+  public static int cellColor(final int cellIndex, final int cellOffset) {
+    return PixelBuffer.pack((cellIndex >>> 10) << 3 | cellOffset >>> 6, (cellIndex >>> 5 & 31) << 3 | cellOffset >>> 3 & 7,
+      (cellIndex & 31) << 3 | cellOffset & 7);
+  }
+
+  public boolean isBorderColor(final int packedRgb) {
+    final int cellIndex = cellIndex(packedRgb);
+    final byte cell = cells[cellIndex];
+    if (cell == AMBIGUOUS) {
+      final int cellOffset = cellOffset(packedRgb);
+      return (ambiguousCellMasks.get(cellIndex)[cellOffset >>> 6] & 1L << cellOffset) != 0;
+    }
+    return cell == INSIDE;
+  }
+}
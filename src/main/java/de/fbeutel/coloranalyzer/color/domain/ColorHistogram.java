@@ -0,0 +1,45 @@
+package de.fbeutel.coloranalyzer.color.domain;
+
+import lombok.Getter;
+
+@Getter
+public class ColorHistogram {
+
+  public static final int BITS_PER_CHANNEL = 5;
+  public static final int BINS_PER_CHANNEL = 1 << BITS_PER_CHANNEL;
+  public static final int BIN_COUNT = BINS_PER_CHANNEL * BINS_PER_CHANNEL * BINS_PER_CHANNEL;
+
+  private final int[] counts = new int[BIN_COUNT];
+  // exact channel sums per bin, so palette colors are not limited to the bin resolution
+  private final long[] redSums = new long[BIN_COUNT];
+  private final long[] greenSums = new long[BIN_COUNT];
+  private final long[] blueSums = new long[BIN_COUNT];
+  private long totalCount;
+
+  public static int binIndex(final int packedRgb) {
+    return PixelBuffer.red(packedRgb) >>> 3 << 10 | PixelBuffer.green(packedRgb) >>> 3 << 5 | PixelBuffer.blue(packedRgb) >>> 3;
+  }
+
+  public static int binIndex(final int red, final int green, final int blue) {
+    return red << 10 | green << 5 | blue;
+  }
+
+  public void add(final int packedRgb) {
+    final int binIndex = binIndex(packedRgb);
+    counts[binIndex]++;
+    redSums[binIndex] += PixelBuffer.red(packedRgb);
+    greenSums[binIndex] += PixelBuffer.green(packedRgb);
+    blueSums[binIndex] += PixelBuffer.blue(packedRgb);
+    totalCount++;
+  }
+
+  public void addAll(final ColorHistogram other) {
+    for (int binIndex = 0; binIndex < BIN_COUNT; binIndex++) {
+      counts[binIndex] += other.counts[binIndex];
+      redSums[binIndex] += other.redSums[binIndex];
+      greenSums[binIndex] += other.greenSums[binIndex];
+      blueSums[binIndex] += other.blueSums[binIndex];
+    }
+    totalCount += other.totalCount;
+  }
+}
@@ -0,0 +1,14 @@
+package de.fbeutel.coloranalyzer.color.domain;
+
+import lombok.Value;
+
+@Value
+public class ColorPalette {
+
+  private final int[] colors;
+  private final int[] shares;
+
+  public int size() {
+    return colors.length;
+  }
+}
@@ -0,0 +1,56 @@
+package de.fbeutel.coloranalyzer.color.domain;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class ColorTileCatalog {
+
+  public static final ColorTileCatalog EMPTY = ColorTileCatalog.builder()
+    .names(new String[0])
+    .colors(new int[0])
+    .lightness(new double[0])
+    .a(new double[0])
+    .b(new double[0])
+    .build();
+
+  // content hash of the tile list, changes only if a tile was added, removed or recolored
+  private final String version;
+  private final String etag;
+
+  // one slot per tile, all arrays share the tile index
+  private final String[] names;
+  private final int[] colors;
+  private final double[] lightness;
+  private final double[] a;
+  private final double[] b;
+
+  public int size() {
+    return names.length;
+  }
+
+  // the given tiles only, in the given order, for scoring a part of the catalog
+  public ColorTileCatalog select(final int[] tiles) {
+    final String[] selectedNames = new String[tiles.length];
+    final int[] selectedColors = new int[tiles.length];
+    final double[] selectedLightness = new double[tiles.length];
+    final double[] selectedA = new double[tiles.length];
+    final double[] selectedB = new double[tiles.length];
+    for (int index = 0; index < tiles.length; index++) {
+      selectedNames[index] = names[tiles[index]];
+      selectedColors[index] = colors[tiles[index]];
+      selectedLightness[index] = lightness[tiles[index]];
+      selectedA[index] = a[tiles[index]];
+      selectedB[index] = b[tiles[index]];
+    }
+
+    return toBuilder()
+      .names(selectedNames)
+      .colors(selectedColors)
+      .lightness(selectedLightness)
+      .a(selectedA)
+      .b(selectedB)
+      .build();
+  }
+}
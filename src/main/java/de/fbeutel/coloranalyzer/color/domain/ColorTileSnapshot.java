@@ -0,0 +1,16 @@
+package de.fbeutel.coloranalyzer.color.domain;
+
+import java.util.List;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class ColorTileSnapshot {
+
+  private final String version;
+  private final String etag;
+  private final Map<String, List<ColorTile>> tiles;
+}
@@ -0,0 +1,29 @@
+package de.fbeutel.coloranalyzer.color.domain;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Document
+@Builder(toBuilder = true)
+public class ColorTileVersion {
+
+  // content hash of the tile catalog, see ColorTileCatalog
+  @Id
+  private final String version;
+
+  // tile order of this version, compact score arrays are indexed by it
+  private final String[] names;
+  private final int[] colors;
+
+  private final Instant registeredAt;
+
+  public int size() {
+    return names.length;
+  }
+}
@@ -0,0 +1,35 @@
+package de.fbeutel.coloranalyzer.color.domain;
+
+import lombok.Value;
+
+@Value
+public class PixelBuffer {
+
+  private final int width;
+  private final int height;
+  private final int[] pixels;
+
+  public static int red(final int packedRgb) {
+    return (packedRgb >>> 16) & 0xff;
+  }
+
+  public static int green(final int packedRgb) {
+    return (packedRgb >>> 8) & 0xff;
+  }
+
+  public static int blue(final int packedRgb) {
+    return packedRgb & 0xff;
+  }
+
+  public static int pack(final int red, final int green, final int blue) {
+    return red << 16 | green << 8 | blue;
+  }
+
+  public int getPixel(final int col, final int row) {
+    return pixels[row * width + col];
+  }
+
+  public int size() {
+    return pixels.length;
+  }
+}
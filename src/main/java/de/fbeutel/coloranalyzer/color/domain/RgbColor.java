@@ -1,7 +1,5 @@
 package de.fbeutel.coloranalyzer.color.domain;
 
-import java.util.Comparator;
-
 import lombok.Builder;
 import lombok.Data;
 
@@ -9,22 +7,20 @@ import lombok.Data;
 @Builder(toBuilder = true)
 public class RgbColor {
 
-  public static final Comparator<RgbColor> RED_COMPARATOR = Comparator.comparing(RgbColor::getR);
-  public static final Comparator<RgbColor> GREEN_COMPARATOR = Comparator.comparing(RgbColor::getG);
-  public static final Comparator<RgbColor> BLUE_COMPARATOR = Comparator.comparing(RgbColor::getB);
-
   private final long r;
   private final long g;
   private final long b;
 
-  public static Comparator<RgbColor> determineComparator(final RgbDimension rgbDimension) {
-    if (rgbDimension == RgbDimension.RED) {
-      return RED_COMPARATOR;
-    }
-    if (rgbDimension == RgbDimension.GREEN) {
-      return GREEN_COMPARATOR;
-    }
-    return BLUE_COMPARATOR;
+  public static RgbColor fromPackedRgb(final int packedRgb) {
+    return RgbColor.builder()
+      .r(PixelBuffer.red(packedRgb))
+      .g(PixelBuffer.green(packedRgb))
+      .b(PixelBuffer.blue(packedRgb))
+      .build();
+  }
+
+  public int toPackedRgb() {
+    return (int) r << 16 | (int) g << 8 | (int) b;
   }
 
   @Override
@@ -0,0 +1,30 @@
+package de.fbeutel.coloranalyzer.color.domain;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class TileScores {
+
+  private final String catalogVersion;
+
+  // names are shared with the tile catalog, scores hold one share weighted distance per tile index
+  private final String[] names;
+  private final double[] scores;
+
+  public int size() {
+    return scores.length;
+  }
+
+  public Map<String, Double> toMap() {
+    final Map<String, Double> scoreMap = new HashMap<>();
+    for (int tile = 0; tile < scores.length; tile++) {
+      scoreMap.put(names[tile], scores[tile]);
+    }
+    return scoreMap;
+  }
+}
@@ -0,0 +1,145 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import static de.fbeutel.coloranalyzer.color.domain.BorderColorFilter.AMBIGUOUS;
+import static de.fbeutel.coloranalyzer.color.domain.BorderColorFilter.CELLS_PER_CHANNEL;
+import static de.fbeutel.coloranalyzer.color.domain.BorderColorFilter.CELL_COUNT;
+import static de.fbeutel.coloranalyzer.color.domain.BorderColorFilter.COLORS_PER_CELL;
+import static de.fbeutel.coloranalyzer.color.domain.BorderColorFilter.INSIDE;
+import static de.fbeutel.coloranalyzer.color.service.ColorConversionService.labA;
+import static de.fbeutel.coloranalyzer.color.service.ColorConversionService.labB;
+import static de.fbeutel.coloranalyzer.color.service.ColorConversionService.labL;
+import static de.fbeutel.coloranalyzer.color.service.ImageBorderService.ALLOWED_BORDER_COLOR_DISTANCE;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import de.fbeutel.coloranalyzer.color.domain.BorderColorFilter;
+
+@Slf4j
+@Service
+public class BorderColorFilterService {
+
+  private static final int MAX_CACHED_FILTERS = 64;
+
+  // cells are explored as long as they contain a color closer than this, so the flood fill does not stop at cell
+  // boundaries which merely touch the region around the border color
+  private static final double EXPLORATION_DISTANCE = ALLOWED_BORDER_COLOR_DISTANCE + 3.0;
+
+  private final ColorConversionService colorConversionService;
+  private final ColorDistanceService colorDistanceService;
+
+  private final Map<Integer, BorderColorFilter> filterCache = Collections.synchronizedMap(
+    new LinkedHashMap<Integer, BorderColorFilter>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Integer, BorderColorFilter> eldest) {
+        return size() > MAX_CACHED_FILTERS;
+      }
+    });
+
+  public BorderColorFilterService(final ColorConversionService colorConversionService,
+                                  final ColorDistanceService colorDistanceService) {
+    this.colorConversionService = colorConversionService;
+    this.colorDistanceService = colorDistanceService;
+  }
+
+  public BorderColorFilter borderColorFilter(final int borderColor) {
+    final BorderColorFilter cachedFilter = filterCache.get(borderColor);
+    if (cachedFilter != null) {
+      return cachedFilter;
+    }
+
+    // concurrent misses for the same color build identical filters, so the last put winning is fine
+    final BorderColorFilter filter = buildFilter(borderColor);
+    filterCache.put(borderColor, filter);
+    return filter;
+  }
+
+  private BorderColorFilter buildFilter(final int borderColor) {
+    final long borderLab = colorConversionService.toPackedLab(borderColor);
+
+    final byte[] cells = new byte[CELL_COUNT];
+    final Map<Integer, long[]> ambiguousCellMasks = new HashMap<>();
+    final boolean[] visited = new boolean[CELL_COUNT];
+
+    final double[] lightness = new double[COLORS_PER_CELL];
+    final double[] a = new double[COLORS_PER_CELL];
+    final double[] b = new double[COLORS_PER_CELL];
+    final double[] distances = new double[COLORS_PER_CELL];
+
+    // flood fill from the cell of the border color, every cell never reached stays OUTSIDE
+    final ArrayDeque<Integer> cellsToVisit = new ArrayDeque<>();
+    final int startCell = BorderColorFilter.cellIndex(borderColor);
+    visited[startCell] = true;
+    cellsToVisit.add(startCell);
+
+    while (!cellsToVisit.isEmpty()) {
+      final int cellIndex = cellsToVisit.poll();
+
+      for (int cellOffset = 0; cellOffset < COLORS_PER_CELL; cellOffset++) {
+        final long packedLab = colorConversionService.toPackedLab(BorderColorFilter.cellColor(cellIndex, cellOffset));
+        lightness[cellOffset] = labL(packedLab);
+        a[cellOffset] = labA(packedLab);
+        b[cellOffset] = labB(packedLab);
+      }
+      colorDistanceService.calculateDistances(labL(borderLab), labA(borderLab), labB(borderLab), lightness, a, b,
+        COLORS_PER_CELL, distances);
+
+      final long[] mask = new long[COLORS_PER_CELL / 64];
+      int insideCount = 0;
+      double minDistance = Double.MAX_VALUE;
+      for (int cellOffset = 0; cellOffset < COLORS_PER_CELL; cellOffset++) {
+        if (!(distances[cellOffset] > ALLOWED_BORDER_COLOR_DISTANCE)) {
+          mask[cellOffset >>> 6] |= 1L << cellOffset;
+          insideCount++;
+        }
+        minDistance = Math.min(minDistance, distances[cellOffset]);
+      }
+
+      if (insideCount == COLORS_PER_CELL) {
+        cells[cellIndex] = INSIDE;
+      } else if (insideCount > 0) {
+        cells[cellIndex] = AMBIGUOUS;
+        ambiguousCellMasks.put(cellIndex, mask);
+      }
+
+      if (minDistance <= EXPLORATION_DISTANCE) {
+        visitNeighbours(cellIndex, visited, cellsToVisit);
+      }
+    }
+
+    return new BorderColorFilter(borderColor, cells, ambiguousCellMasks);
+  }
+
+  private void visitNeighbours(final int cellIndex, final boolean[] visited, final ArrayDeque<Integer> cellsToVisit) {
+    final int red = cellIndex >>> 10;
+    final int green = cellIndex >>> 5 & 31;
+    final int blue = cellIndex & 31;
+
+    visitCell(red - 1, green, blue, visited, cellsToVisit);
+    visitCell(red + 1, green, blue, visited, cellsToVisit);
+    visitCell(red, green - 1, blue, visited, cellsToVisit);
+    visitCell(red, green + 1, blue, visited, cellsToVisit);
+    visitCell(red, green, blue - 1, visited, cellsToVisit);
+    visitCell(red, green, blue + 1, visited, cellsToVisit);
+  }
+
+  private void visitCell(final int red, final int green, final int blue, final boolean[] visited,
+                         final ArrayDeque<Integer> cellsToVisit) {
+    if (red < 0 || green < 0 || blue < 0 || red >= CELLS_PER_CHANNEL || green >= CELLS_PER_CHANNEL ||
+      blue >= CELLS_PER_CHANNEL) {
+      return;
+    }
+    final int cellIndex = red << 10 | green << 5 | blue;
+    if (!visited[cellIndex]) {
+      visited[cellIndex] = true;
+      cellsToVisit.add(cellIndex);
+    }
+  }
+}
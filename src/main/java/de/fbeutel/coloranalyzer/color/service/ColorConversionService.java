@@ -2,8 +2,12 @@ package de.fbeutel.coloranalyzer.color.service;
 
 import static de.fbeutel.coloranalyzer.color.domain.XyzColor.XYZ_D65;
 
-import org.apache.commons.math3.linear.MatrixUtils;
-import org.apache.commons.math3.linear.RealMatrix;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import lombok.extern.slf4j.Slf4j;
@@ -16,70 +20,150 @@ import de.fbeutel.coloranalyzer.color.domain.XyzColor;
 @Service
 public class ColorConversionService {
 
+  private static final double[][] RGB_TO_XYZ = {
+    {0.4124564, 0.3575761, 0.1804375},
+    {0.2126729, 0.7151522, 0.0721750},
+    {0.0193339, 0.1191920, 0.9503041},
+  };
+
+  private static final double[] LINEARIZED_CHANNELS = IntStream.range(0, 256)
+    .mapToDouble(channel -> invCompand(channel / 255.0))
+    .toArray();
+
+  // the lab cache is split into one page per red value, each page holding all green/blue combinations, pages are
+  // allocated on first use with 512 kb each, 128 mb once all 2^24 colors were converted or the table was precomputed
+  private static final int PAGE_COUNT = 256;
+  private static final int PAGE_SIZE = 256 * 256;
+
+  // packed lab layout: bit 48 marks a populated slot, then l, a and b in hundredths as 16 bit signed values, so a
+  // cached component differs from the exact conversion by at most 0.005
+  private static final long POPULATED = 1L << 48;
+  private static final double LAB_SCALE = 100.0;
+
+  // opaque access keeps 64 bit slots from tearing on any jvm, plain long writes are only atomic on 64 bit jvms
+  private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private final AtomicReferenceArray<long[]> labPages = new AtomicReferenceArray<>(PAGE_COUNT);
+
+  public ColorConversionService(@Value("${color-analyzer.conversion.precompute-lab-table:false}") final boolean precomputeLabTable) {
+    if (precomputeLabTable) {
+      precomputeLabTable();
+    }
+  }
+
   public LabColor toLab(final RgbColor rgbColor) {
-    return toLab(toXyz(rgbColor));
+    final long packedLab = toPackedLab(rgbColor.toPackedRgb());
+
+    return LabColor.builder()
+      .l(labL(packedLab))
+      .a(labA(packedLab))
+      .b(labB(packedLab))
+      .build();
   }
 
-  public XyzColor toXyz(final RgbColor rgbColor) {
-    final double[][] MUTATION_INPUT = {
-      {0.4124564, 0.3575761, 0.1804375},
-      {0.2126729, 0.7151522, 0.0721750},
-      {0.0193339, 0.1191920, 0.9503041},
-    };
+  public float[] toLab(final int packedRgb, final float[] out) {
+    final long packedLab = toPackedLab(packedRgb);
+
+    out[0] = (float) labL(packedLab);
+    out[1] = (float) labA(packedLab);
+    out[2] = (float) labB(packedLab);
+    return out;
+  }
+
+  public long toPackedLab(final int packedRgb) {
+    final int rgb = packedRgb & 0xffffff;
+    final long[] page = labPage(rgb >>> 16);
+    final int slot = rgb & 0xffff;
+
+    // concurrent writers always store the same value for a slot, so a lost race only costs a recomputation
+    long packedLab = (long) SLOTS.getOpaque(page, slot);
+    if (packedLab == 0) {
+      packedLab = computePackedLab(rgb);
+      SLOTS.setOpaque(page, slot, packedLab);
+    }
+    return packedLab;
+  }
 
-    final double[][] rgbInput = {
-      {invCompand(rgbColor.getR() / 255.0)},
-      {invCompand(rgbColor.getG() / 255.0)},
-      {invCompand(rgbColor.getB() / 255.0)},
-    };
+  public static double labL(final long packedLab) {
+    return (short) (packedLab >>> 32) / LAB_SCALE;
+  }
 
-    final RealMatrix inputMatrix = MatrixUtils.createRealMatrix(rgbInput);
-    final RealMatrix mutationMatrix = MatrixUtils.createRealMatrix(MUTATION_INPUT);
+  public static double labA(final long packedLab) {
+    return (short) (packedLab >>> 16) / LAB_SCALE;
+  }
 
-    final RealMatrix mutationResult = mutationMatrix.multiply(inputMatrix);
+  public static double labB(final long packedLab) {
+    return (short) packedLab / LAB_SCALE;
+  }
+
+  public XyzColor toXyz(final RgbColor rgbColor) {
+    final double red = LINEARIZED_CHANNELS[(int) rgbColor.getR()];
+    final double green = LINEARIZED_CHANNELS[(int) rgbColor.getG()];
+    final double blue = LINEARIZED_CHANNELS[(int) rgbColor.getB()];
 
     return XyzColor.builder()
-      .x(Math.round(mutationResult.getEntry(0, 0) * 100 * 100) / 100.0)
-      .y(Math.round(mutationResult.getEntry(1, 0) * 100 * 100) / 100.0)
-      .z(Math.round(mutationResult.getEntry(2, 0) * 100 * 100) / 100.0)
+      .x(xyzComponent(0, red, green, blue))
+      .y(xyzComponent(1, red, green, blue))
+      .z(xyzComponent(2, red, green, blue))
       .build();
   }
 
-  private LabColor toLab(final XyzColor xyzColor) {
-    final double lightnessCorrectedX = xyzColor.getX() / XYZ_D65[0];
-    final double lightnessCorrectedY = xyzColor.getY() / XYZ_D65[1];
-    final double lightnessCorrectedZ = xyzColor.getZ() / XYZ_D65[2];
-
-    final double variableX;
-    final double variableY;
-    final double variableZ;
+  private void precomputeLabTable() {
+    final long startTime = System.currentTimeMillis();
+    IntStream.range(0, PAGE_COUNT).parallel().forEach(red -> {
+      final long[] page = labPage(red);
+      for (int slot = 0; slot < PAGE_SIZE; slot++) {
+        SLOTS.setOpaque(page, slot, computePackedLab(red << 16 | slot));
+      }
+    });
+    log.info("precomputed lab table in " + (System.currentTimeMillis() - startTime) + " ms");
+  }
 
-    if (lightnessCorrectedX > 0.008856) {
-      variableX = Math.cbrt(lightnessCorrectedX);
-    } else {
-      variableX = (903.3 * lightnessCorrectedX + 16) / 116;
+  private long[] labPage(final int red) {
+    final long[] page = labPages.get(red);
+    if (page != null) {
+      return page;
     }
+    labPages.compareAndSet(red, null, new long[PAGE_SIZE]);
+    return labPages.get(red);
+  }
 
-    if (lightnessCorrectedY > 0.008856) {
-      variableY = Math.cbrt(lightnessCorrectedY);
-    } else {
-      variableY = (903.3 * lightnessCorrectedY + 16) / 116;
-    }
+  static long computePackedLab(final int rgb) {
+    final double[] lab = computeLab(rgb);
+    final long l = Math.round(lab[0] * LAB_SCALE);
+    final long a = Math.round(lab[1] * LAB_SCALE);
+    final long b = Math.round(lab[2] * LAB_SCALE);
 
-    if (lightnessCorrectedZ > 0.008856) {
-      variableZ = Math.cbrt(lightnessCorrectedZ);
-    } else {
-      variableZ = (903.3 * lightnessCorrectedZ + 16) / 116;
-    }
+    return POPULATED | (l & 0xffff) << 32 | (a & 0xffff) << 16 | b & 0xffff;
+  }
 
-    return LabColor.builder()
-      .l(Math.round((116.0 * variableY - 16) * 100) / 100.0)
-      .a(Math.round((500.0 * (variableX - variableY)) * 100) / 100.0)
-      .b(Math.round((200.0 * (variableY - variableZ)) * 100) / 100.0)
-      .build();
+  // the exact conversion, bypassing the cache and its quantization
+  static double[] computeLab(final int rgb) {
+    final double red = LINEARIZED_CHANNELS[(rgb >>> 16) & 0xff];
+    final double green = LINEARIZED_CHANNELS[(rgb >>> 8) & 0xff];
+    final double blue = LINEARIZED_CHANNELS[rgb & 0xff];
+
+    final double variableX = labComponent(xyzComponent(0, red, green, blue) / XYZ_D65[0]);
+    final double variableY = labComponent(xyzComponent(1, red, green, blue) / XYZ_D65[1]);
+    final double variableZ = labComponent(xyzComponent(2, red, green, blue) / XYZ_D65[2]);
+
+    return new double[] {116.0 * variableY - 16, 500.0 * (variableX - variableY), 200.0 * (variableY - variableZ)};
+  }
+
+  private static double xyzComponent(final int row, final double red, final double green, final double blue) {
+    final double[] coefficients = RGB_TO_XYZ[row];
+    final double linear = coefficients[0] * red + coefficients[1] * green + coefficients[2] * blue;
+    return Math.round(linear * 100 * 100) / 100.0;
+  }
+
+  private static double labComponent(final double lightnessCorrected) {
+    if (lightnessCorrected > 0.008856) {
+      return Math.cbrt(lightnessCorrected);
+    }
+    return (903.3 * lightnessCorrected + 16) / 116;
   }
 
-  private double invCompand(final double companded) {
+  private static double invCompand(final double companded) {
     if (companded <= 0.04045) {
       return companded / 12.92;
     }
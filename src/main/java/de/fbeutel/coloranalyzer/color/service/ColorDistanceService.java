@@ -1,6 +1,9 @@
 package de.fbeutel.coloranalyzer.color.service;
 
 import static de.fbeutel.coloranalyzer.color.domain.LabColor.CHROMA_CORRECTION;
+import static de.fbeutel.coloranalyzer.color.service.ColorConversionService.labA;
+import static de.fbeutel.coloranalyzer.color.service.ColorConversionService.labB;
+import static de.fbeutel.coloranalyzer.color.service.ColorConversionService.labL;
 
 import org.springframework.stereotype.Service;
 
@@ -13,6 +16,14 @@ import de.fbeutel.coloranalyzer.color.domain.RgbColor;
 @Service
 public class ColorDistanceService {
 
+  private static final double DEGREES_TO_RADIANS = Math.PI / 180;
+  private static final double COS_30 = Math.cos(Math.toRadians(30));
+  private static final double SIN_30 = Math.sin(Math.toRadians(30));
+  private static final double COS_6 = Math.cos(Math.toRadians(6));
+  private static final double SIN_6 = Math.sin(Math.toRadians(6));
+  private static final double COS_63 = Math.cos(Math.toRadians(63));
+  private static final double SIN_63 = Math.sin(Math.toRadians(63));
+
   private final ColorConversionService colorConversionService;
 
   public ColorDistanceService(ColorConversionService colorConversionService) {
@@ -23,21 +34,90 @@ public class ColorDistanceService {
     return calculateDistance(colorConversionService.toLab(color1), colorConversionService.toLab(color2));
   }
 
+  public double calculateDistance(final int packedRgb1, final int packedRgb2) {
+    final long packedLab1 = colorConversionService.toPackedLab(packedRgb1);
+    final long packedLab2 = colorConversionService.toPackedLab(packedRgb2);
+    return calculateDistance(labL(packedLab1), labA(packedLab1), labB(packedLab1), labL(packedLab2), labA(packedLab2),
+      labB(packedLab2));
+  }
+
   public double calculateDistance(final LabColor color1, final LabColor color2) {
+    return calculateDistance(color1.getL(), color1.getA(), color1.getB(), color2.getL(), color2.getA(), color2.getB());
+  }
+
+  public void calculateDistances(final LabColor reference, final double[] lightness, final double[] a, final double[] b,
+                                 final int length, final double[] distances) {
+    calculateDistances(reference.getL(), reference.getA(), reference.getB(), lightness, a, b, length, distances);
+  }
+
+  public void calculateDistances(final double referenceL, final double referenceA, final double referenceB,
+                                 final double[] lightness, final double[] a, final double[] b, final int length,
+                                 final double[] distances) {
+    // everything depending only on the reference color is calculated once per block
+    final double referenceSquaredB = referenceB * referenceB;
+    final double referenceChroma = Math.sqrt(referenceA * referenceA + referenceSquaredB);
+
+    for (int index = 0; index < length; index++) {
+      final double myL = lightness[index];
+      final double myA = a[index];
+      final double myB = b[index];
+
+      // several corrections
+      final double meanRawChroma = (Math.sqrt(myA * myA + myB * myB) + referenceChroma) / 2;
+      final double squaredMeanRawChroma = meanRawChroma * meanRawChroma;
+      final double seventhExponentChroma = squaredMeanRawChroma * squaredMeanRawChroma * squaredMeanRawChroma * meanRawChroma;
+      final double correctedChroma = Math.sqrt(seventhExponentChroma / (seventhExponentChroma + CHROMA_CORRECTION));
+      final double aCorrection = 1 + (1 - correctedChroma) / 2;
+      final double myCorrectedA = aCorrection * myA;
+      final double referenceCorrectedA = aCorrection * referenceA;
+      final double myAltChroma = Math.sqrt(myCorrectedA * myCorrectedA + myB * myB);
+      final double referenceAltChroma = Math.sqrt(referenceCorrectedA * referenceCorrectedA + referenceSquaredB);
+      final double myHueAngle = getHueAngle(myB, myCorrectedA);
+      final double referenceHueAngle = getHueAngle(referenceB, referenceCorrectedA);
+
+      //calculating means + standardised values
+      final double shiftedMeanLightness = (myL + referenceL) / 2 - 50;
+      final double squaredShiftedMeanLightness = shiftedMeanLightness * shiftedMeanLightness;
+      final double standardisedLightness =
+        1 + (0.015 * squaredShiftedMeanLightness) / Math.sqrt(20 + squaredShiftedMeanLightness);
+
+      final double meanChroma = (myAltChroma + referenceAltChroma) / 2;
+      final double standardisedChroma = 1 + 0.045 * meanChroma;
+
+      final double meanHue = getMeanHue(myHueAngle, referenceHueAngle, myAltChroma, referenceAltChroma);
+      final double standardisedHue = 1 + 0.015 * meanChroma * hueWeighting(meanHue * DEGREES_TO_RADIANS);
+
+      //calculating result
+      final double lightnessTerm = (referenceL - myL) / standardisedLightness;
+      final double chromaTerm = (referenceAltChroma - myAltChroma) / standardisedChroma;
+      final double hueTerm = 2 * Math.sqrt(myAltChroma * referenceAltChroma) *
+        Math.sin(getDeltaHue(myAltChroma, referenceAltChroma, myHueAngle, referenceHueAngle) / 2 * DEGREES_TO_RADIANS) /
+        standardisedHue;
+      final double shiftedMeanHue = (meanHue - 275) / 25;
+      final double rotation = -2 * correctedChroma *
+        Math.sin(60 * Math.exp(-shiftedMeanHue * shiftedMeanHue) * DEGREES_TO_RADIANS);
+
+      distances[index] = Math.sqrt(lightnessTerm * lightnessTerm + chromaTerm * chromaTerm + hueTerm * hueTerm +
+        rotation * chromaTerm * hueTerm);
+    }
+  }
+
+  public double calculateDistance(final double l1, final double a1, final double b1, final double l2, final double a2,
+                                   final double b2) {
     // several corrections
-    final double seventhExponentChroma = Math.pow((Math.sqrt(Math.pow(color1.getA(), 2) + Math.pow(color1.getB(), 2)) +
-      Math.sqrt(Math.pow(color2.getA(), 2) + Math.pow(color2.getB(), 2))) / 2, 7);
+    final double seventhExponentChroma = Math.pow((Math.sqrt(Math.pow(a1, 2) + Math.pow(b1, 2)) +
+      Math.sqrt(Math.pow(a2, 2) + Math.pow(b2, 2))) / 2, 7);
     final double correctedChroma = Math.sqrt(seventhExponentChroma / (seventhExponentChroma + CHROMA_CORRECTION));
     final double shiftedCorrectedChroma = (1 - correctedChroma) / 2;
-    final double myCorrectedA = (1 + shiftedCorrectedChroma) * color1.getA();
-    final double othersCorrectedA = (1 + shiftedCorrectedChroma) * color2.getA();
-    final double myAltChroma = Math.sqrt(Math.pow(myCorrectedA, 2) + Math.pow(color1.getB(), 2));
-    final double othersAltChroma = Math.sqrt(Math.pow(othersCorrectedA, 2) + Math.pow(color2.getB(), 2));
-    final double myHueAngle = getHueAngle(color1, myCorrectedA);
-    final double othersHueAngle = getHueAngle(color2, othersCorrectedA);
+    final double myCorrectedA = (1 + shiftedCorrectedChroma) * a1;
+    final double othersCorrectedA = (1 + shiftedCorrectedChroma) * a2;
+    final double myAltChroma = Math.sqrt(Math.pow(myCorrectedA, 2) + Math.pow(b1, 2));
+    final double othersAltChroma = Math.sqrt(Math.pow(othersCorrectedA, 2) + Math.pow(b2, 2));
+    final double myHueAngle = getHueAngle(b1, myCorrectedA);
+    final double othersHueAngle = getHueAngle(b2, othersCorrectedA);
 
     //calculating means + standardised values
-    final double meanLightness = (color1.getL() + color2.getL()) / 2;
+    final double meanLightness = (l1 + l2) / 2;
     final double standardisedLightness =
       1 + (0.015 * Math.pow(meanLightness - 50, 2)) / (Math.sqrt(20 + Math.pow(meanLightness - 50, 2)));
 
@@ -55,12 +135,27 @@ public class ColorDistanceService {
       Math.sin(Math.toRadians(getDeltaHue(myAltChroma, othersAltChroma, myHueAngle, othersHueAngle) / 2));
 
     return Math.sqrt(
-      Math.pow((color2.getL() - color1.getL()) / standardisedLightness, 2) + Math.pow(deltaChroma / standardisedChroma, 2) +
+      Math.pow((l2 - l1) / standardisedLightness, 2) + Math.pow(deltaChroma / standardisedChroma, 2) +
         Math.pow(deltaHue / standardisedHue, 2) +
         (-2 * correctedChroma * Math.sin(Math.toRadians(60 * Math.exp(0 - Math.pow((meanHue - 275) / 25, 2))))) *
           (deltaChroma / standardisedChroma) * (deltaHue / standardisedHue));
   }
 
+  private double hueWeighting(final double meanHueRadians) {
+    // 1 - 0.17 cos(h - 30) + 0.24 cos(2h) + 0.32 cos(3h + 6) - 0.2 cos(4h - 63) via multiple angle identities
+    final double cos1 = Math.cos(meanHueRadians);
+    final double sin1 = Math.sin(meanHueRadians);
+    final double cos2 = cos1 * cos1 - sin1 * sin1;
+    final double sin2 = 2 * sin1 * cos1;
+    final double cos3 = cos2 * cos1 - sin2 * sin1;
+    final double sin3 = sin2 * cos1 + cos2 * sin1;
+    final double cos4 = cos2 * cos2 - sin2 * sin2;
+    final double sin4 = 2 * sin2 * cos2;
+
+    return 1 - 0.17 * (cos1 * COS_30 + sin1 * SIN_30) + 0.24 * cos2 + 0.32 * (cos3 * COS_6 - sin3 * SIN_6) -
+      0.2 * (cos4 * COS_63 + sin4 * SIN_63);
+  }
+
   private double getMeanHue(final double hueAngleOne, final double hueAngleTwo, final double chromaOne, final double chromaTwo) {
     final double meanHue;
     final double totalHueAngle = hueAngleOne + hueAngleTwo;
@@ -98,11 +193,11 @@ public class ColorDistanceService {
     return deltaHue;
   }
 
-  private double getHueAngle(final LabColor labColor, final double correctedA) {
-    if (labColor.getB() == 0 && correctedA == 0) {
+  private double getHueAngle(final double b, final double correctedA) {
+    if (b == 0 && correctedA == 0) {
       return 0;
     }
-    double arcTan = Math.atan2(labColor.getB(), correctedA);
+    double arcTan = Math.atan2(b, correctedA);
     if (arcTan < 0) {
       arcTan = arcTan + 2 * Math.PI;
     }
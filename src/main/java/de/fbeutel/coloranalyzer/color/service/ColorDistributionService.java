@@ -1,187 +1,131 @@
 package de.fbeutel.coloranalyzer.color.service;
 
-import static java.util.Map.Entry.comparingByValue;
-
-import static de.fbeutel.coloranalyzer.color.service.ImageBorderService.ALLOWED_BORDER_COLOR_DISTANCE;
-
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.ToLongFunction;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
-import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import de.fbeutel.coloranalyzer.color.domain.BorderColorFilter;
 import de.fbeutel.coloranalyzer.color.domain.ColorDistribution;
 import de.fbeutel.coloranalyzer.color.domain.ColorDistributionEntry;
+import de.fbeutel.coloranalyzer.color.domain.ColorHistogram;
+import de.fbeutel.coloranalyzer.color.domain.ColorPalette;
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
 import de.fbeutel.coloranalyzer.color.domain.RgbColor;
-import de.fbeutel.coloranalyzer.color.domain.RgbDimension;
 
 @Service
 public class ColorDistributionService {
 
+  private static final int MEDIAN_CUT_COLORS = 32;
+  private static final int MIN_BAND_PIXELS = 256 * 1024;
+
   private final ImageService imageService;
-  private final ColorDistanceService colorDistanceService;
+  private final BorderColorFilterService borderColorFilterService;
+  private final MedianCutService medianCutService;
+  private final ColorGroupingService colorGroupingService;
+
+  private final ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
+  private final int forkJoinThresholdPixels;
 
-  public ColorDistributionService(ImageService imageService, ColorDistanceService colorDistanceService) {
+  public ColorDistributionService(ImageService imageService, BorderColorFilterService borderColorFilterService,
+                                  MedianCutService medianCutService, ColorGroupingService colorGroupingService,
+                                  @Value("${color-analyzer.distribution.fork-join-threshold-pixels:1000000}")
+                                    int forkJoinThresholdPixels) {
     this.imageService = imageService;
-    this.colorDistanceService = colorDistanceService;
+    this.borderColorFilterService = borderColorFilterService;
+    this.medianCutService = medianCutService;
+    this.colorGroupingService = colorGroupingService;
+    this.forkJoinThresholdPixels = forkJoinThresholdPixels;
   }
 
   public ColorDistribution colorDistribution(final BufferedImage image, final RgbColor borderColor) {
-    final byte[] imageData = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
-
-    final int imageHeight = image.getHeight();
-    final int imageWidth = image.getWidth();
-    final int pixelLength = image.getAlphaRaster() != null ? 4 : 3;
+    return colorDistribution(imageService.toPixelBuffer(image), borderColor);
+  }
 
-    final List<RgbColor> rgbColors = new ArrayList<>();
+  public ColorDistribution colorDistribution(final PixelBuffer pixels, final RgbColor borderColor) {
+    final BorderColorFilter borderColorFilter = borderColorFilterService.borderColorFilter(borderColor.toPackedRgb());
+    final ColorHistogram histogram = useForkJoin(pixels)
+            ? forkJoinPool.invoke(new HistogramTask(pixels, borderColorFilter, 0, pixels.getHeight(), bandRows(pixels)))
+            : histogram(pixels, borderColorFilter, 0, pixels.getHeight());
 
-    for (int row = 0; row < imageHeight; row++) {
-      for (int col = 0; col < imageWidth; col++) {
-        final RgbColor rgbColor = imageService.getRgb(imageData, col, row, imageWidth, pixelLength);
+    final ColorPalette palette = colorGroupingService.groupColors(medianCutService.quantize(histogram, MEDIAN_CUT_COLORS));
 
-        if (colorDistanceService.calculateDistance(rgbColor, borderColor) > ALLOWED_BORDER_COLOR_DISTANCE) {
-          rgbColors.add(rgbColor);
-        }
-      }
+    final List<ColorDistributionEntry> colorDistributionEntries = new ArrayList<>();
+    for (int index = 0; index < palette.size(); index++) {
+      colorDistributionEntries.add(ColorDistributionEntry.builder()
+              .color(RgbColor.fromPackedRgb(palette.getColors()[index]))
+              .share(palette.getShares()[index])
+              .build());
     }
-
-    final List<ColorDistributionEntry> colorDistributionEntries = groupColors(applyMedianCut(rgbColors)).stream()
-            .map(rgbColorSharePair -> ColorDistributionEntry.builder()
-                    .color(rgbColorSharePair.getLeft())
-                    .share(rgbColorSharePair.getRight())
-                    .build())
-            .sorted(Collections.reverseOrder())
-            .collect(Collectors.toList());
+    colorDistributionEntries.sort(Collections.reverseOrder());
 
     return ColorDistribution.builder()
             .colorDistributionEntries(colorDistributionEntries)
             .build();
   }
 
-  private List<Pair<RgbColor, Integer>> groupColors(final List<Pair<RgbColor, Integer>> input) {
-    final int groupingThreshold = 5;
-    final int iterThreshold = 100;
-
-    int iterator = 0;
-    while (input.size() > groupingThreshold && iterator <= iterThreshold) {
-      final Pair<Pair<Pair<RgbColor, Integer>, Pair<RgbColor, Integer>>, Double> bestGroupingResult = bestGroupingResult(input);
+  private boolean useForkJoin(final PixelBuffer pixels) {
+    // small images and a busy pool (e.g. many images processed in parallel) take the sequential path
+    return pixels.size() >= forkJoinThresholdPixels && pixels.getHeight() > 1 && forkJoinPool.getParallelism() > 1 &&
+            forkJoinPool.getActiveThreadCount() < forkJoinPool.getParallelism();
+  }
 
-      if (bestGroupingResult.getRight() <= 10) {
-        final Pair<RgbColor, Integer> color1Pair = bestGroupingResult.getLeft().getLeft();
-        final Pair<RgbColor, Integer> color2Pair = bestGroupingResult.getLeft().getRight();
+  private int bandRows(final PixelBuffer pixels) {
+    return Math.max(1, MIN_BAND_PIXELS / pixels.getWidth());
+  }
 
-        input.remove(color1Pair);
-        input.remove(color2Pair);
-        final RgbColor meanColor = imageService.getMeanColor(color1Pair.getLeft(), color2Pair.getLeft());
-        input.add(Pair.of(meanColor, color1Pair.getRight() + color2Pair.getRight()));
+  private static ColorHistogram histogram(final PixelBuffer pixels, final BorderColorFilter borderColorFilter,
+                                          final int fromRow, final int toRow) {
+    final ColorHistogram histogram = new ColorHistogram();
+    final int[] imagePixels = pixels.getPixels();
 
-        iterator++;
-      } else {
-        break;
+    for (int index = fromRow * pixels.getWidth(); index < toRow * pixels.getWidth(); index++) {
+      if (!borderColorFilter.isBorderColor(imagePixels[index])) {
+        histogram.add(imagePixels[index]);
       }
     }
-
-    return input;
+    return histogram;
   }
 
-  private Pair<Pair<Pair<RgbColor, Integer>, Pair<RgbColor, Integer>>, Double> bestGroupingResult(final List<Pair<RgbColor,
-          Integer>> input) {
-    Map<Pair<Integer, Integer>, Double> index = new ConcurrentHashMap<>();
+  private static class HistogramTask extends RecursiveTask<ColorHistogram> {
 
-    for (int i = 0; i < input.size() - 1; i++) {
-      final double colorDistance = colorDistanceService.calculateDistance(input.get(i).getLeft(), input.get(i + 1).getLeft());
-      index.put(Pair.of(i, i + 1), colorDistance);
-    }
-
-    final Pair<Integer, Integer> bestGroupingPairIndices = index.entrySet().stream().min(comparingByValue()).get().getKey();
-    final Double bestDistance = index.entrySet().stream().min(comparingByValue()).get().getValue();
-    return Pair.of(Pair.of(input.get(bestGroupingPairIndices.getLeft()), input.get(bestGroupingPairIndices.getRight())),
-            bestDistance);
-  }
+    private static final long serialVersionUID = 1L;
 
-  private List<Pair<RgbColor, Integer>> applyMedianCut(final List<RgbColor> input) {
-    List<List<RgbColor>> buckets = new ArrayList<>();
-    buckets.add(input);
+    // tasks only ever run in the pool they were forked into and are never serialized
+    private final transient PixelBuffer pixels;
+    private final transient BorderColorFilter borderColorFilter;
+    private final int fromRow;
+    private final int toRow;
+    private final int bandRows;
 
-    int iterCount = 0;
-    while (buckets.size() < 32 && iterCount < 100) {
-      buckets = medianCutBuckets(buckets);
-      iterCount++;
+    private HistogramTask(final PixelBuffer pixels, final BorderColorFilter borderColorFilter, final int fromRow,
+                          final int toRow, final int bandRows) {
+      this.pixels = pixels;
+      this.borderColorFilter = borderColorFilter;
+      this.fromRow = fromRow;
+      this.toRow = toRow;
+      this.bandRows = bandRows;
     }
 
-    final List<Pair<RgbColor, Integer>> cutBuckets = new ArrayList<>();
-    for (final List<RgbColor> bucket : buckets) {
-      final List<Long> redValues = new ArrayList<>();
-      final List<Long> greenValues = new ArrayList<>();
-      final List<Long> blueValues = new ArrayList<>();
-
-      bucket.forEach(color -> {
-        redValues.add(color.getR());
-        greenValues.add(color.getG());
-        blueValues.add(color.getB());
-      });
-
-      cutBuckets.add(Pair.of(RgbColor.builder()
-              .r(redValues.size() == 0 ? 0 : redValues.stream().mapToLong(v -> v).sum() / redValues.size())
-              .g(greenValues.size() == 0 ? 0 : greenValues.stream().mapToLong(v -> v).sum() / greenValues.size())
-              .b(blueValues.size() == 0 ? 0 : blueValues.stream().mapToLong(v -> v).sum() / blueValues.size())
-              .build(), bucket.size()));
-    }
-
-    return cutBuckets;
-  }
-
-  private List<List<RgbColor>> medianCutBuckets(final List<List<RgbColor>> buckets) {
-    final List<List<RgbColor>> resultBuckets = new ArrayList<>(buckets);
-    for (final List<RgbColor> bucket : buckets) {
-      if (bucket.size() > 1) {
-        final RgbDimension dominantDimension = determineDominantDimension(bucket);
-        final Comparator<RgbColor> comparator = RgbColor.determineComparator(dominantDimension);
-
-        bucket.sort(comparator);
-
-        final List<RgbColor> lowerCut = new ArrayList<>(bucket.subList(0, bucket.size() / 2 - 1));
-        final List<RgbColor> upperCut = new ArrayList<>(bucket.subList(bucket.size() / 2, bucket.size() - 1));
-
-        resultBuckets.add(lowerCut);
-        resultBuckets.add(upperCut);
-        resultBuckets.remove(bucket);
+    @Override
+    protected ColorHistogram compute() {
+      if (toRow - fromRow <= bandRows) {
+        return histogram(pixels, borderColorFilter, fromRow, toRow);
       }
-    }
-    return resultBuckets;
-  }
 
-  private RgbDimension determineDominantDimension(final List<RgbColor> bucket) {
-    final long redRange = getColorRange(bucket, RgbColor::getR);
-    final long greenRange = getColorRange(bucket, RgbColor::getG);
-    final long blueRange = getColorRange(bucket, RgbColor::getB);
+      final int middleRow = fromRow + (toRow - fromRow) / 2;
+      final HistogramTask upperBand = new HistogramTask(pixels, borderColorFilter, fromRow, middleRow, bandRows);
+      final HistogramTask lowerBand = new HistogramTask(pixels, borderColorFilter, middleRow, toRow, bandRows);
+      upperBand.fork();
 
-    if (redRange > greenRange && redRange > blueRange) {
-      return RgbDimension.RED;
+      final ColorHistogram histogram = lowerBand.compute();
+      histogram.addAll(upperBand.join());
+      return histogram;
     }
-    if (greenRange > redRange && greenRange > blueRange) {
-      return RgbDimension.GREEN;
-    }
-    return RgbDimension.BLUE;
-  }
-
-  private long getColorRange(final List<RgbColor> bucket, final ToLongFunction<RgbColor> toLongMapper) {
-    return Math.abs(getSmallestValue(bucket, toLongMapper) - getBiggestValue(bucket, toLongMapper));
-  }
-
-  private long getSmallestValue(final List<RgbColor> bucket, final ToLongFunction<RgbColor> toLongMapper) {
-    return bucket.stream().mapToLong(toLongMapper).min().orElse(1000);
-  }
-
-  private long getBiggestValue(final List<RgbColor> bucket, final ToLongFunction<RgbColor> toLongMapper) {
-    return bucket.stream().mapToLong(toLongMapper).max().orElse(1000);
   }
 }
@@ -0,0 +1,215 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import java.util.Arrays;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorPalette;
+
+@Service
+public class ColorGroupingService {
+
+  private static final int ITER_THRESHOLD = 100;
+
+  private final ImageService imageService;
+  private final ColorDistanceService colorDistanceService;
+
+  private final int groupingThreshold;
+  private final double maxGroupingDistance;
+  private final boolean allPairs;
+
+  public ColorGroupingService(final ImageService imageService, final ColorDistanceService colorDistanceService,
+                              @Value("${color-analyzer.grouping.threshold:5}") final int groupingThreshold,
+                              @Value("${color-analyzer.grouping.max-distance:10}") final double maxGroupingDistance,
+                              @Value("${color-analyzer.grouping.all-pairs:false}") final boolean allPairs) {
+    this.imageService = imageService;
+    this.colorDistanceService = colorDistanceService;
+    this.groupingThreshold = groupingThreshold;
+    this.maxGroupingDistance = maxGroupingDistance;
+    this.allPairs = allPairs;
+  }
+
+  public ColorPalette groupColors(final ColorPalette palette) {
+    final int inputSize = palette.size();
+    // every merge retires two groups and creates a new one, so ids never get reused
+    final int capacity = Math.max(2 * inputSize - 1, 1);
+
+    final int[] colors = Arrays.copyOf(palette.getColors(), capacity);
+    final int[] shares = Arrays.copyOf(palette.getShares(), capacity);
+    final boolean[] alive = new boolean[capacity];
+    final int[] previous = new int[capacity];
+    final int[] next = new int[capacity];
+    final DistanceHeap heap = new DistanceHeap(capacity * 2);
+
+    Arrays.fill(alive, 0, inputSize, true);
+    for (int group = 0; group < inputSize; group++) {
+      previous[group] = group - 1;
+      next[group] = group + 1 < inputSize ? group + 1 : -1;
+    }
+    int tail = inputSize - 1;
+
+    for (int group = 0; group < inputSize; group++) {
+      if (allPairs) {
+        for (int otherGroup = group + 1; otherGroup < inputSize; otherGroup++) {
+          pushDistance(heap, colors, group, otherGroup);
+        }
+      } else if (next[group] != -1) {
+        pushDistance(heap, colors, group, next[group]);
+      }
+    }
+
+    int groupCount = inputSize;
+    int nextGroup = inputSize;
+    int iterator = 0;
+    while (groupCount > groupingThreshold && iterator <= ITER_THRESHOLD) {
+      // entries referring to merged groups are stale and get skipped lazily
+      while (!heap.isEmpty() && !(alive[heap.firstGroup()] && alive[heap.secondGroup()])) {
+        heap.pop();
+      }
+      if (heap.isEmpty() || heap.minDistance() > maxGroupingDistance) {
+        break;
+      }
+
+      final int group1 = heap.firstGroup();
+      final int group2 = heap.secondGroup();
+      heap.pop();
+
+      final int mergedGroup = nextGroup++;
+      colors[mergedGroup] = imageService.getMeanColor(colors[group1], colors[group2]);
+      shares[mergedGroup] = shares[group1] + shares[group2];
+      alive[group1] = false;
+      alive[group2] = false;
+      alive[mergedGroup] = true;
+      groupCount--;
+
+      if (allPairs) {
+        for (int group = 0; group < mergedGroup; group++) {
+          if (alive[group]) {
+            pushDistance(heap, colors, group, mergedGroup);
+          }
+        }
+      } else {
+        // like removing both groups from the list and appending the merged group at its end
+        tail = unlink(group1, previous, next, tail, heap, colors);
+        tail = unlink(group2, previous, next, tail, heap, colors);
+        previous[mergedGroup] = tail;
+        next[mergedGroup] = -1;
+        if (tail != -1) {
+          next[tail] = mergedGroup;
+          pushDistance(heap, colors, tail, mergedGroup);
+        }
+        tail = mergedGroup;
+      }
+
+      iterator++;
+    }
+
+    final int[] groupedColors = new int[groupCount];
+    final int[] groupedShares = new int[groupCount];
+    for (int group = 0, index = 0; group < nextGroup; group++) {
+      if (alive[group]) {
+        groupedColors[index] = colors[group];
+        groupedShares[index] = shares[group];
+        index++;
+      }
+    }
+    return new ColorPalette(groupedColors, groupedShares);
+  }
+
+  private int unlink(final int group, final int[] previous, final int[] next, final int tail, final DistanceHeap heap,
+                     final int[] colors) {
+    final int previousGroup = previous[group];
+    final int nextGroup = next[group];
+    if (previousGroup != -1) {
+      next[previousGroup] = nextGroup;
+    }
+    if (nextGroup != -1) {
+      previous[nextGroup] = previousGroup;
+    }
+    if (previousGroup != -1 && nextGroup != -1) {
+      pushDistance(heap, colors, previousGroup, nextGroup);
+    }
+    return group == tail ? previousGroup : tail;
+  }
+
+  private void pushDistance(final DistanceHeap heap, final int[] colors, final int group1, final int group2) {
+    heap.push(colorDistanceService.calculateDistance(colors[group1], colors[group2]), group1, group2);
+  }
+
+  private static class DistanceHeap {
+
+    private double[] distances;
+    private int[] firstGroups;
+    private int[] secondGroups;
+    private int size;
+
+    private DistanceHeap(final int initialCapacity) {
+      distances = new double[initialCapacity];
+      firstGroups = new int[initialCapacity];
+      secondGroups = new int[initialCapacity];
+    }
+
+    private boolean isEmpty() {
+      return size == 0;
+    }
+
+    private double minDistance() {
+      return distances[0];
+    }
+
+    private int firstGroup() {
+      return firstGroups[0];
+    }
+
+    private int secondGroup() {
+      return secondGroups[0];
+    }
+
+    private void push(final double distance, final int firstGroup, final int secondGroup) {
+      if (size == distances.length) {
+        distances = Arrays.copyOf(distances, size * 2);
+        firstGroups = Arrays.copyOf(firstGroups, size * 2);
+        secondGroups = Arrays.copyOf(secondGroups, size * 2);
+      }
+
+      int index = size++;
+      while (index > 0 && distances[(index - 1) / 2] > distance) {
+        move((index - 1) / 2, index);
+        index = (index - 1) / 2;
+      }
+      set(index, distance, firstGroup, secondGroup);
+    }
+
+    private void pop() {
+      size--;
+      final double distance = distances[size];
+      final int firstGroup = firstGroups[size];
+      final int secondGroup = secondGroups[size];
+
+      int index = 0;
+      while (2 * index + 1 < size) {
+        int child = 2 * index + 1;
+        if (child + 1 < size && distances[child + 1] < distances[child]) {
+          child++;
+        }
+        if (distances[child] >= distance) {
+          break;
+        }
+        move(child, index);
+        index = child;
+      }
+      set(index, distance, firstGroup, secondGroup);
+    }
+
+    private void move(final int from, final int to) {
+      set(to, distances[from], firstGroups[from], secondGroups[from]);
+    }
+
+    private void set(final int index, final double distance, final int firstGroup, final int secondGroup) {
+      distances[index] = distance;
+      firstGroups[index] = firstGroup;
+      secondGroups[index] = secondGroup;
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "color-analyzer.tiles")
+public class ColorTileProperties {
+
+  // the catalog is fetched from here every refresh-interval-ms
+  private String url = "http://localhost:8090/tiles";
+  private long refreshIntervalMs = 300000;
+
+  // read at startup and rewritten with every catalog fetched from the tile service
+  private String snapshotFile = Paths.get(System.getProperty("user.home"), ".color-analyzer", "color-tiles.json")
+    .toString();
+
+  // how long scoring waits for the first catalog with tiles before it fails the product
+  private Duration awaitTimeout = Duration.ofMinutes(1);
+}
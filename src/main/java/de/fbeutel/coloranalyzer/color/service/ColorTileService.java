@@ -2,47 +2,213 @@ package de.fbeutel.coloranalyzer.color.service;
 
 import static org.springframework.http.RequestEntity.get;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
-import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
 
 import de.fbeutel.coloranalyzer.color.domain.ColorTile;
+import de.fbeutel.coloranalyzer.color.domain.ColorTileCatalog;
+import de.fbeutel.coloranalyzer.color.domain.ColorTileSnapshot;
 
 @Slf4j
 @Service
 public class ColorTileService {
 
   private final RestTemplate restTemplate;
+  private final ObjectMapper objectMapper;
+  private final ColorConversionService colorConversionService;
+  private final URI tilesUri;
+  private final Path snapshotFile;
+  private final Duration awaitTimeout;
+
+  // scoring only ever reads this reference, a refresh builds a complete new catalog and swaps it in
+  private volatile ColorTileCatalog catalog = ColorTileCatalog.EMPTY;
+  // opened once the first catalog with tiles is in place, it is never replaced by an empty one afterwards
+  private final CountDownLatch catalogLoaded = new CountDownLatch(1);
+  private final List<Consumer<ColorTileCatalog>> catalogListeners = new CopyOnWriteArrayList<>();
 
-  public ColorTileService(final RestTemplateBuilder restTemplateBuilder) {
+  // only the local snapshot is read here, the tile service is first asked by the scheduled refresh right after startup
+  public ColorTileService(final RestTemplateBuilder restTemplateBuilder, final ObjectMapper objectMapper,
+                          final ColorConversionService colorConversionService,
+                          final ColorTileProperties colorTileProperties) {
     this.restTemplate = restTemplateBuilder.build();
+    this.objectMapper = objectMapper;
+    this.colorConversionService = colorConversionService;
+    this.tilesUri = URI.create(colorTileProperties.getUrl());
+    this.snapshotFile = Paths.get(colorTileProperties.getSnapshotFile()).toAbsolutePath();
+    this.awaitTimeout = colorTileProperties.getAwaitTimeout();
+
+    loadSnapshot();
   }
 
-  public Map<String, List<ColorTile>> getColorTiles() {
-    final String colorSearcherBaseUrl = "http://localhost:8090/tiles";
-    final URI colorSearcherUri = UriComponentsBuilder.fromUriString(colorSearcherBaseUrl)
-      .build()
-      .toUri();
+  // the current catalog, EMPTY as long as neither the snapshot nor the tile service provided one
+  public ColorTileCatalog getCatalog() {
+    return catalog;
+  }
 
-    final ResponseEntity<Map<String, List<ColorTile>>> response = restTemplate.exchange(get(colorSearcherUri).build(),
-      new ParameterizedTypeReference<Map<String, List<ColorTile>>>() {
-      });
+  // the listener sees the current catalog right away and every later one before it is used for scoring; a failing
+  // listener keeps the previous catalog in place
+  public void addCatalogListener(final Consumer<ColorTileCatalog> listener) {
+    catalogListeners.add(listener);
+    if (catalog.getVersion() != null) {
+      listener.accept(catalog);
+    }
+  }
 
-    if (!response.getStatusCode().is2xxSuccessful()) {
-      log.error("error during color tiles fetching! RC: " + response.getStatusCodeValue() + " body: " + response.getBody());
-      return new ConcurrentHashMap<>();
+  // scores against an empty catalog would be stored without any tile, so scoring waits for a catalog and fails the
+  // product once the tile service stayed unreachable for the await timeout
+  public ColorTileCatalog awaitCatalog() {
+    try {
+      if (!catalogLoaded.await(awaitTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+        throw new IllegalStateException("no color tile catalog loaded from " + tilesUri + " or " + snapshotFile
+          + " within " + awaitTimeout);
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while waiting for the color tile catalog", exception);
     }
+    return catalog;
+  }
+
+  // the first run right after startup revalidates a catalog that was loaded from the snapshot file
+  @Scheduled(fixedDelayString = "${color-analyzer.tiles.refresh-interval-ms:300000}")
+  public void refresh() {
+    final ColorTileCatalog currentCatalog = catalog;
+    try {
+      final ResponseEntity<byte[]> response = currentCatalog.getEtag() == null
+        ? restTemplate.exchange(get(tilesUri).build(), byte[].class)
+        : restTemplate.exchange(get(tilesUri).ifNoneMatch(currentCatalog.getEtag()).build(), byte[].class);
 
-    return response.getBody();
+      if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+        return;
+      }
+      if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+        log.error("error during color tiles fetching! RC: " + response.getStatusCode().value() + ", keeping catalog "
+          + currentCatalog.getVersion());
+        return;
+      }
+
+      final String version = contentHash(response.getBody());
+      final String etag = response.getHeaders().getETag();
+      if (version.equals(currentCatalog.getVersion())) {
+        catalog = currentCatalog.toBuilder().etag(etag).build();
+        return;
+      }
+
+      final ColorTileSnapshot snapshot = ColorTileSnapshot.builder()
+        .version(version)
+        .etag(etag)
+        .tiles(objectMapper.readValue(response.getBody(), new TypeReference<Map<String, List<ColorTile>>>() {
+        }))
+        .build();
+      final ColorTileCatalog fetchedCatalog = toCatalog(snapshot);
+      if (fetchedCatalog.size() == 0) {
+        log.error("color tile service returned no tiles, keeping catalog " + currentCatalog.getVersion());
+        return;
+      }
+      setCatalog(fetchedCatalog);
+      log.info("loaded color tile catalog " + version + " with " + catalog.size() + " tiles");
+      storeSnapshot(snapshot);
+    } catch (RestClientException | IOException exception) {
+      log.warn("could not refresh color tiles, keeping catalog " + currentCatalog.getVersion() + ": " + exception.getMessage());
+    }
+  }
+
+  private void loadSnapshot() {
+    if (!Files.isRegularFile(snapshotFile)) {
+      return;
+    }
+    try {
+      setCatalog(toCatalog(objectMapper.readValue(snapshotFile.toFile(), ColorTileSnapshot.class)));
+      log.info("loaded color tile catalog " + catalog.getVersion() + " with " + catalog.size() + " tiles from "
+        + snapshotFile);
+    } catch (IOException exception) {
+      log.warn("could not read color tile snapshot " + snapshotFile, exception);
+    }
+  }
+
+  private void setCatalog(final ColorTileCatalog loadedCatalog) {
+    catalogListeners.forEach(listener -> listener.accept(loadedCatalog));
+    catalog = loadedCatalog;
+    if (loadedCatalog.size() > 0) {
+      catalogLoaded.countDown();
+    }
+  }
+
+  private void storeSnapshot(final ColorTileSnapshot snapshot) {
+    try {
+      // written next to the snapshot and moved over it, so a crash never leaves a truncated file behind
+      final Path directory = snapshotFile.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      final Path tempFile = Files.createTempFile(directory, "color-tiles", ".tmp");
+      objectMapper.writeValue(tempFile.toFile(), snapshot);
+      Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException exception) {
+      log.warn("could not write color tile snapshot " + snapshotFile, exception);
+    }
+  }
+
+  private ColorTileCatalog toCatalog(final ColorTileSnapshot snapshot) {
+    final List<ColorTile> tiles = snapshot.getTiles().values().stream()
+      .flatMap(List::stream)
+      .toList();
+
+    final String[] names = new String[tiles.size()];
+    final int[] colors = new int[tiles.size()];
+    final double[] lightness = new double[tiles.size()];
+    final double[] a = new double[tiles.size()];
+    final double[] b = new double[tiles.size()];
+    for (int index = 0; index < tiles.size(); index++) {
+      final long packedLab = colorConversionService.toPackedLab(tiles.get(index).getColor().toPackedRgb());
+      names[index] = tiles.get(index).getName();
+      colors[index] = tiles.get(index).getColor().toPackedRgb();
+      lightness[index] = ColorConversionService.labL(packedLab);
+      a[index] = ColorConversionService.labA(packedLab);
+      b[index] = ColorConversionService.labB(packedLab);
+    }
+
+    return ColorTileCatalog.builder()
+      .version(snapshot.getVersion())
+      .etag(snapshot.getEtag())
+      .names(names)
+      .colors(colors)
+      .lightness(lightness)
+      .a(a)
+      .b(b)
+      .build();
+  }
+
+  private static String contentHash(final byte[] content) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content), 0, 8);
+    } catch (NoSuchAlgorithmException exception) {
+      throw new IllegalStateException(exception);
+    }
   }
 }
@@ -0,0 +1,87 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorTileCatalog;
+import de.fbeutel.coloranalyzer.color.domain.ColorTileVersion;
+
+@Slf4j
+@Service
+public class ColorTileVersionRegistry {
+
+  private final MongoTemplate mongoTemplate;
+  private final ColorTileService colorTileService;
+
+  // versions never change once registered, so every version is read from mongo at most once
+  private final Map<String, ColorTileVersion> versions = new ConcurrentHashMap<>();
+
+  // every catalog is registered before it is used for scoring, so products scored against a catalog which was replaced
+  // before they were stored still find their version
+  public ColorTileVersionRegistry(final MongoTemplate mongoTemplate, final ColorTileService colorTileService) {
+    this.mongoTemplate = mongoTemplate;
+    this.colorTileService = colorTileService;
+    colorTileService.addCatalogListener(this::register);
+  }
+
+  public ColorTileVersion current() {
+    return findCurrent().orElseThrow(() -> new IllegalStateException("no color tile catalog loaded"));
+  }
+
+  // empty as long as neither the snapshot nor the tile service provided a catalog
+  public Optional<ColorTileVersion> findCurrent() {
+    final ColorTileCatalog catalog = colorTileService.getCatalog();
+    if (catalog.getVersion() == null) {
+      return Optional.empty();
+    }
+    return Optional.of(register(catalog));
+  }
+
+  public ColorTileVersion register(final ColorTileCatalog catalog) {
+    return versions.computeIfAbsent(catalog.getVersion(), version -> {
+      final ColorTileVersion storedVersion = mongoTemplate.findById(version, ColorTileVersion.class);
+      if (storedVersion != null) {
+        return storedVersion;
+      }
+
+      log.info("registering color tile catalog version " + version + " with " + catalog.size() + " tiles");
+      return mongoTemplate.save(ColorTileVersion.builder()
+        .version(version)
+        .names(catalog.getNames())
+        .colors(catalog.getColors())
+        .registeredAt(Instant.now())
+        .build());
+    });
+  }
+
+  public Optional<ColorTileVersion> find(final String version) {
+    final ColorTileVersion cachedVersion = versions.get(version);
+    if (cachedVersion != null) {
+      return Optional.of(cachedVersion);
+    }
+
+    // the catalog in use is registered on first sight, scores are always calculated against it
+    final ColorTileCatalog catalog = colorTileService.getCatalog();
+    if (version.equals(catalog.getVersion())) {
+      return Optional.of(register(catalog));
+    }
+
+    final ColorTileVersion storedVersion = mongoTemplate.findById(version, ColorTileVersion.class);
+    if (storedVersion == null) {
+      return Optional.empty();
+    }
+    return Optional.of(versions.computeIfAbsent(version, key -> storedVersion));
+  }
+
+  public ColorTileVersion get(final String version) {
+    return find(version)
+      .orElseThrow(() -> new IllegalStateException("unknown color tile catalog version " + version));
+  }
+}
@@ -2,13 +2,13 @@ package de.fbeutel.coloranalyzer.color.service;
 
 import de.fbeutel.coloranalyzer.color.domain.BorderColorDeterminationResult;
 import de.fbeutel.coloranalyzer.color.domain.ImageEdge;
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
 import de.fbeutel.coloranalyzer.color.domain.RgbColor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.stereotype.Service;
 
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 
 import static de.fbeutel.coloranalyzer.color.domain.ImageEdge.*;
 
@@ -27,16 +27,17 @@ public class ImageBorderService {
   }
 
   public BorderColorDeterminationResult determineBorderColor(final BufferedImage bufferedImage) {
-    final byte[] data = ((DataBufferByte) bufferedImage.getRaster().getDataBuffer()).getData();
+    return determineBorderColor(imageService.toPixelBuffer(bufferedImage));
+  }
 
-    final int width = bufferedImage.getWidth();
-    final int height = bufferedImage.getHeight();
-    final int pixelLength = bufferedImage.getAlphaRaster() != null ? 4 : 3;
+  public BorderColorDeterminationResult determineBorderColor(final PixelBuffer pixels) {
+    final int width = pixels.getWidth();
+    final int height = pixels.getHeight();
 
-    final Pair<Double, RgbColor> upperResult = determineUniformity(data, UPPER, width, height, pixelLength);
-    final Pair<Double, RgbColor> leftResult = determineUniformity(data, LEFT, width, height, pixelLength);
-    final Pair<Double, RgbColor> rightResult = determineUniformity(data, RIGHT, width, height, pixelLength);
-    final Pair<Double, RgbColor> lowerResult = determineUniformity(data, LOWER, width, height, pixelLength);
+    final Pair<Double, RgbColor> upperResult = determineUniformity(pixels, UPPER, width, height);
+    final Pair<Double, RgbColor> leftResult = determineUniformity(pixels, LEFT, width, height);
+    final Pair<Double, RgbColor> rightResult = determineUniformity(pixels, RIGHT, width, height);
+    final Pair<Double, RgbColor> lowerResult = determineUniformity(pixels, LOWER, width, height);
 
     return BorderColorDeterminationResult.builder()
             .upperEdgeUniformity(upperResult.getLeft())
@@ -48,17 +49,16 @@ public class ImageBorderService {
             .build();
   }
 
-  private Pair<Double, RgbColor> determineUniformity(final byte[] data, final ImageEdge edge, final int width,
-                                                     final int height, final int pixelLength) {
-    final RgbColor baseColor = imageService.getRgb(data, 0, 0, width, pixelLength);
+  private Pair<Double, RgbColor> determineUniformity(final PixelBuffer pixels, final ImageEdge edge, final int width,
+                                                     final int height) {
+    final int baseColor = pixels.getPixel(0, 0);
 
-    RgbColor meanColor = baseColor;
+    int meanColor = baseColor;
     double amountOfNonUniformPixels = 0;
 
     final int iterBound = edge == UPPER || edge == LOWER ? width : height;
     for (int counter = 0; counter < iterBound; counter++) {
-      final RgbColor currentColor = imageService.getRgb(data, determineCol(edge, counter, width),
-              determineRow(edge, counter, height), width, pixelLength);
+      final int currentColor = pixels.getPixel(determineCol(edge, counter, width), determineRow(edge, counter, height));
       if (colorDistanceService.calculateDistance(currentColor, baseColor) > ALLOWED_BORDER_COLOR_DISTANCE) {
         amountOfNonUniformPixels++;
       }
@@ -66,7 +66,7 @@ public class ImageBorderService {
     }
 
     final double uniformity = 1 - amountOfNonUniformPixels / iterBound;
-    return Pair.of(uniformity, meanColor);
+    return Pair.of(uniformity, RgbColor.fromPackedRgb(meanColor));
   }
 
   private int determineCol(final ImageEdge edge, final int counter, final int max) {
@@ -1,49 +1,111 @@
 package de.fbeutel.coloranalyzer.color.service;
 
-import static java.util.stream.Collectors.toMap;
-
 import java.util.List;
-import java.util.Map;
-import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import lombok.extern.slf4j.Slf4j;
 
 import de.fbeutel.coloranalyzer.color.domain.ColorDistribution;
 import de.fbeutel.coloranalyzer.color.domain.ColorDistributionEntry;
-import de.fbeutel.coloranalyzer.color.domain.ColorTile;
+import de.fbeutel.coloranalyzer.color.domain.ColorTileCatalog;
+import de.fbeutel.coloranalyzer.color.domain.TileScores;
 
 @Slf4j
 @Service
 public class ImageScoringService {
 
+  private static final int TILES_PER_TASK = 256;
+
   private final ColorDistanceService colorDistanceService;
+  private final ColorConversionService colorConversionService;
   private final ColorTileService colorTileService;
+  private final int parallelThresholdTiles;
 
   public ImageScoringService(ColorDistanceService colorDistanceService,
-                             final ColorTileService colorTileService) {
+                             final ColorConversionService colorConversionService,
+                             final ColorTileService colorTileService,
+                             @Value("${color-analyzer.scoring.parallel-threshold-tiles:2048}") final int parallelThresholdTiles) {
     this.colorDistanceService = colorDistanceService;
+    this.colorConversionService = colorConversionService;
     this.colorTileService = colorTileService;
+    this.parallelThresholdTiles = parallelThresholdTiles;
+  }
+
+  public TileScores calculateScores(final ColorDistribution colorDistribution) {
+    return calculateScores(colorDistribution, colorTileService.awaitCatalog());
+  }
+
+  public TileScores calculateScores(final ColorDistribution colorDistribution, final ColorTileCatalog catalog) {
+    final Palette palette = toLabPalette(colorDistribution.getColorDistributionEntries());
+    final double[] scores = new double[catalog.size()];
+
+    if (catalog.size() < parallelThresholdTiles) {
+      scoreTiles(palette, catalog, 0, catalog.size(), scores);
+    } else {
+      // every task owns a disjoint tile range, so the result does not depend on the split
+      final int taskCount = (catalog.size() + TILES_PER_TASK - 1) / TILES_PER_TASK;
+      IntStream.range(0, taskCount).parallel().forEach(task -> scoreTiles(palette, catalog, task * TILES_PER_TASK,
+        Math.min(catalog.size(), (task + 1) * TILES_PER_TASK), scores));
+    }
+
+    return TileScores.builder()
+      .catalogVersion(catalog.getVersion())
+      .names(catalog.getNames())
+      .scores(scores)
+      .build();
   }
 
-  public Map<String, Double> calculateScores(final ColorDistribution colorDistribution) {
-    final double shareAmount = colorDistribution.getColorDistributionEntries().stream()
-            .mapToInt(ColorDistributionEntry::getShare)
-            .sum();
-
-    return colorTileService.getColorTiles().values().stream()
-            .flatMap(List::stream)
-            .collect(toMap(ColorTile::getName,
-                    tile -> colorDistribution.getColorDistributionEntries().stream()
-                            .mapToDouble(calculateColorDistanceShare(tile, shareAmount))
-                            .sum()));
+  private void scoreTiles(final Palette palette, final ColorTileCatalog catalog, final int fromTile, final int toTile,
+                          final double[] scores) {
+    // one row of the palette x tile distance matrix per tile, reduced to the share weighted sum right away; the tile
+    // is the reference of the batch call, i.e. the second color of calculateDistance, so every palette entry stays the
+    // first color as in the per pair scoring
+    final double[] distances = new double[palette.size];
+    for (int tile = fromTile; tile < toTile; tile++) {
+      colorDistanceService.calculateDistances(catalog.getLightness()[tile], catalog.getA()[tile], catalog.getB()[tile],
+        palette.lightness, palette.a, palette.b, palette.size, distances);
+
+      double score = 0;
+      for (int entry = 0; entry < palette.size; entry++) {
+        score += palette.weights[entry] * distances[entry];
+      }
+      scores[tile] = score;
+    }
   }
 
-  private ToDoubleFunction<ColorDistributionEntry> calculateColorDistanceShare(final ColorTile tile, final double shareAmount) {
-    return colorDistributionEntry -> {
-      final double colorPercentageOfImage = colorDistributionEntry.getShare() / shareAmount;
-      return colorPercentageOfImage * colorDistanceService.calculateDistance(colorDistributionEntry.getColor(), tile.getColor());
-    };
+  private Palette toLabPalette(final List<ColorDistributionEntry> entries) {
+    final double shareAmount = entries.stream()
+      .mapToInt(ColorDistributionEntry::getShare)
+      .sum();
+
+    final Palette palette = new Palette(entries.size());
+    for (int entry = 0; entry < palette.size; entry++) {
+      final long packedLab = colorConversionService.toPackedLab(entries.get(entry).getColor().toPackedRgb());
+      palette.lightness[entry] = ColorConversionService.labL(packedLab);
+      palette.a[entry] = ColorConversionService.labA(packedLab);
+      palette.b[entry] = ColorConversionService.labB(packedLab);
+      palette.weights[entry] = entries.get(entry).getShare() / shareAmount;
+    }
+    return palette;
+  }
+
+  private static final class Palette {
+
+    private final int size;
+    private final double[] lightness;
+    private final double[] a;
+    private final double[] b;
+    private final double[] weights;
+
+    private Palette(final int size) {
+      this.size = size;
+      this.lightness = new double[size];
+      this.a = new double[size];
+      this.b = new double[size];
+      this.weights = new double[size];
+    }
   }
 }
@@ -1,11 +1,22 @@
 package de.fbeutel.coloranalyzer.color.service;
 
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
 import de.fbeutel.coloranalyzer.color.domain.RgbColor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.Optional;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 import static java.lang.Math.*;
 
@@ -13,15 +24,80 @@ import static java.lang.Math.*;
 @Service
 public class ImageService {
 
-    public RgbColor getRgb(final byte[] imageData, final int coordinateX, final int coordinateY, final int width,
-                           final int pixelLength) {
-        final int pos = coordinateY * pixelLength * width + coordinateX * pixelLength;
+    public BufferedImage decode(final ImageInputStream input, final int pixelBudget) throws IOException {
+        final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            return null;
+        }
 
-        return RgbColor.builder()
-                .r(imageData[pos + 2] & 0xff)
-                .g(imageData[pos + 1] & 0xff)
-                .b(imageData[pos] & 0xff)
-                .build();
+        final ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            final ImageReadParam param = reader.getDefaultReadParam();
+
+            // the jdk readers have no dct domain scaling, subsampling skips pixels while decoding instead of
+            // materializing the full raster, which still saves the raster memory and most color conversion work
+            final long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+            if (pixelBudget > 0 && pixels > pixelBudget) {
+                final int subsampling = (int) Math.ceil(Math.sqrt(pixels / (double) pixelBudget));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            }
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    public PixelBuffer toPixelBuffer(final BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] pixels = new int[width * height];
+
+        // the raw raster paths only apply to rasters which start at the buffer origin and have no row padding
+        final WritableRaster raster = image.getRaster();
+        final boolean plainRaster = raster.getParent() == null && raster.getDataBuffer().getNumBanks() == 1
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getOffset() == 0;
+
+        switch (plainRaster ? image.getType() : BufferedImage.TYPE_CUSTOM) {
+            case BufferedImage.TYPE_3BYTE_BGR:
+                unpackBytes(raster, pixels, 3, 2, 1, 0);
+                break;
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                unpackBytes(raster, pixels, 4, 3, 2, 1);
+                break;
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                final int[] packedData = ((DataBufferInt) raster.getDataBuffer()).getData();
+                for (int index = 0; index < pixels.length; index++) {
+                    pixels[index] = packedData[index] & 0xffffff;
+                }
+                break;
+            default:
+                // indexed, gray, premultiplied and custom layouts are converted to srgb by the color model
+                image.getRGB(0, 0, width, height, pixels, 0, width);
+                for (int index = 0; index < pixels.length; index++) {
+                    pixels[index] &= 0xffffff;
+                }
+        }
+
+        return new PixelBuffer(width, height, pixels);
+    }
+
+    private void unpackBytes(final WritableRaster raster, final int[] pixels, final int pixelLength, final int redOffset,
+                             final int greenOffset, final int blueOffset) {
+        final byte[] imageData = ((DataBufferByte) raster.getDataBuffer()).getData();
+        for (int index = 0, pos = 0; index < pixels.length; index++, pos += pixelLength) {
+            pixels[index] = PixelBuffer.pack(imageData[pos + redOffset] & 0xff, imageData[pos + greenOffset] & 0xff,
+                    imageData[pos + blueOffset] & 0xff);
+        }
+    }
+
+    public int getMeanColor(final int packedRgb1, final int packedRgb2) {
+        return PixelBuffer.pack(
+                (int) round((PixelBuffer.red(packedRgb1) + PixelBuffer.red(packedRgb2)) / 2.0),
+                (int) round((PixelBuffer.green(packedRgb1) + PixelBuffer.green(packedRgb2)) / 2.0),
+                (int) round((PixelBuffer.blue(packedRgb1) + PixelBuffer.blue(packedRgb2)) / 2.0));
     }
 
     public RgbColor getMeanColor(final RgbColor... colors) {
@@ -0,0 +1,153 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import static de.fbeutel.coloranalyzer.color.domain.ColorHistogram.BINS_PER_CHANNEL;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorHistogram;
+import de.fbeutel.coloranalyzer.color.domain.ColorPalette;
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
+import de.fbeutel.coloranalyzer.color.domain.RgbDimension;
+
+@Service
+public class MedianCutService {
+
+  public ColorPalette quantize(final ColorHistogram histogram, final int maxColors) {
+    List<ColorBox> boxes = new ArrayList<>();
+    if (histogram.getTotalCount() > 0) {
+      boxes.add(shrink(histogram, new int[]{0, 0, 0},
+        new int[]{BINS_PER_CHANNEL - 1, BINS_PER_CHANNEL - 1, BINS_PER_CHANNEL - 1}));
+    }
+
+    // every round cuts all boxes once, like splitting buckets level by level
+    boolean boxesCut = true;
+    while (boxes.size() < maxColors && boxesCut) {
+      boxesCut = false;
+      int boxCount = boxes.size();
+      final List<ColorBox> resultBoxes = new ArrayList<>();
+      final List<ColorBox> cutBoxes = new ArrayList<>();
+
+      for (final ColorBox box : boxes) {
+        if (boxCount < maxColors && box.isCuttable()) {
+          cutBoxes.addAll(cut(histogram, box));
+          boxCount++;
+          boxesCut = true;
+        } else {
+          resultBoxes.add(box);
+        }
+      }
+
+      resultBoxes.addAll(cutBoxes);
+      boxes = resultBoxes;
+    }
+
+    final int[] colors = new int[boxes.size()];
+    final int[] shares = new int[boxes.size()];
+    for (int index = 0; index < boxes.size(); index++) {
+      final ColorBox box = boxes.get(index);
+      colors[index] = PixelBuffer.pack((int) (box.redSum / box.count), (int) (box.greenSum / box.count),
+        (int) (box.blueSum / box.count));
+      shares[index] = (int) box.count;
+    }
+    return new ColorPalette(colors, shares);
+  }
+
+  private List<ColorBox> cut(final ColorHistogram histogram, final ColorBox box) {
+    final int dimension = determineDominantDimension(box).ordinal();
+
+    // project the box onto the cut dimension and cut at the median of the cumulative counts
+    final long[] sliceCounts = new long[BINS_PER_CHANNEL];
+    final int[] counts = histogram.getCounts();
+    final int[] position = new int[3];
+    for (position[0] = box.min[0]; position[0] <= box.max[0]; position[0]++) {
+      for (position[1] = box.min[1]; position[1] <= box.max[1]; position[1]++) {
+        for (position[2] = box.min[2]; position[2] <= box.max[2]; position[2]++) {
+          sliceCounts[position[dimension]] += counts[ColorHistogram.binIndex(position[0], position[1], position[2])];
+        }
+      }
+    }
+
+    int cutSlice = box.min[dimension];
+    long cumulativeCount = sliceCounts[cutSlice];
+    while (cumulativeCount < (box.count + 1) / 2 && cutSlice < box.max[dimension] - 1) {
+      cutSlice++;
+      cumulativeCount += sliceCounts[cutSlice];
+    }
+
+    final int[] lowerMax = box.max.clone();
+    lowerMax[dimension] = cutSlice;
+    final int[] upperMin = box.min.clone();
+    upperMin[dimension] = cutSlice + 1;
+
+    final List<ColorBox> cutBoxes = new ArrayList<>();
+    cutBoxes.add(shrink(histogram, box.min.clone(), lowerMax));
+    cutBoxes.add(shrink(histogram, upperMin, box.max.clone()));
+    return cutBoxes;
+  }
+
+  private ColorBox shrink(final ColorHistogram histogram, final int[] min, final int[] max) {
+    final ColorBox box = new ColorBox();
+    final int[] counts = histogram.getCounts();
+
+    for (int red = min[0]; red <= max[0]; red++) {
+      for (int green = min[1]; green <= max[1]; green++) {
+        for (int blue = min[2]; blue <= max[2]; blue++) {
+          final int binIndex = ColorHistogram.binIndex(red, green, blue);
+          if (counts[binIndex] > 0) {
+            box.include(red, green, blue);
+            box.count += counts[binIndex];
+            box.redSum += histogram.getRedSums()[binIndex];
+            box.greenSum += histogram.getGreenSums()[binIndex];
+            box.blueSum += histogram.getBlueSums()[binIndex];
+          }
+        }
+      }
+    }
+    return box;
+  }
+
+  private RgbDimension determineDominantDimension(final ColorBox box) {
+    final int redRange = box.range(RgbDimension.RED);
+    final int greenRange = box.range(RgbDimension.GREEN);
+    final int blueRange = box.range(RgbDimension.BLUE);
+
+    if (redRange > greenRange && redRange > blueRange) {
+      return RgbDimension.RED;
+    }
+    if (greenRange > blueRange && greenRange >= redRange) {
+      return RgbDimension.GREEN;
+    }
+    return RgbDimension.BLUE;
+  }
+
+  private static class ColorBox {
+
+    // inclusive bin bounds per dimension, tightened to the populated bins
+    private final int[] min = {BINS_PER_CHANNEL, BINS_PER_CHANNEL, BINS_PER_CHANNEL};
+    private final int[] max = {-1, -1, -1};
+    private long count;
+    private long redSum;
+    private long greenSum;
+    private long blueSum;
+
+    private void include(final int red, final int green, final int blue) {
+      min[0] = Math.min(min[0], red);
+      min[1] = Math.min(min[1], green);
+      min[2] = Math.min(min[2], blue);
+      max[0] = Math.max(max[0], red);
+      max[1] = Math.max(max[1], green);
+      max[2] = Math.max(max[2], blue);
+    }
+
+    private int range(final RgbDimension dimension) {
+      return max[dimension.ordinal()] - min[dimension.ordinal()];
+    }
+
+    private boolean isCuttable() {
+      return max[0] > min[0] || max[1] > min[1] || max[2] > min[2];
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class ImageCacheEntry {
+
+  // image id plus the requested size limits, the same image in another resolution is another entry
+  private final String key;
+
+  // sha-256 of the image bytes, the blob file name
+  private final String contentHash;
+  private final long size;
+
+  private final String etag;
+  private final long lastModified;
+  private final long validatedAt;
+}
@@ -0,0 +1,16 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class ImageCacheStatistics {
+
+  private final long hits;
+  private final long misses;
+  private final long revalidations;
+  private final long evictions;
+  private final int entries;
+  private final long sizeBytes;
+}
@@ -0,0 +1,25 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+import lombok.Builder;
+import lombok.Value;
+
+import de.fbeutel.coloranalyzer.color.domain.BorderColorDeterminationResult;
+import de.fbeutel.coloranalyzer.color.domain.ColorDistribution;
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
+import de.fbeutel.coloranalyzer.color.domain.TileScores;
+
+@Value
+@Builder(toBuilder = true)
+public class ImportItem {
+
+  private final String searchWord;
+  private final String productUrl;
+  private final ProductData productData;
+
+  private final int imageIndex;
+  private final ProductImage productImage;
+  private final PixelBuffer pixels;
+  private final BorderColorDeterminationResult borderColorResult;
+  private final ColorDistribution colorDistribution;
+  private final TileScores tileScores;
+}
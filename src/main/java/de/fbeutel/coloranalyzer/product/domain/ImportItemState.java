@@ -0,0 +1,20 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+public enum ImportItemState {
+
+  DISCOVERED,
+  FETCHED,
+  ANALYSED,
+
+  // the product is stored, by this job or before it
+  STORED,
+
+  // no product data or no image with an acceptable border
+  SKIPPED,
+
+  FAILED;
+
+  public boolean isFinal() {
+    return this == STORED || this == SKIPPED || this == FAILED;
+  }
+}
@@ -0,0 +1,24 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Document
+@Builder(toBuilder = true)
+public class ImportJob {
+
+  @Id
+  private final String id;
+  private final List<String> searchWords;
+  private final ImportJobStatus status;
+
+  private final Instant createdAt;
+  private final Instant completedAt;
+}
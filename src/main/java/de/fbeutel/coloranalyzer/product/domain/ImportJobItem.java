@@ -0,0 +1,37 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Document
+@Builder(toBuilder = true)
+public class ImportJobItem {
+
+  // job id and product url, a product found by several search words is imported once per job
+  @Id
+  private final String id;
+  private final String jobId;
+  private final String searchWord;
+  private final String productUrl;
+
+  // kept once fetched, so a resumed item continues with the image download
+  private final ProductData productData;
+
+  private final ImportItemState state;
+  private final ImportOutcome outcome;
+
+  // the instance working on the item, other instances skip it until the lease ran out, a failed item keeps its lease
+  // for the retry delay, attempts counts the claims; every item of a batch claim carries the same token
+  private final String leaseOwner;
+  private final String leaseToken;
+  private final Instant leaseUntil;
+  private final int attempts;
+
+  private final Instant updatedAt;
+}
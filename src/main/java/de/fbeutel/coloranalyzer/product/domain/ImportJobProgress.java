@@ -0,0 +1,18 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+import java.util.List;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class ImportJobProgress {
+
+  private final ImportJob job;
+  private final List<ImportJobWord> words;
+
+  // number of items per state, states without items are left out
+  private final Map<ImportItemState, Long> items;
+}
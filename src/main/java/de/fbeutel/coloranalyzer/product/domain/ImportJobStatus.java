@@ -0,0 +1,10 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+public enum ImportJobStatus {
+
+  // search words or products are left, any instance picks the job up, also after a restart
+  RUNNING,
+
+  // every search word is discovered and every product reached a final state
+  COMPLETED
+}
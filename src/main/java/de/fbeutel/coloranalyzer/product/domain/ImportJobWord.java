@@ -0,0 +1,34 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Document
+@Builder(toBuilder = true)
+public class ImportJobWord {
+
+  // job id and search word
+  @Id
+  private final String id;
+  private final String jobId;
+  private final String searchWord;
+  private final boolean discovered;
+  private final int discoveredProducts;
+
+  // a discovery failing maxAttempts times marks the search word discovered with the error, so the job can complete
+  private final int attempts;
+  private final int maxAttempts;
+  private final String error;
+
+  // the instance discovering the search word, other instances skip it until the lease ran out
+  private final String leaseOwner;
+  private final Instant leaseUntil;
+
+  private final Instant updatedAt;
+}
@@ -0,0 +1,25 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+public enum ImportOutcome {
+
+  PERSISTED(ImportItemState.STORED),
+  EXISTING(ImportItemState.STORED),
+  MISSING_DATA(ImportItemState.SKIPPED),
+  NO_ACCEPTABLE_IMAGE(ImportItemState.SKIPPED),
+  FAILED(ImportItemState.FAILED);
+
+  private final ImportItemState state;
+
+  ImportOutcome(final ImportItemState state) {
+    this.state = state;
+  }
+
+  public ImportItemState getState() {
+    return state;
+  }
+
+  // metric tag value, e.g. no-acceptable-image
+  public String tag() {
+    return name().toLowerCase().replace('_', '-');
+  }
+}
@@ -15,5 +15,8 @@ public class ProductImage {
   private final String url;
 
   private final ColorDistribution colorDistribution;
+
+  // tile catalog the scores were calculated against, null for images stored before versions were tracked
+  private final String catalogVersion;
   private final Map<String, Double> imageScores;
 }
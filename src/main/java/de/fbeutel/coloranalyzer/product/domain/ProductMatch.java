@@ -0,0 +1,18 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class ProductMatch {
+
+  private final String productId;
+
+  // lab distance of the matched palette color plus the penalty for its share, lower is closer
+  private final double distance;
+
+  // the palette color closest to the query and its share of the palette
+  private final String color;
+  private final double share;
+}
@@ -1,7 +1,11 @@
 package de.fbeutel.coloranalyzer.product.domain;
 
+import java.util.stream.Stream;
+
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 public interface ProductRepository extends MongoRepository<Product, String> {
 
+  // cursor backed, the caller has to close the stream
+  Stream<Product> streamAllBy();
 }
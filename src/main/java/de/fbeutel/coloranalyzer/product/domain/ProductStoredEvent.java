@@ -0,0 +1,14 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+import java.util.List;
+
+import lombok.Builder;
+import lombok.Value;
+
+// published after a batch of products was written, listeners run on the persisting thread
+@Value
+@Builder(toBuilder = true)
+public class ProductStoredEvent {
+
+  private final List<Product> products;
+}
@@ -0,0 +1,30 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Document
+@Builder(toBuilder = true)
+public class RescoringCheckpoint {
+
+  // tile catalog version the products are rescored against, one checkpoint per version
+  @Id
+  private final String catalogVersion;
+
+  // products are rescored in id order, every product up to this id is done
+  private final String lastProductId;
+  private final long processedProducts;
+  private final long rescoredProducts;
+  // products without a color distribution, which cannot be scored without downloading the image again
+  private final long skippedProducts;
+
+  private final Instant startedAt;
+  private final Instant updatedAt;
+  private final Instant completedAt;
+}
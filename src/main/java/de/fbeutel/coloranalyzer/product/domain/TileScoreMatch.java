@@ -0,0 +1,14 @@
+package de.fbeutel.coloranalyzer.product.domain;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class TileScoreMatch {
+
+  private final String productId;
+
+  // share weighted distance of the product palette to the tile, lower is a better match
+  private final double score;
+}
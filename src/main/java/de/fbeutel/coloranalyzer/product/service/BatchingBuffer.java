@@ -0,0 +1,71 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class BatchingBuffer<T> {
+
+  private final int maxSize;
+  private final Duration maxDelay;
+  private final ScheduledExecutorService scheduler;
+  private final Executor flushExecutor;
+  private final Consumer<List<T>> handler;
+
+  // guarded by this
+  private List<T> items = new ArrayList<>();
+  private ScheduledFuture<?> scheduledFlush;
+
+  // full batches are handled on the adding thread, batches flushed by time on the flush executor
+  public BatchingBuffer(final int maxSize, final Duration maxDelay, final ScheduledExecutorService scheduler,
+                        final Executor flushExecutor, final Consumer<List<T>> handler) {
+    this.maxSize = maxSize;
+    this.maxDelay = maxDelay;
+    this.scheduler = scheduler;
+    this.flushExecutor = flushExecutor;
+    this.handler = handler;
+  }
+
+  public void add(final T item) {
+    final List<T> batch;
+    synchronized (this) {
+      items.add(item);
+      if (items.size() < maxSize) {
+        // the first item of a batch starts the clock, so no item waits longer than the max delay
+        if (items.size() == 1) {
+          scheduledFlush = scheduler.schedule(() -> flushExecutor.execute(this::flush), maxDelay.toMillis(),
+            TimeUnit.MILLISECONDS);
+        }
+        return;
+      }
+      batch = drain();
+    }
+    handler.accept(batch);
+  }
+
+  public void flush() {
+    final List<T> batch;
+    synchronized (this) {
+      if (items.isEmpty()) {
+        return;
+      }
+      batch = drain();
+    }
+    handler.accept(batch);
+  }
+
+  private List<T> drain() {
+    if (scheduledFlush != null) {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+    final List<T> batch = items;
+    items = new ArrayList<>();
+    return batch;
+  }
+}
@@ -0,0 +1,62 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.ImageInputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import de.fbeutel.coloranalyzer.product.domain.ProductImage;
+
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "color-analyzer.connector.mode", havingValue = "blocking", matchIfMissing = true)
+public class BlockingImageServerConnector implements ImageServerConnector {
+
+  private final int maxWidth;
+  private final int maxHeight;
+  private final HostConcurrencyLimiter hostConcurrencyLimiter;
+  private final ImageCache imageCache;
+
+  public BlockingImageServerConnector(@Value("${color-analyzer.image.max-width:500}") final int maxWidth,
+                                      @Value("${color-analyzer.image.max-height:500}") final int maxHeight,
+                                      final HostConcurrencyLimiter hostConcurrencyLimiter,
+                                      final ImageCache imageCache) {
+    this.maxWidth = maxWidth;
+    this.maxHeight = maxHeight;
+    this.hostConcurrencyLimiter = hostConcurrencyLimiter;
+    this.imageCache = imageCache;
+  }
+
+  @Override
+  public ImageInputStream downloadImage(final ProductImage imageToFetch) {
+    try {
+      final URI scrapingUri = ImageServerConnector.imageUri(imageToFetch, maxWidth, maxHeight);
+      return new ByteBufferImageInputStream(hostConcurrencyLimiter.limit(scrapingUri,
+        () -> readImage(imageToFetch, scrapingUri)));
+    } catch (UncheckedIOException exception) {
+      log.error("exception during image download", exception);
+      throw new RuntimeException();
+    }
+  }
+
+  private ByteBuffer readImage(final ProductImage imageToFetch, final URI scrapingUri) {
+    if (imageCache.isEnabled()) {
+      return imageCache.read(ImageServerConnector.cacheKey(imageToFetch, maxWidth, maxHeight), scrapingUri);
+    }
+
+    try (InputStream responseStream = scrapingUri.toURL().openStream()) {
+      return ByteBuffer.wrap(responseStream.readAllBytes());
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.springframework.http.RequestEntity.get;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import lombok.extern.slf4j.Slf4j;
+
+import de.fbeutel.coloranalyzer.product.domain.ProductData;
+import de.fbeutel.coloranalyzer.product.domain.ProductUrls;
+
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "color-analyzer.connector.mode", havingValue = "blocking", matchIfMissing = true)
+public class BlockingScraperConnector implements ScraperConnector {
+
+  private final RestTemplate restTemplate;
+  private final ConnectorProperties connectorProperties;
+  private final HostConcurrencyLimiter hostConcurrencyLimiter;
+  private final ExecutorMode executorMode;
+
+  public BlockingScraperConnector(final RestTemplateBuilder restTemplateBuilder,
+                                  final ConnectorProperties connectorProperties,
+                                  final HostConcurrencyLimiter hostConcurrencyLimiter,
+                                  final ImportProperties importProperties) {
+    this.restTemplate = restTemplateBuilder.build();
+    this.connectorProperties = connectorProperties;
+    this.hostConcurrencyLimiter = hostConcurrencyLimiter;
+    this.executorMode = importProperties.getExecutorMode();
+  }
+
+  @Override
+  public List<String> fetchProductUrls(final String searchWord) {
+    if (executorMode == ExecutorMode.VIRTUAL) {
+      return fetchProductUrlsConcurrently(searchWord);
+    }
+
+    final List<String> foundUrls = new ArrayList<>();
+    IntStream.range(1, connectorProperties.getSearchResultPages() + 1)
+      .forEach(pageNumber -> foundUrls.addAll(fetchProductUrls(searchWord, pageNumber)));
+    return foundUrls;
+  }
+
+  @Override
+  public ProductData fetchProductData(final String urlToScrape) {
+    final URI scrapingUri = ScraperUris.productDataUri(connectorProperties.getScraperBaseUrl(), urlToScrape);
+
+    final ResponseEntity<ProductData> response = hostConcurrencyLimiter.limit(scrapingUri,
+      () -> restTemplate.exchange(get(scrapingUri).build(), ProductData.class));
+
+    if (!response.getStatusCode().is2xxSuccessful()) {
+      log.error("error during product data fetching! RC: " + response.getStatusCode().value() + " body: " + response.getBody());
+    }
+
+    return response.getBody();
+  }
+
+  private List<String> fetchProductUrlsConcurrently(final String searchWord) {
+    // pages are collected in page order, so the result equals the sequential fetch
+    try (ExecutorService pageExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+      final List<Future<List<String>>> pages = IntStream.range(1, connectorProperties.getSearchResultPages() + 1)
+        .mapToObj(pageNumber -> pageExecutor.submit(() -> fetchProductUrls(searchWord, pageNumber)))
+        .collect(Collectors.toList());
+
+      final List<String> foundUrls = new ArrayList<>();
+      for (final Future<List<String>> page : pages) {
+        foundUrls.addAll(page.get());
+      }
+      return foundUrls;
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while fetching product urls for " + searchWord, exception);
+    } catch (ExecutionException exception) {
+      throw new IllegalStateException("error during product url fetching for " + searchWord, exception.getCause());
+    }
+  }
+
+  private List<String> fetchProductUrls(final String searchWord, final int pageNumber) {
+    final URI scrapingUri = ScraperUris.productLinksUri(connectorProperties.getScraperBaseUrl(), searchWord, pageNumber);
+
+    final ResponseEntity<ProductUrls> response = hostConcurrencyLimiter.limit(scrapingUri,
+      () -> restTemplate.exchange(get(scrapingUri).build(), ProductUrls.class));
+
+    if (!response.getStatusCode().is2xxSuccessful()) {
+      log.error("error during product url fetching! RC: " + response.getStatusCode().value() + " body: " + response.getBody());
+      return new ArrayList<>();
+    }
+    return response.getBody().getUrls();
+  }
+}
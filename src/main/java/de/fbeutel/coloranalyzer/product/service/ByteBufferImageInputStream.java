@@ -0,0 +1,44 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+// lets image readers seek directly in a (memory mapped) buffer instead of copying it into their own stream cache
+class ByteBufferImageInputStream extends ImageInputStreamImpl {
+
+  private final ByteBuffer buffer;
+
+  ByteBufferImageInputStream(final ByteBuffer buffer) {
+    this.buffer = buffer.duplicate();
+  }
+
+  @Override
+  public int read() throws IOException {
+    checkClosed();
+    bitOffset = 0;
+    if (streamPos >= buffer.limit()) {
+      return -1;
+    }
+    return buffer.get((int) streamPos++) & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+    checkClosed();
+    bitOffset = 0;
+    if (streamPos >= buffer.limit()) {
+      return -1;
+    }
+    final int readLength = (int) Math.min(length, buffer.limit() - streamPos);
+    buffer.get((int) streamPos, bytes, offset, readLength);
+    streamPos += readLength;
+    return readLength;
+  }
+
+  @Override
+  public long length() {
+    return buffer.limit();
+  }
+}
@@ -0,0 +1,10 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+public enum ConnectorMode {
+
+  // RestTemplate and ImageIO.read(URL), every outstanding request waits on its calling thread
+  BLOCKING,
+
+  // WebClient on reactor netty, requests share the event loop and only the caller waits for the result
+  REACTIVE
+}
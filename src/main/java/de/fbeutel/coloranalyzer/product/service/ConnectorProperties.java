@@ -0,0 +1,32 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "color-analyzer.connector")
+public class ConnectorProperties {
+
+  // switches both connectors, the bean conditions read color-analyzer.connector.mode directly
+  private ConnectorMode mode = ConnectorMode.BLOCKING;
+
+  private String scraperBaseUrl = "http://localhost:3000";
+  private String imageBaseUrl = "https://i.otto.de/i/otto/";
+
+  // concurrent requests against a single host, regardless of how many threads want to fetch
+  private int maxConcurrentRequestsPerHost = 16;
+
+  // a response of the reactive image connector, or the next chunk of its body, which takes longer fails the image
+  private Duration imageReadTimeout = Duration.ofSeconds(30);
+
+  // search result pages scraped for the product urls of one search word
+  private int searchResultPages = 8;
+
+  // search result pages of one search word requested at the same time by the reactive scraper connector
+  private int pageConcurrency = 4;
+}
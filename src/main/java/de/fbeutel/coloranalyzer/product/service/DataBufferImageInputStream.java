@@ -0,0 +1,181 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+// lets image readers decode a response body while it arrives, straight from the buffers it is received in; readers
+// seek back to any position which was not flushed, so a chunk is only released once the stream was flushed past it or
+// is closed
+class DataBufferImageInputStream extends ImageInputStreamImpl {
+
+  private final URI uri;
+  private final long contentLength;
+  private final Duration chunkTimeout;
+  private final byte[] singleByte = new byte[1];
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition chunkReceived = lock.newCondition();
+  // guarded by lock, the first chunk starts at firstChunkPosition
+  private final ArrayDeque<DataBuffer> chunks = new ArrayDeque<>();
+  private long firstChunkPosition;
+  private long receivedBytes;
+  private boolean complete;
+  private Throwable error;
+  private boolean released;
+
+  private final Disposable subscription;
+
+  DataBufferImageInputStream(final Flux<DataBuffer> body, final long contentLength, final Duration chunkTimeout,
+                             final URI uri) {
+    this.uri = uri;
+    this.contentLength = contentLength;
+    this.chunkTimeout = chunkTimeout;
+    this.subscription = body.subscribe(this::received, this::failed, this::completed);
+  }
+
+  @Override
+  public int read() throws IOException {
+    return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+    checkClosed();
+    bitOffset = 0;
+    if (length == 0) {
+      return 0;
+    }
+
+    lock.lock();
+    try {
+      if (!awaitByte(streamPos)) {
+        return -1;
+      }
+      long chunkPosition = firstChunkPosition;
+      for (final DataBuffer chunk : chunks) {
+        final int chunkLength = chunk.readableByteCount();
+        if (streamPos < chunkPosition + chunkLength) {
+          final int chunkOffset = (int) (streamPos - chunkPosition);
+          final int readLength = Math.min(length, chunkLength - chunkOffset);
+          chunk.toByteBuffer(chunk.readPosition() + chunkOffset, ByteBuffer.wrap(bytes), offset, readLength);
+          streamPos += readLength;
+          return readLength;
+        }
+        chunkPosition += chunkLength;
+      }
+      throw new IllegalStateException("no chunk at position " + streamPos + " of image " + uri);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // the content length, or -1 for a chunked body which is not complete yet
+  @Override
+  public long length() {
+    lock.lock();
+    try {
+      return complete ? receivedBytes : contentLength;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void flushBefore(final long position) throws IOException {
+    super.flushBefore(position);
+    lock.lock();
+    try {
+      while (!chunks.isEmpty() && firstChunkPosition + chunks.peekFirst().readableByteCount() <= flushedPos) {
+        final DataBuffer chunk = chunks.pollFirst();
+        firstChunkPosition += chunk.readableByteCount();
+        DataBufferUtils.release(chunk);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // a body which was not read to its end is cancelled, chunks arriving afterwards are released right away
+  @Override
+  public void close() throws IOException {
+    super.close();
+    subscription.dispose();
+    lock.lock();
+    try {
+      released = true;
+      chunks.forEach(DataBufferUtils::release);
+      chunks.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // false once the body ended before the position
+  private boolean awaitByte(final long position) throws IOException {
+    long remainingNanos = chunkTimeout.toNanos();
+    try {
+      while (receivedBytes <= position && !complete && error == null) {
+        if (remainingNanos <= 0) {
+          throw new IOException("no data received for image " + uri + " within " + chunkTimeout);
+        }
+        remainingNanos = chunkReceived.awaitNanos(remainingNanos);
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for image " + uri);
+    }
+    if (error != null) {
+      throw new IOException("could not download image " + uri, error);
+    }
+    return receivedBytes > position;
+  }
+
+  private void received(final DataBuffer chunk) {
+    lock.lock();
+    try {
+      if (released) {
+        DataBufferUtils.release(chunk);
+        return;
+      }
+      chunks.addLast(chunk);
+      receivedBytes += chunk.readableByteCount();
+      chunkReceived.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void failed(final Throwable exception) {
+    lock.lock();
+    try {
+      error = exception;
+      chunkReceived.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void completed() {
+    lock.lock();
+    try {
+      complete = true;
+      chunkReceived.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+public enum ExecutorMode {
+
+  // network bound stages run on fixed size platform thread pools
+  PLATFORM,
+
+  // network bound stages and calls run on one virtual thread per task
+  VIRTUAL
+}
@@ -0,0 +1,36 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+@Component
+public class HostConcurrencyLimiter {
+
+  private final int maxConcurrentRequestsPerHost;
+  private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+  public HostConcurrencyLimiter(final ConnectorProperties connectorProperties) {
+    this.maxConcurrentRequestsPerHost = connectorProperties.getMaxConcurrentRequestsPerHost();
+  }
+
+  public <T> T limit(final URI uri, final Supplier<T> request) {
+    final Semaphore permits = hostPermits.computeIfAbsent(uri.getHost() + ":" + uri.getPort(),
+      host -> new Semaphore(maxConcurrentRequestsPerHost, true));
+    try {
+      permits.acquire();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while waiting for a request permit for " + uri.getHost(), exception);
+    }
+    try {
+      return request.get();
+    } finally {
+      permits.release();
+    }
+  }
+}
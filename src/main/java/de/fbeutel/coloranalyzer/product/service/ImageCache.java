@@ -0,0 +1,382 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.springframework.http.RequestEntity.get;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+import de.fbeutel.coloranalyzer.product.domain.ImageCacheEntry;
+import de.fbeutel.coloranalyzer.product.domain.ImageCacheStatistics;
+
+@Slf4j
+@Service
+public class ImageCache {
+
+  private final RestTemplate restTemplate;
+  private final ObjectMapper objectMapper;
+  private final ImageCacheProperties properties;
+  private final Path blobDirectory;
+  private final Path entryDirectory;
+
+  // a lock instead of synchronized, the guarded sections do file io and must not pin virtual threads
+  private final ReentrantLock lock = new ReentrantLock();
+  // access ordered, the eldest entry is the least recently used one; guarded by lock
+  private final LinkedHashMap<String, ImageCacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  // keys per blob, only blobs of cached keys count towards the size
+  private final Map<String, Integer> blobReferences = new HashMap<>();
+  // reads per blob which still have to map it
+  private final Map<String, Integer> blobPins = new HashMap<>();
+  private long sizeBytes;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong revalidations = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public ImageCache(final RestTemplateBuilder restTemplateBuilder, final ObjectMapper objectMapper,
+                    final ImageCacheProperties properties) {
+    this.restTemplate = restTemplateBuilder.build();
+    this.objectMapper = objectMapper;
+    this.properties = properties;
+    this.blobDirectory = Paths.get(properties.getDirectory(), "blobs");
+    this.entryDirectory = Paths.get(properties.getDirectory(), "entries");
+
+    if (properties.isEnabled()) {
+      loadEntries();
+    }
+  }
+
+  public boolean isEnabled() {
+    return properties.isEnabled();
+  }
+
+  public ByteBuffer read(final String key, final URI uri) {
+    return read(key, uri, request -> restTemplate.exchange(request, byte[].class));
+  }
+
+  // misses and revalidations send their (conditional) request through the fetcher, a 304 answer has no body
+  public ByteBuffer read(final String key, final URI uri,
+                         final Function<RequestEntity<Void>, ResponseEntity<byte[]>> fetcher) {
+    // the blob of a cached entry is pinned until it is mapped, so a concurrent eviction cannot delete it in between
+    final ImageCacheEntry cachedEntry = pin(key);
+    try {
+      return read(key, uri, fetcher, cachedEntry);
+    } finally {
+      if (cachedEntry != null) {
+        unpin(cachedEntry);
+      }
+    }
+  }
+
+  public ImageCacheStatistics statistics() {
+    lock.lock();
+    try {
+      return ImageCacheStatistics.builder()
+        .hits(hits.get())
+        .misses(misses.get())
+        .revalidations(revalidations.get())
+        .evictions(evictions.get())
+        .entries(entries.size())
+        .sizeBytes(sizeBytes)
+        .build();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private ByteBuffer read(final String key, final URI uri,
+                          final Function<RequestEntity<Void>, ResponseEntity<byte[]>> fetcher,
+                          final ImageCacheEntry cachedEntry) {
+    if (cachedEntry != null && (properties.isOffline() || isFresh(cachedEntry))) {
+      hits.incrementAndGet();
+      return map(cachedEntry);
+    }
+    if (properties.isOffline()) {
+      misses.incrementAndGet();
+      throw new IllegalStateException("image " + key + " is not cached and the image cache is offline");
+    }
+
+    final ResponseEntity<byte[]> response = fetcher.apply(request(uri, cachedEntry));
+    if (cachedEntry != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+      revalidations.incrementAndGet();
+      hits.incrementAndGet();
+      store(cachedEntry.toBuilder()
+        .validatedAt(System.currentTimeMillis())
+        .build());
+      return map(cachedEntry);
+    }
+
+    misses.incrementAndGet();
+    final byte[] content = response.getBody();
+    if (content == null) {
+      throw new IllegalStateException("empty response for image " + key);
+    }
+    final ImageCacheEntry entry = ImageCacheEntry.builder()
+      .key(key)
+      .contentHash(hash(content))
+      .size(content.length)
+      .etag(response.getHeaders().getETag())
+      .lastModified(response.getHeaders().getLastModified())
+      .validatedAt(System.currentTimeMillis())
+      .build();
+    writeBlob(entry, content);
+    store(entry);
+    return ByteBuffer.wrap(content);
+  }
+
+  private ImageCacheEntry pin(final String key) {
+    lock.lock();
+    try {
+      final ImageCacheEntry entry = entries.get(key);
+      if (entry != null && !Files.isRegularFile(blobFile(entry.getContentHash()))) {
+        // blob was removed behind our back, treat it as a miss
+        remove(key);
+        return null;
+      }
+      if (entry != null) {
+        blobPins.merge(entry.getContentHash(), 1, Integer::sum);
+      }
+      return entry;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // deletes the blob if it was evicted while pinned
+  private void unpin(final ImageCacheEntry entry) {
+    lock.lock();
+    try {
+      if (blobPins.merge(entry.getContentHash(), -1, Integer::sum) == 0) {
+        blobPins.remove(entry.getContentHash());
+        if (!blobReferences.containsKey(entry.getContentHash())) {
+          deleteQuietly(blobFile(entry.getContentHash()));
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean isFresh(final ImageCacheEntry entry) {
+    return System.currentTimeMillis() - entry.getValidatedAt() < properties.getRevalidateAfter().toMillis();
+  }
+
+  private RequestEntity<Void> request(final URI uri, final ImageCacheEntry cachedEntry) {
+    final RequestEntity.HeadersBuilder<?> request = get(uri);
+    if (cachedEntry != null && cachedEntry.getEtag() != null) {
+      request.ifNoneMatch(cachedEntry.getEtag());
+    } else if (cachedEntry != null && cachedEntry.getLastModified() > 0) {
+      request.ifModifiedSince(cachedEntry.getLastModified());
+    }
+    return request.build();
+  }
+
+  private ByteBuffer map(final ImageCacheEntry entry) {
+    try (FileChannel channel = FileChannel.open(blobFile(entry.getContentHash()), StandardOpenOption.READ)) {
+      // the mapping stays valid after the channel is closed and even after an eviction deletes the file
+      final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      touch(entry);
+      return mapped;
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+
+  // only restores the lru order after a restart, a missing or unwritable entry file must not fail the hit
+  private void touch(final ImageCacheEntry entry) {
+    try {
+      Files.setLastModifiedTime(entryFile(entry.getKey()), FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException exception) {
+      log.debug("could not touch image cache entry " + entry.getKey() + ": " + exception.getMessage());
+    }
+  }
+
+  private void writeBlob(final ImageCacheEntry entry, final byte[] content) {
+    final Path blobFile = blobFile(entry.getContentHash());
+    if (Files.isRegularFile(blobFile)) {
+      return;
+    }
+    try {
+      Files.createDirectories(blobDirectory);
+      final Path tempFile = Files.createTempFile(blobDirectory, entry.getContentHash(), ".tmp");
+      Files.write(tempFile, content);
+      Files.move(tempFile, blobFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+
+  private void store(final ImageCacheEntry entry) {
+    lock.lock();
+    try {
+      final ImageCacheEntry previousEntry = entries.get(entry.getKey());
+      if (previousEntry == null || !previousEntry.getContentHash().equals(entry.getContentHash())) {
+        if (previousEntry != null) {
+          release(previousEntry);
+        }
+        retain(entry);
+      }
+      entries.put(entry.getKey(), entry);
+
+      try {
+        Files.createDirectories(entryDirectory);
+        objectMapper.writeValue(entryFile(entry.getKey()).toFile(), entry);
+      } catch (IOException exception) {
+        log.warn("could not write image cache entry " + entry.getKey(), exception);
+      }
+      evict();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // evicting a key whose blob backs another key frees nothing, so the eviction goes on until enough bytes were freed
+  private void evict() {
+    long excessBytes = sizeBytes - properties.getMaxSizeBytes();
+    final Iterator<ImageCacheEntry> leastRecentlyUsed = entries.values().iterator();
+    while (excessBytes > 0 && entries.size() > 1 && leastRecentlyUsed.hasNext()) {
+      final ImageCacheEntry entry = leastRecentlyUsed.next();
+      leastRecentlyUsed.remove();
+      excessBytes -= release(entry);
+      deleteQuietly(entryFile(entry.getKey()));
+      evictions.incrementAndGet();
+    }
+  }
+
+  private void remove(final String key) {
+    final ImageCacheEntry entry = entries.remove(key);
+    if (entry != null) {
+      release(entry);
+      deleteQuietly(entryFile(key));
+    }
+  }
+
+  // a blob may back several keys and pinned reads, it is only deleted once the last one is gone
+  private void retain(final ImageCacheEntry entry) {
+    if (blobReferences.merge(entry.getContentHash(), 1, Integer::sum) == 1) {
+      sizeBytes += entry.getSize();
+    }
+  }
+
+  // the bytes freed, a blob stops counting towards the size with its last key even while reads still pin it
+  private long release(final ImageCacheEntry entry) {
+    final Integer references = blobReferences.computeIfPresent(entry.getContentHash(), (hash, count) -> count - 1);
+    if (references == null || references > 0) {
+      return 0;
+    }
+    blobReferences.remove(entry.getContentHash());
+    sizeBytes -= entry.getSize();
+    if (!blobPins.containsKey(entry.getContentHash())) {
+      deleteQuietly(blobFile(entry.getContentHash()));
+    }
+    return entry.getSize();
+  }
+
+  private void loadEntries() {
+    lock.lock();
+    try {
+      loadEntryFiles();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void loadEntryFiles() {
+    if (!Files.isDirectory(entryDirectory)) {
+      return;
+    }
+
+    // entry files are touched on every hit, so their modification time restores the lru order
+    final List<Path> entryFiles = new ArrayList<>();
+    try (Stream<Path> files = Files.list(entryDirectory)) {
+      files.filter(file -> file.toString().endsWith(".json")).forEach(entryFiles::add);
+    } catch (IOException exception) {
+      log.warn("could not list image cache entries in " + entryDirectory, exception);
+      return;
+    }
+    entryFiles.sort(Comparator.comparingLong(ImageCache::lastModifiedTime));
+
+    for (final Path entryFile : entryFiles) {
+      try {
+        final ImageCacheEntry entry = objectMapper.readValue(entryFile.toFile(), ImageCacheEntry.class);
+        if (Files.isRegularFile(blobFile(entry.getContentHash()))) {
+          entries.put(entry.getKey(), entry);
+          retain(entry);
+        } else {
+          deleteQuietly(entryFile);
+        }
+      } catch (IOException exception) {
+        log.warn("skipping unreadable image cache entry " + entryFile, exception);
+      }
+    }
+    evict();
+    log.info("loaded image cache with " + entries.size() + " entries and " + sizeBytes + " bytes");
+  }
+
+  private Path blobFile(final String contentHash) {
+    return blobDirectory.resolve(contentHash);
+  }
+
+  private Path entryFile(final String key) {
+    return entryDirectory.resolve(hash(key.getBytes(StandardCharsets.UTF_8)) + ".json");
+  }
+
+  private static long lastModifiedTime(final Path file) {
+    try {
+      return Files.getLastModifiedTime(file).toMillis();
+    } catch (IOException exception) {
+      return 0;
+    }
+  }
+
+  private static void deleteQuietly(final Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException exception) {
+      log.warn("could not delete " + file, exception);
+    }
+  }
+
+  private static String hash(final byte[] content) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    } catch (NoSuchAlgorithmException exception) {
+      throw new IllegalStateException(exception);
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "color-analyzer.image-cache")
+public class ImageCacheProperties {
+
+  private boolean enabled = true;
+  private String directory = "data/image-cache";
+
+  // blob bytes kept on disk, the least recently used entries are evicted beyond it
+  private long maxSizeBytes = 2L * 1024 * 1024 * 1024;
+
+  // cached images older than this are revalidated with a conditional request before use
+  private Duration revalidateAfter = Duration.ofDays(7);
+
+  // never touch the network, a cache miss fails the image
+  private boolean offline = false;
+}
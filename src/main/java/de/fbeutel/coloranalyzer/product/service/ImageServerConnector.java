@@ -1,37 +1,34 @@
 package de.fbeutel.coloranalyzer.product.service;
 
-import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.net.URL;
+import java.net.URI;
 
-import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
 
-import org.springframework.stereotype.Service;
 import org.springframework.web.util.UriComponentsBuilder;
 
-import lombok.extern.slf4j.Slf4j;
-
 import de.fbeutel.coloranalyzer.product.domain.ProductImage;
 
-@Slf4j
-@Service
-public class ImageServerConnector {
-
-  private static final Integer MAX_W = 500;
-  private static final Integer MAX_H = 500;
-
-  public BufferedImage fetchImage(final ProductImage imageToFetch) {
-    try {
-      final URL scrapingUri = UriComponentsBuilder.fromUriString(imageToFetch.getUrl())
-        .queryParam("maxW", MAX_W)
-        .queryParam("maxH", MAX_H)
-        .build()
-        .toUri()
-        .toURL();
-      return ImageIO.read(scrapingUri);
-    } catch (IOException exception) {
-      log.error("exception during image download", exception);
-      throw new RuntimeException();
+public interface ImageServerConnector {
+
+  // the caller closes the stream; cached images and the blocking connector hand out the complete image, the reactive
+  // connector hands out the body while it arrives
+  ImageInputStream downloadImage(ProductImage imageToFetch);
+
+  static String cacheKey(final ProductImage image, final int maxWidth, final int maxHeight) {
+    return image.getId() + "?maxW=" + maxWidth + "&maxH=" + maxHeight;
+  }
+
+  static URI imageUri(final ProductImage image, final int maxWidth, final int maxHeight) {
+    // a limit of 0 requests the original resolution
+    final UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromUriString(image.getUrl());
+    if (maxWidth > 0) {
+      uriBuilder.queryParam("maxW", maxWidth);
+    }
+    if (maxHeight > 0) {
+      uriBuilder.queryParam("maxH", maxHeight);
     }
+    return uriBuilder
+      .build()
+      .toUri();
   }
 }
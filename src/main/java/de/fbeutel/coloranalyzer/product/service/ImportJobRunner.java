@@ -0,0 +1,238 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import de.fbeutel.coloranalyzer.product.domain.ImportItem;
+import de.fbeutel.coloranalyzer.product.domain.ImportItemState;
+import de.fbeutel.coloranalyzer.product.domain.ImportJob;
+import de.fbeutel.coloranalyzer.product.domain.ImportJobItem;
+import de.fbeutel.coloranalyzer.product.domain.ImportJobWord;
+import de.fbeutel.coloranalyzer.product.domain.ImportOutcome;
+
+// works off the running import jobs one after the other: search words and products are claimed from mongo in small
+// batches and fed into the pipeline, so another instance, or this one after a restart, picks up whatever is left
+@Slf4j
+@Service
+public class ImportJobRunner {
+
+  private final ImportJobService importJobService;
+  private final ImportPipeline importPipeline;
+  private final ImportProperties importProperties;
+  private final Clock clock;
+  private final String instanceId;
+  private final Set<ImportRole> roles;
+  private final List<ImportItemState> claimedStates;
+
+  private final ExecutorService runnerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "import-job-runner");
+    thread.setDaemon(true);
+    return thread;
+  });
+  // released whenever there may be new work, so the runner does not wait out its poll interval
+  private final Semaphore wakeUps = new Semaphore(0);
+
+  public ImportJobRunner(final ImportJobService importJobService, final ImportPipeline importPipeline,
+                         final ImportProperties importProperties, final Clock clock,
+                         @Value("${server.port:8080}") final int serverPort) {
+    this.importJobService = importJobService;
+    this.importPipeline = importPipeline;
+    this.importProperties = importProperties;
+    this.clock = clock;
+    this.instanceId = importProperties.getInstanceId() != null
+      ? importProperties.getInstanceId()
+      : hostName() + "-" + serverPort;
+    this.roles = importProperties.getRoles();
+    this.claimedStates = roles.stream()
+      .flatMap(role -> role.getClaimedStates().stream())
+      .toList();
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    runnerExecutor.submit(this::runJobs);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    runnerExecutor.shutdownNow();
+  }
+
+  public ImportJob submit(final List<String> searchWords) {
+    final ImportJob job = importJobService.create(searchWords);
+    wakeUps.release();
+    return job;
+  }
+
+  private void runJobs() {
+    log.info("import job runner started as " + instanceId + " with roles " + roles);
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        prepare();
+        break;
+      } catch (RuntimeException exception) {
+        log.error("could not prepare the import jobs, retrying", exception);
+        await();
+      }
+    }
+
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        final Optional<ImportJob> job = importJobService.findRunning();
+        if (job.isPresent()) {
+          runJob(job.get());
+        } else {
+          await();
+        }
+      } catch (RuntimeException exception) {
+        log.error("error while running import jobs", exception);
+        await();
+      }
+    }
+  }
+
+  private void prepare() {
+    importJobService.ensureIndexes();
+    importJobService.releaseLeases(instanceId);
+    if (importProperties.isStartOnStartup() && roles.contains(ImportRole.DISCOVERY)
+      && importJobService.findRunning().isEmpty()) {
+      importJobService.create(importProperties.getSearchWords());
+    }
+  }
+
+  private void runJob(final ImportJob job) {
+    log.info("running import job " + job.getId());
+    final ImportPipeline.Run run = importPipeline.start(new JobProgress(job.getId()),
+      roles.contains(ImportRole.ANALYSIS));
+    final AtomicInteger runningDiscoveries = new AtomicInteger();
+    final long renewalIntervalMillis = importProperties.getLeaseDuration().toMillis() / 3;
+    Instant nextRenewal = clock.instant().plusMillis(renewalIntervalMillis);
+
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        boolean claimed = false;
+
+        while (roles.contains(ImportRole.DISCOVERY)
+          && runningDiscoveries.get() < importProperties.getUrlDiscoveryThreads()) {
+          final Optional<ImportJobWord> word = importJobService.claimWord(job.getId(), instanceId);
+          if (word.isEmpty()) {
+            break;
+          }
+          claimed = true;
+          runningDiscoveries.incrementAndGet();
+          run.discover(word.get().getSearchWord()).whenComplete((productUrls, error) -> {
+            try {
+              if (error != null) {
+                log.error("could not discover products for search word " + word.get().getSearchWord(), error);
+                importJobService.releaseWord(word.get(), error);
+              } else {
+                importJobService.completeWord(word.get(), productUrls);
+              }
+            } catch (RuntimeException exception) {
+              log.error("could not store the products of search word " + word.get().getSearchWord(), exception);
+            } finally {
+              runningDiscoveries.decrementAndGet();
+              wakeUps.release();
+            }
+          });
+        }
+
+        final int capacity = Math.min(importProperties.getClaimBatchSize(), run.capacity());
+        if (capacity > 0) {
+          final List<ImportJobItem> items = importJobService.claimItems(job.getId(), instanceId,
+            claimedStates, capacity);
+          items.forEach(item -> run.admit(ImportItem.builder()
+            .searchWord(item.getSearchWord())
+            .productUrl(item.getProductUrl())
+            .productData(item.getProductData())
+            .build()));
+          claimed |= !items.isEmpty();
+        }
+
+        if (clock.instant().isAfter(nextRenewal)) {
+          importJobService.renewLeases(instanceId);
+          nextRenewal = clock.instant().plusMillis(renewalIntervalMillis);
+        }
+
+        if (!claimed) {
+          // products in flight here or on another instance are still open, the job is not finished before them
+          if (runningDiscoveries.get() == 0 && importJobService.completeIfFinished(job.getId())) {
+            break;
+          }
+          await();
+        }
+      }
+    } finally {
+      run.finish();
+    }
+  }
+
+  private void await() {
+    try {
+      if (wakeUps.tryAcquire(importProperties.getPollInterval().toMillis(), TimeUnit.MILLISECONDS)) {
+        wakeUps.drainPermits();
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static String hostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException exception) {
+      return "localhost";
+    }
+  }
+
+  // every state change of a product is written through to its job item
+  private final class JobProgress implements ImportProgress {
+
+    private final String jobId;
+
+    private JobProgress(final String jobId) {
+      this.jobId = jobId;
+    }
+
+    @Override
+    public void fetched(final ImportItem item) {
+      importJobService.markFetched(jobId, item);
+    }
+
+    @Override
+    public void analysed(final ImportItem item) {
+      importJobService.markAnalysed(jobId, item);
+    }
+
+    @Override
+    public void handedOff(final ImportItem item) {
+      importJobService.markHandedOff(jobId, item);
+      wakeUps.release();
+    }
+
+    @Override
+    public void completed(final List<ImportItem> items, final ImportOutcome outcome) {
+      importJobService.markCompleted(jobId, items, outcome);
+      wakeUps.release();
+    }
+  }
+}
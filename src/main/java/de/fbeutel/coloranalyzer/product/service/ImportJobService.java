@@ -0,0 +1,357 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import de.fbeutel.coloranalyzer.product.domain.ImportItem;
+import de.fbeutel.coloranalyzer.product.domain.ImportItemState;
+import de.fbeutel.coloranalyzer.product.domain.ImportJob;
+import de.fbeutel.coloranalyzer.product.domain.ImportJobItem;
+import de.fbeutel.coloranalyzer.product.domain.ImportJobProgress;
+import de.fbeutel.coloranalyzer.product.domain.ImportJobStatus;
+import de.fbeutel.coloranalyzer.product.domain.ImportJobWord;
+import de.fbeutel.coloranalyzer.product.domain.ImportOutcome;
+
+// the persisted state of import jobs, every transition is a single conditional update, so several instances can work
+// on the same job and a restarted instance continues where the job was left
+@Slf4j
+@Service
+public class ImportJobService {
+
+  private static final List<ImportItemState> OPEN_STATES =
+    List.of(ImportItemState.DISCOVERED, ImportItemState.FETCHED, ImportItemState.ANALYSED);
+
+  private final MongoTemplate mongoTemplate;
+  private final ImportProperties importProperties;
+  private final Clock clock;
+
+  public ImportJobService(final MongoTemplate mongoTemplate, final ImportProperties importProperties,
+                          final Clock clock) {
+    this.mongoTemplate = mongoTemplate;
+    this.importProperties = importProperties;
+    this.clock = clock;
+  }
+
+  public void ensureIndexes() {
+    mongoTemplate.indexOps(ImportJobItem.class).ensureIndex(new Index()
+      .on("jobId", Sort.Direction.ASC)
+      .on("state", Sort.Direction.ASC));
+    mongoTemplate.indexOps(ImportJobItem.class).ensureIndex(new Index().on("leaseOwner", Sort.Direction.ASC));
+    mongoTemplate.indexOps(ImportJobItem.class).ensureIndex(new Index().on("leaseToken", Sort.Direction.ASC));
+    mongoTemplate.indexOps(ImportJobWord.class).ensureIndex(new Index().on("jobId", Sort.Direction.ASC));
+  }
+
+  public ImportJob create(final List<String> searchWords) {
+    final Instant now = clock.instant();
+    final ImportJob job = mongoTemplate.insert(ImportJob.builder()
+      .id(UUID.randomUUID().toString())
+      .searchWords(searchWords)
+      .status(ImportJobStatus.RUNNING)
+      .createdAt(now)
+      .build());
+
+    mongoTemplate.insertAll(searchWords.stream()
+      .distinct()
+      .map(searchWord -> ImportJobWord.builder()
+        .id(job.getId() + ":" + searchWord)
+        .jobId(job.getId())
+        .searchWord(searchWord)
+        .maxAttempts(importProperties.getMaxAttempts())
+        .updatedAt(now)
+        .build())
+      .collect(Collectors.toList()));
+    log.info("created import job " + job.getId() + " for search words " + searchWords);
+    return job;
+  }
+
+  public List<ImportJob> findAll() {
+    return mongoTemplate.find(new Query().with(Sort.by(Sort.Direction.DESC, "createdAt")), ImportJob.class);
+  }
+
+  // the oldest job first, so a resumed job is finished before a newer one is started
+  public Optional<ImportJob> findRunning() {
+    return Optional.ofNullable(mongoTemplate.findOne(query(where("status").is(ImportJobStatus.RUNNING))
+      .with(Sort.by(Sort.Direction.ASC, "createdAt")), ImportJob.class));
+  }
+
+  public Optional<ImportJobProgress> progress(final String jobId) {
+    final ImportJob job = mongoTemplate.findById(jobId, ImportJob.class);
+    if (job == null) {
+      return Optional.empty();
+    }
+
+    final Map<ImportItemState, Long> items = new EnumMap<>(ImportItemState.class);
+    mongoTemplate.aggregate(newAggregation(
+        match(where("jobId").is(jobId)),
+        group("state").count().as("count")), ImportJobItem.class, Document.class)
+      .forEach(state -> items.put(ImportItemState.valueOf(state.getString("_id")),
+        ((Number) state.get("count")).longValue()));
+
+    return Optional.of(ImportJobProgress.builder()
+      .job(job)
+      .words(mongoTemplate.find(query(where("jobId").is(jobId)).with(Sort.by("searchWord")), ImportJobWord.class))
+      .items(items)
+      .build());
+  }
+
+  public Optional<ImportJobWord> claimWord(final String jobId, final String owner) {
+    final Instant now = clock.instant();
+    return Optional.ofNullable(mongoTemplate.findAndModify(
+      query(where("jobId").is(jobId).and("discovered").is(false)
+        .andOperator(new Criteria().orOperator(leaseFree(now)), wordAttemptsLeft())),
+      lease(owner, now).inc("attempts", 1),
+      FindAndModifyOptions.options().returnNew(true),
+      ImportJobWord.class));
+  }
+
+  // items are inserted once per job, a product url found again by another search word or instance is left as it is
+  public void completeWord(final ImportJobWord word, final List<String> productUrls) {
+    final Instant now = clock.instant();
+    if (!productUrls.isEmpty()) {
+      final BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+        ImportJobItem.class);
+      for (final String productUrl : productUrls.stream().distinct().toList()) {
+        bulkOperations.upsert(query(where("_id").is(itemId(word.getJobId(), productUrl))), new Update()
+          .setOnInsert("jobId", word.getJobId())
+          .setOnInsert("searchWord", word.getSearchWord())
+          .setOnInsert("productUrl", productUrl)
+          .setOnInsert("state", ImportItemState.DISCOVERED)
+          .setOnInsert("attempts", 0)
+          .setOnInsert("updatedAt", now));
+      }
+      bulkOperations.execute();
+    }
+
+    mongoTemplate.updateFirst(query(where("_id").is(word.getId())), new Update()
+      .set("discovered", true)
+      .set("discoveredProducts", productUrls.size())
+      .set("leaseOwner", null)
+      .set("leaseUntil", null)
+      .set("updatedAt", now), ImportJobWord.class);
+    log.info("discovered " + productUrls.size() + " products for search word " + word.getSearchWord());
+  }
+
+  // a failed discovery is retried after the poll interval instead of the whole lease, until it is out of attempts
+  public void releaseWord(final ImportJobWord word, final Throwable error) {
+    final Instant now = clock.instant();
+    final Query leased = query(where("_id").is(word.getId()).and("leaseOwner").is(word.getLeaseOwner()));
+    if (word.getMaxAttempts() > 0 && word.getAttempts() >= word.getMaxAttempts()) {
+      mongoTemplate.updateFirst(leased, wordFailure(String.valueOf(error), now), ImportJobWord.class);
+      log.warn("gave up discovering products for search word " + word.getSearchWord() + " after "
+        + word.getAttempts() + " attempts");
+      return;
+    }
+    mongoTemplate.updateFirst(leased, new Update()
+      .set("leaseUntil", now.plus(importProperties.getPollInterval()))
+      .set("updatedAt", now), ImportJobWord.class);
+  }
+
+  // the job items are the work queue, claimed in batches of three round trips: pick free ids, lease those still free
+  // with a token only this claim knows, read them back by the token. the lease is the visibility timeout, concurrent
+  // claims of any number of instances never return the same product while it runs. ids taken by a concurrent claim
+  // in between are replaced by picking again
+  public List<ImportJobItem> claimItems(final String jobId, final String owner,
+                                       final Collection<ImportItemState> states, final int limit) {
+    final Instant now = clock.instant();
+    final String token = UUID.randomUUID().toString();
+    final Update lease = lease(owner, now)
+      .set("leaseToken", token)
+      .inc("attempts", 1);
+
+    int claimed = 0;
+    while (claimed < limit) {
+      final Query freeItems = query(claimable(jobId, states, now)).limit(limit - claimed);
+      freeItems.fields().include("_id");
+      final List<String> ids = mongoTemplate.find(freeItems, Document.class,
+          mongoTemplate.getCollectionName(ImportJobItem.class)).stream()
+        .map(item -> item.getString("_id"))
+        .toList();
+      if (ids.isEmpty()) {
+        break;
+      }
+      claimed += (int) mongoTemplate.updateMulti(query(claimable(jobId, states, now).and("_id").in(ids)), lease,
+        ImportJobItem.class).getModifiedCount();
+    }
+    return claimed > 0 ? mongoTemplate.find(query(where("leaseToken").is(token)), ImportJobItem.class) : List.of();
+  }
+
+  // keeps products and search words which are still being worked on from being claimed by another instance
+  public void renewLeases(final String owner) {
+    final Instant leaseUntil = clock.instant().plus(importProperties.getLeaseDuration());
+    mongoTemplate.updateMulti(query(where("leaseOwner").is(owner).and("state").in(OPEN_STATES)),
+      new Update().set("leaseUntil", leaseUntil), ImportJobItem.class);
+    mongoTemplate.updateMulti(query(where("leaseOwner").is(owner).and("discovered").is(false)),
+      new Update().set("leaseUntil", leaseUntil), ImportJobWord.class);
+  }
+
+  // leases of an earlier process with the same instance id, nothing of them is in progress anymore
+  public void releaseLeases(final String owner) {
+    final Update release = new Update()
+      .set("leaseOwner", null)
+      .set("leaseUntil", null);
+    final long items = mongoTemplate.updateMulti(query(where("leaseOwner").is(owner).and("state").in(OPEN_STATES)),
+      release, ImportJobItem.class).getModifiedCount();
+    final long words = mongoTemplate.updateMulti(query(where("leaseOwner").is(owner).and("discovered").is(false)),
+      release, ImportJobWord.class).getModifiedCount();
+    if (items + words > 0) {
+      log.info("released " + items + " products and " + words + " search words leased by " + owner);
+    }
+  }
+
+  // transitions never leave a final state, a product imported twice after an expired lease keeps its first result
+  public void markFetched(final String jobId, final ImportItem item) {
+    mongoTemplate.updateFirst(query(open(jobId, List.of(item))), fetched(item), ImportJobItem.class);
+  }
+
+  // the lease ends with the hand off, the attempts of the analysis are counted from here
+  public void markHandedOff(final String jobId, final ImportItem item) {
+    mongoTemplate.updateFirst(query(open(jobId, List.of(item))), fetched(item)
+      .set("attempts", 0)
+      .set("leaseOwner", null)
+      .set("leaseUntil", null), ImportJobItem.class);
+  }
+
+  public void markAnalysed(final String jobId, final ImportItem item) {
+    mongoTemplate.updateFirst(query(open(jobId, List.of(item))), new Update()
+      .set("state", ImportItemState.ANALYSED)
+      .set("updatedAt", clock.instant()), ImportJobItem.class);
+  }
+
+  // a failed product keeps its state and is claimable again after the retry delay, unless it is out of attempts
+  public void markCompleted(final String jobId, final Collection<ImportItem> items, final ImportOutcome outcome) {
+    final Instant now = clock.instant();
+    if (outcome == ImportOutcome.FAILED) {
+      mongoTemplate.updateMulti(query(open(jobId, items).and("attempts").lt(importProperties.getMaxAttempts())),
+        new Update()
+          .set("leaseOwner", null)
+          .set("leaseUntil", now.plus(importProperties.getRetryDelay()))
+          .set("updatedAt", now), ImportJobItem.class);
+    }
+
+    final Criteria completed = outcome == ImportOutcome.FAILED
+      ? open(jobId, items).and("attempts").gte(importProperties.getMaxAttempts())
+      : open(jobId, items);
+    mongoTemplate.updateMulti(query(completed), completion(outcome, now), ImportJobItem.class);
+  }
+
+  // completes the job once every search word is discovered and no product is left open, products whose last attempt
+  // ran out of its lease are failed first
+  public boolean completeIfFinished(final String jobId) {
+    final Instant now = clock.instant();
+    final long exhaustedWords = mongoTemplate.updateMulti(query(where("jobId").is(jobId).and("discovered").is(false)
+        .andOperator(new Criteria().orOperator(leaseFree(now)), new Criteria().norOperator(wordAttemptsLeft()))),
+      wordFailure("the lease of the last attempt ran out", now), ImportJobWord.class).getModifiedCount();
+    if (exhaustedWords > 0) {
+      log.warn("gave up " + exhaustedWords + " search words of import job " + jobId + " whose last attempt ran out "
+        + "of its lease");
+    }
+
+    final long exhausted = mongoTemplate.updateMulti(query(where("jobId").is(jobId)
+        .and("state").in(OPEN_STATES)
+        .and("attempts").gte(importProperties.getMaxAttempts())
+        .orOperator(leaseFree(now))), completion(ImportOutcome.FAILED, now), ImportJobItem.class)
+      .getModifiedCount();
+    if (exhausted > 0) {
+      log.warn("failed " + exhausted + " products of import job " + jobId + " after " + importProperties
+        .getMaxAttempts() + " attempts");
+    }
+
+    if (mongoTemplate.exists(query(where("jobId").is(jobId).and("discovered").is(false)), ImportJobWord.class)
+      || mongoTemplate.exists(query(where("jobId").is(jobId).and("state").in(OPEN_STATES)), ImportJobItem.class)) {
+      return false;
+    }
+
+    // every instance working on the job gets here, only one of them completes it
+    if (mongoTemplate.updateFirst(query(where("_id").is(jobId).and("status").is(ImportJobStatus.RUNNING)), new Update()
+      .set("status", ImportJobStatus.COMPLETED)
+      .set("completedAt", clock.instant()), ImportJob.class).getModifiedCount() > 0) {
+      log.info("completed import job " + jobId);
+    }
+    return true;
+  }
+
+  static String itemId(final String jobId, final String productUrl) {
+    return jobId + ":" + productUrl;
+  }
+
+  private Criteria open(final String jobId, final Collection<ImportItem> items) {
+    return where("_id").in(items.stream().map(item -> itemId(jobId, item.getProductUrl())).toList())
+      .and("state").in(OPEN_STATES);
+  }
+
+  private Criteria claimable(final String jobId, final Collection<ImportItemState> states, final Instant now) {
+    return where("jobId").is(jobId)
+      .and("state").in(states)
+      .and("attempts").lt(importProperties.getMaxAttempts())
+      .orOperator(leaseFree(now));
+  }
+
+  private Update fetched(final ImportItem item) {
+    return new Update()
+      .set("state", ImportItemState.FETCHED)
+      .set("productData", item.getProductData())
+      .set("updatedAt", clock.instant());
+  }
+
+  private Update completion(final ImportOutcome outcome, final Instant now) {
+    return new Update()
+      .set("state", outcome.getState())
+      .set("outcome", outcome)
+      .set("leaseOwner", null)
+      .set("leaseUntil", null)
+      .set("updatedAt", now);
+  }
+
+  // words of jobs created before attempts were counted have no limit
+  private Criteria wordAttemptsLeft() {
+    return new Criteria().orOperator(where("maxAttempts").exists(false),
+      Criteria.expr(ComparisonOperators.Lt.valueOf("attempts").lessThan("maxAttempts")));
+  }
+
+  private Update wordFailure(final String error, final Instant now) {
+    return new Update()
+      .set("discovered", true)
+      .set("error", error)
+      .set("leaseOwner", null)
+      .set("leaseUntil", null)
+      .set("updatedAt", now);
+  }
+
+  private Criteria[] leaseFree(final Instant now) {
+    return new Criteria[] {where("leaseUntil").is(null), where("leaseUntil").lt(now)};
+  }
+
+  private Update lease(final String owner, final Instant now) {
+    return new Update()
+      .set("leaseOwner", owner)
+      .set("leaseUntil", now.plus(importProperties.getLeaseDuration()))
+      .set("updatedAt", now);
+  }
+}
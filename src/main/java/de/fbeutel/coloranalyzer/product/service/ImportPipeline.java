@@ -0,0 +1,450 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static java.util.stream.Collectors.toList;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.stream.ImageInputStream;
+
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import de.fbeutel.coloranalyzer.color.domain.BorderColorDeterminationResult;
+import de.fbeutel.coloranalyzer.color.domain.ColorDistribution;
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
+import de.fbeutel.coloranalyzer.color.domain.TileScores;
+import de.fbeutel.coloranalyzer.color.service.ColorDistributionService;
+import de.fbeutel.coloranalyzer.color.service.ImageBorderService;
+import de.fbeutel.coloranalyzer.color.service.ImageScoringService;
+import de.fbeutel.coloranalyzer.color.service.ImageService;
+import de.fbeutel.coloranalyzer.product.domain.ImportItem;
+import de.fbeutel.coloranalyzer.product.domain.ImportOutcome;
+import de.fbeutel.coloranalyzer.product.domain.Product;
+import de.fbeutel.coloranalyzer.product.domain.ProductData;
+import de.fbeutel.coloranalyzer.product.domain.ProductImage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+@Slf4j
+@Service
+public class ImportPipeline {
+
+  private static final String STAGE_TIMER = "coloranalyzer.import.stage";
+  private static final List<String> STAGES = List.of("url-fetch", "product-fetch", "image-download", "decode",
+    "border-check", "distribution", "scoring", "persist");
+
+  private final ScraperConnector scraperConnector;
+  private final ProductService productService;
+  private final ImageServerConnector imageServerConnector;
+  private final ImageService imageService;
+  private final ImageBorderService imageBorderService;
+  private final ColorDistributionService colorDistributionService;
+  private final ImageScoringService imageScoringService;
+  private final ImportProperties importProperties;
+  private final ConnectorProperties connectorProperties;
+  private final ImageCache imageCache;
+  private final PixelBufferCache pixelBufferCache;
+
+  private final MeterRegistry meterRegistry;
+  private final Meter.MeterProvider<Timer> stageTimers;
+  private final Meter.MeterProvider<Counter> borderChecks;
+  private final Meter.MeterProvider<Counter> importedProducts;
+
+  public ImportPipeline(final ScraperConnector scraperConnector, final ProductService productService,
+                        final ImageServerConnector imageServerConnector, final ImageService imageService,
+                        final ImageBorderService imageBorderService,
+                        final ColorDistributionService colorDistributionService,
+                        final ImageScoringService imageScoringService, final ImportProperties importProperties,
+                        final ConnectorProperties connectorProperties, final ImageCache imageCache,
+                        final PixelBufferCache pixelBufferCache, final MeterRegistry meterRegistry) {
+    this.scraperConnector = scraperConnector;
+    this.productService = productService;
+    this.imageServerConnector = imageServerConnector;
+    this.imageService = imageService;
+    this.imageBorderService = imageBorderService;
+    this.colorDistributionService = colorDistributionService;
+    this.imageScoringService = imageScoringService;
+    this.importProperties = importProperties;
+    this.connectorProperties = connectorProperties;
+    this.imageCache = imageCache;
+    this.pixelBufferCache = pixelBufferCache;
+    this.meterRegistry = meterRegistry;
+    // percentiles are kept in hdr histograms per stage and search word, the prometheus buckets allow aggregating
+    this.stageTimers = Timer.builder(STAGE_TIMER)
+      .description("processing time of one product (one search word for url discovery) in an import stage")
+      .publishPercentileHistogram()
+      .publishPercentiles(0.5, 0.95, 0.99)
+      .withRegistry(meterRegistry);
+    this.borderChecks = Counter.builder("coloranalyzer.import.border.checks")
+      .description("product images with an accepted or rejected border color")
+      .withRegistry(meterRegistry);
+    this.importedProducts = Counter.builder("coloranalyzer.import.products")
+      .description("products leaving the import, by outcome")
+      .withRegistry(meterRegistry);
+  }
+
+  // the stage threads live until the run is finished, products are admitted one by one while it runs, without
+  // analysis every product is handed off once its product data is fetched
+  public Run start(final ImportProgress progress, final boolean analyse) {
+    return new Run(progress, analyse);
+  }
+
+  private boolean acceptableBorderColorResult(final BorderColorDeterminationResult result) {
+    final double threshold = 0.9;
+    return result.getUpperEdgeUniformity() >= threshold && result.getLeftEdgeUniformity() >= threshold && result
+      .getRightEdgeUniformity() >= threshold && result.getLowerEdgeUniformity() >= threshold;
+  }
+
+  public final class Run {
+
+    private final ImportProgress progress;
+    private final boolean analyse;
+    private final long processingStartTime = System.currentTimeMillis();
+
+    // every stage queue can hold all admitted products, so stages feeding back into an earlier stage never deadlock
+    private final int maxInFlightProducts = importProperties.getMaxInFlightProducts();
+    private final Semaphore inFlightProducts = new Semaphore(maxInFlightProducts);
+
+    private final ExecutorMode executorMode = importProperties.getExecutorMode();
+    private final PipelineStage urlDiscoveryStage = PipelineStage.forMode(executorMode, "url-discovery",
+      importProperties.getUrlDiscoveryThreads(), maxInFlightProducts);
+    private final PipelineStage productDataStage = PipelineStage.forMode(executorMode, "product-data",
+      importProperties.getProductDataThreads(), maxInFlightProducts);
+    private final PipelineStage imageDownloadStage = PipelineStage.forMode(executorMode, "image-download",
+      importProperties.getImageDownloadThreads(), maxInFlightProducts);
+    private final PipelineStage borderCheckStage =
+      PipelineStage.bounded("border-check", importProperties.getBorderCheckThreads(), maxInFlightProducts);
+    private final PipelineStage distributionStage =
+      PipelineStage.bounded("distribution", importProperties.getDistributionThreads(), maxInFlightProducts);
+    private final PipelineStage scoringStage =
+      PipelineStage.bounded("scoring", importProperties.getScoringThreads(), maxInFlightProducts);
+    private final PipelineStage persistenceStage =
+      PipelineStage.bounded("persistence", importProperties.getPersistenceThreads(), maxInFlightProducts);
+
+    private final ScheduledExecutorService batchScheduler =
+      Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "import-batch-scheduler"));
+    // a batch larger than the admitted products could only ever be flushed by its timer
+    private final BatchingBuffer<ImportItem> existenceCheckBuffer = new BatchingBuffer<>(
+      Math.min(importProperties.getExistenceCheckBatchSize(), maxInFlightProducts),
+      importProperties.getExistenceCheckMaxDelay(), batchScheduler, productDataStage::submit, this::checkExistence);
+    private final BatchingBuffer<ImportItem> persistenceBuffer = new BatchingBuffer<>(
+      Math.min(importProperties.getPersistenceBatchSize(), maxInFlightProducts),
+      importProperties.getPersistenceMaxDelay(), batchScheduler, persistenceStage::submit, this::persist);
+
+    private final AtomicInteger iterCount = new AtomicInteger();
+
+    private Run(final ImportProgress progress, final boolean analyse) {
+      this.progress = progress;
+      this.analyse = analyse;
+      log.info("starting to import product data");
+    }
+
+    // all result pages of the search word, fetched on the url discovery stage
+    public CompletableFuture<List<String>> discover(final String searchWord) {
+      return CompletableFuture.supplyAsync(() -> stageTimer("url-fetch", searchWord)
+        .record(() -> scraperConnector.fetchProductUrls(searchWord)), urlDiscoveryStage::submit);
+    }
+
+    // products which can be admitted without blocking
+    public int capacity() {
+      return inFlightProducts.availablePermits();
+    }
+
+    // blocks while the pipeline is full, a product which already has its product data continues with the existence check
+    public void admit(final ImportItem item) {
+      try {
+        inFlightProducts.acquire();
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while waiting for pipeline capacity", exception);
+      }
+
+      log.info("product #" + iterCount.incrementAndGet() + ": " + item.getProductUrl());
+      if (item.getProductData() != null) {
+        existenceCheckBuffer.add(item.toBuilder()
+          .imageIndex(0)
+          .build());
+      } else {
+        productDataStage.submit(() -> stage(item, this::fetchProductData));
+      }
+    }
+
+    // waits for every admitted product to complete, then stops the stage threads
+    public void finish() {
+      try {
+        // all permits are back once the last admitted product left the pipeline
+        inFlightProducts.acquire(maxInFlightProducts);
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        log.error("interrupted while waiting for the import to finish", exception);
+      } finally {
+        shutdown();
+      }
+
+      log.info("done importing");
+      log.info("total products processed: " + iterCount.get());
+      log.info("total time elapsed: " + (System.currentTimeMillis() - processingStartTime) / 1000.0 + " seconds");
+      if (imageCache.isEnabled()) {
+        log.info("image cache: " + imageCache.statistics());
+      }
+      log.info("pixel buffer cache: " + pixelBufferCache.statistics());
+      logStageTimes();
+    }
+
+    private void fetchProductData(final ImportItem item) {
+      final ProductData productData = stageTimer("product-fetch", item.getSearchWord())
+        .record(() -> scraperConnector.fetchProductData(item.getProductUrl()));
+
+      if (productData == null) {
+        complete(item, ImportOutcome.MISSING_DATA);
+        return;
+      }
+
+      final ImportItem fetchedItem = item.toBuilder()
+        .productData(productData)
+        .imageIndex(0)
+        .build();
+      if (!analyse) {
+        handOff(fetchedItem);
+        return;
+      }
+      progress.fetched(fetchedItem);
+      existenceCheckBuffer.add(fetchedItem);
+    }
+
+    private void checkExistence(final List<ImportItem> items) {
+      final Set<String> existingIds;
+      try {
+        existingIds = productService.findExistingIds(items.stream()
+          .map(item -> item.getProductData().getId())
+          .collect(toList()));
+      } catch (RuntimeException exception) {
+        log.error("error during existence check of " + items.size() + " products", exception);
+        complete(items, ImportOutcome.FAILED);
+        return;
+      }
+
+      for (final ImportItem item : items) {
+        if (existingIds.contains(item.getProductData().getId())) {
+          complete(item, ImportOutcome.EXISTING);
+        } else {
+          imageDownloadStage.submit(() -> stage(item, this::downloadImage));
+        }
+      }
+    }
+
+    private void downloadImage(final ImportItem item) {
+      final List<String> images = item.getProductData().getImages();
+      for (int imageIndex = item.getImageIndex(); imageIndex < images.size(); imageIndex++) {
+        final ProductImage rawImage = ProductImage.builder()
+          .id(images.get(imageIndex))
+          .url(connectorProperties.getImageBaseUrl() + images.get(imageIndex))
+          .build();
+
+        if (!rawImage.getUrl().contains("lh_platzhalter_ohne_abbildung")) {
+          final ImportItem imageItem = item.toBuilder()
+            .imageIndex(imageIndex)
+            .productImage(rawImage)
+            .build();
+          // an image which was already decoded skips both download and decode
+          final PixelBuffer cachedPixels = pixelBufferCache.get(pixelCacheKey(rawImage));
+          if (cachedPixels != null) {
+            borderCheckStage.submit(() -> stage(imageItem, cachedItem -> checkBorder(cachedItem, cachedPixels)));
+            return;
+          }
+
+          final ImageInputStream imageStream = stageTimer("image-download", item.getSearchWord())
+            .record(() -> imageServerConnector.downloadImage(rawImage));
+          borderCheckStage.submit(() -> stage(imageItem, downloadedItem -> normalize(downloadedItem, imageStream)));
+          return;
+        }
+      }
+
+      log.warn("could not determine acceptable image from images: " + images + " of product: " +
+        item.getProductData().getId());
+      complete(item, ImportOutcome.NO_ACCEPTABLE_IMAGE);
+    }
+
+    // decoding runs on the border check stage, the download stage only waits on the network
+    private void normalize(final ImportItem item, final ImageInputStream imageStream) {
+      final PixelBuffer pixels = stageTimer("decode", item.getSearchWord()).record(() -> {
+        try (imageStream) {
+          final BufferedImage image = imageService.decode(imageStream, importProperties.getDecodePixelBudget());
+          return imageService.toPixelBuffer(image);
+        } catch (IOException exception) {
+          throw new UncheckedIOException("could not decode image " + item.getProductImage().getUrl(), exception);
+        }
+      });
+      pixelBufferCache.put(pixelCacheKey(item.getProductImage()), pixels);
+      checkBorder(item, pixels);
+    }
+
+    private void checkBorder(final ImportItem item, final PixelBuffer pixels) {
+      final BorderColorDeterminationResult borderColorResult = stageTimer("border-check", item.getSearchWord())
+        .record(() -> imageBorderService.determineBorderColor(pixels));
+      final boolean accepted = acceptableBorderColorResult(borderColorResult);
+      borderChecks.withTags("result", accepted ? "accepted" : "rejected", "searchWord", item.getSearchWord())
+        .increment();
+
+      if (!accepted) {
+        final ImportItem nextImageItem = item.toBuilder()
+          .imageIndex(item.getImageIndex() + 1)
+          .build();
+        imageDownloadStage.submit(() -> stage(nextImageItem, this::downloadImage));
+        return;
+      }
+
+      final ImportItem checkedItem = item.toBuilder()
+        .pixels(pixels)
+        .borderColorResult(borderColorResult)
+        .build();
+      distributionStage.submit(() -> stage(checkedItem, this::calculateDistribution));
+    }
+
+    private void calculateDistribution(final ImportItem item) {
+      final ColorDistribution colorDistribution = stageTimer("distribution", item.getSearchWord())
+        .record(() -> colorDistributionService.colorDistribution(item.getPixels(),
+          item.getBorderColorResult().getBorderColor()));
+      final ImportItem distributedItem = item.toBuilder()
+        .pixels(null)
+        .colorDistribution(colorDistribution)
+        .build();
+
+      scoringStage.submit(() -> stage(distributedItem, this::calculateScores));
+    }
+
+    private void calculateScores(final ImportItem item) {
+      final TileScores tileScores = stageTimer("scoring", item.getSearchWord())
+        .record(() -> imageScoringService.calculateScores(item.getColorDistribution()));
+      final ImportItem scoredItem = item.toBuilder()
+        .tileScores(tileScores)
+        .build();
+      progress.analysed(scoredItem);
+
+      persistenceStage.submit(() -> stage(scoredItem, persistenceBuffer::add));
+    }
+
+    // every product of a batch waits for the whole bulk upsert, so each one records its duration
+    private void persist(final List<ImportItem> items) {
+      final long startTime = System.nanoTime();
+      ImportOutcome outcome = ImportOutcome.FAILED;
+      try {
+        productService.upsertAll(items.stream()
+          .map(item -> Product.builder()
+            .id(item.getProductData().getId())
+            .productImage(item.getProductImage().toBuilder()
+              .imageScores(item.getTileScores().toMap())
+              .catalogVersion(item.getTileScores().getCatalogVersion())
+              .colorDistribution(item.getColorDistribution())
+              .build())
+            .build())
+          .collect(toList()));
+        log.info("persisted " + items.size() + " products");
+        outcome = ImportOutcome.PERSISTED;
+      } catch (RuntimeException exception) {
+        log.error("error during bulk persistence of " + items.size() + " products", exception);
+      } finally {
+        final long duration = System.nanoTime() - startTime;
+        items.forEach(item -> stageTimer("persist", item.getSearchWord()).record(duration, TimeUnit.NANOSECONDS));
+        complete(items, outcome);
+      }
+    }
+
+    private String pixelCacheKey(final ProductImage image) {
+      return image.getId() + "@" + importProperties.getDecodePixelBudget();
+    }
+
+    private void stage(final ImportItem item, final StageTask task) {
+      try {
+        task.process(item);
+      } catch (RuntimeException exception) {
+        log.error("error during import of product url: " + item.getProductUrl(), exception);
+        complete(item, ImportOutcome.FAILED);
+      }
+    }
+
+    private void complete(final ImportItem item, final ImportOutcome outcome) {
+      complete(List.of(item), outcome);
+    }
+
+    // the pipeline capacity is given back even if the progress could not be recorded
+    private void complete(final List<ImportItem> items, final ImportOutcome outcome) {
+      try {
+        items.forEach(item -> importedProducts.withTags("outcome", outcome.tag(), "searchWord", item.getSearchWord())
+          .increment());
+        progress.completed(items, outcome);
+      } catch (RuntimeException exception) {
+        log.error("error while recording the import progress of " + items.size() + " products", exception);
+      } finally {
+        inFlightProducts.release(items.size());
+      }
+    }
+
+    private void handOff(final ImportItem item) {
+      try {
+        importedProducts.withTags("outcome", "handed-off", "searchWord", item.getSearchWord()).increment();
+        progress.handedOff(item);
+      } catch (RuntimeException exception) {
+        log.error("error while handing off product url: " + item.getProductUrl(), exception);
+      } finally {
+        inFlightProducts.release();
+      }
+    }
+
+    private Timer stageTimer(final String stage, final String searchWord) {
+      return stageTimers.withTags("stage", stage, "searchWord", searchWord);
+    }
+
+    private void shutdown() {
+      batchScheduler.shutdown();
+      urlDiscoveryStage.shutdown();
+      productDataStage.shutdown();
+      imageDownloadStage.shutdown();
+      borderCheckStage.shutdown();
+      distributionStage.shutdown();
+      scoringStage.shutdown();
+      persistenceStage.shutdown();
+    }
+
+    // a summary for the log, percentiles of the individual search words are exported via /actuator/prometheus
+    private void logStageTimes() {
+      for (final String stage : STAGES) {
+        for (final Timer timer : meterRegistry.find(STAGE_TIMER).tag("stage", stage).timers()) {
+          if (timer.count() == 0) {
+            continue;
+          }
+
+          final StringBuilder summary = new StringBuilder(String.format("%s [%s]: %d times, mean %.1f ms, max %.1f ms",
+            stage, timer.getId().getTag("searchWord"), timer.count(), timer.mean(TimeUnit.MILLISECONDS),
+            timer.max(TimeUnit.MILLISECONDS)));
+          final HistogramSnapshot snapshot = timer.takeSnapshot();
+          for (final ValueAtPercentile percentile : snapshot.percentileValues()) {
+            summary.append(String.format(", p%.0f %.1f ms", percentile.percentile() * 100,
+              percentile.value(TimeUnit.MILLISECONDS)));
+          }
+          log.info(summary.toString());
+        }
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface StageTask {
+    void process(ImportItem item);
+  }
+}
@@ -0,0 +1,19 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.util.List;
+
+import de.fbeutel.coloranalyzer.product.domain.ImportItem;
+import de.fbeutel.coloranalyzer.product.domain.ImportOutcome;
+
+// called from the pipeline stages while products pass through, implementations must be thread safe
+public interface ImportProgress {
+
+  void fetched(ImportItem item);
+
+  void analysed(ImportItem item);
+
+  // the product leaves the pipeline fetched but not analysed, for an analysis worker
+  void handedOff(ImportItem item);
+
+  void completed(List<ImportItem> items, ImportOutcome outcome);
+}
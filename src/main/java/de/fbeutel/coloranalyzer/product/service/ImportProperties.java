@@ -0,0 +1,65 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "color-analyzer.import")
+public class ImportProperties {
+
+  private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+  private List<String> searchWords = List.of("hose", "kleid", "anzug", "hemd", "badehose", "t-shirt");
+
+  // creates an import job for the search words on startup, unless a job is still running and is resumed instead
+  private boolean startOnStartup = true;
+
+  // an instance with the discovery role only fetches product data, analysis workers pick the products up from mongo
+  private Set<ImportRole> roles = EnumSet.allOf(ImportRole.class);
+
+  // leases of a restarted instance with the same id are released right away, defaults to host name and server port
+  private String instanceId;
+
+  // claimed search words and products are left to other instances once the lease ran out, held leases are renewed
+  private Duration leaseDuration = Duration.ofMinutes(5);
+  private int claimBatchSize = 32;
+  private Duration pollInterval = Duration.ofSeconds(1);
+
+  // claims of a product, a failed product is claimable again after the retry delay until it is out of attempts
+  private int maxAttempts = 3;
+  private Duration retryDelay = Duration.ofSeconds(30);
+
+  // products admitted into the pipeline at the same time, every inter stage queue is bounded by it
+  private int maxInFlightProducts = 64;
+
+  // VIRTUAL runs url discovery, product data and image download on virtual threads, ignoring their thread counts
+  private ExecutorMode executorMode = ExecutorMode.PLATFORM;
+
+  // pixels decoded per image for the analysis, larger images are subsampled while decoding, 0 keeps full resolution
+  private int decodePixelBudget = 0;
+
+  private int urlDiscoveryThreads = 5;
+  private int productDataThreads = 5;
+  private int imageDownloadThreads = 5;
+  private int borderCheckThreads = CORES;
+  private int distributionThreads = CORES;
+  private int scoringThreads = Math.max(1, CORES / 2);
+  private int persistenceThreads = 2;
+
+  // already imported products are looked up with one $in query per batch
+  private int existenceCheckBatchSize = 50;
+  private Duration existenceCheckMaxDelay = Duration.ofMillis(200);
+
+  // analysed products are written with one unordered bulk upsert per batch; products hold their pipeline capacity
+  // until they are persisted, so a batch never grows beyond max-in-flight-products
+  private int persistenceBatchSize = 32;
+  private Duration persistenceMaxDelay = Duration.ofSeconds(1);
+}
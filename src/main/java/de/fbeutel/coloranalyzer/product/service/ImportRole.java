@@ -0,0 +1,24 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.util.List;
+
+import de.fbeutel.coloranalyzer.product.domain.ImportItemState;
+
+public enum ImportRole {
+
+  // discovers the products of the search words and fetches their product data, then hands them off for the analysis
+  DISCOVERY(List.of(ImportItemState.DISCOVERED)),
+
+  // downloads, analyses and stores fetched products, also those left analysed but not stored by a stopped instance
+  ANALYSIS(List.of(ImportItemState.FETCHED, ImportItemState.ANALYSED));
+
+  private final List<ImportItemState> claimedStates;
+
+  ImportRole(final List<ImportItemState> claimedStates) {
+    this.claimedStates = claimedStates;
+  }
+
+  public List<ImportItemState> getClaimedStates() {
+    return claimedStates;
+  }
+}
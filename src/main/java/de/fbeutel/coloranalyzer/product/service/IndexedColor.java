@@ -0,0 +1,24 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+class IndexedColor {
+
+  private final String productId;
+
+  // a product stored again gets a new generation, colors of older generations are ignored and dropped on rebuild
+  private final int generation;
+
+  private final int color;
+  private final double share;
+  private final double l;
+  private final double a;
+  private final double b;
+
+  double coordinate(final int axis) {
+    return axis == 0 ? l : axis == 1 ? a : b;
+  }
+}
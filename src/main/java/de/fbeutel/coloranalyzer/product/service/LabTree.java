@@ -0,0 +1,137 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+// immutable k-d tree over lab coordinates, the nodes are laid out implicitly: the middle element of every range is
+// the node splitting it, the elements left and right of it form its subtrees
+final class LabTree {
+
+  static final LabTree EMPTY = build(List.of());
+
+  private final IndexedColor[] colors;
+  private final double[] l;
+  private final double[] a;
+  private final double[] b;
+
+  // largest share within the subtree of every node, bounds the share penalty of a whole subtree
+  private final double[] maxShare;
+
+  private LabTree(final IndexedColor[] colors) {
+    this.colors = colors;
+    this.l = new double[colors.length];
+    this.a = new double[colors.length];
+    this.b = new double[colors.length];
+    this.maxShare = new double[colors.length];
+    for (int index = 0; index < colors.length; index++) {
+      l[index] = colors[index].getL();
+      a[index] = colors[index].getA();
+      b[index] = colors[index].getB();
+    }
+    computeMaxShare(0, colors.length);
+  }
+
+  static LabTree build(final List<IndexedColor> colors) {
+    final IndexedColor[] nodes = colors.toArray(new IndexedColor[0]);
+    partition(nodes, 0, nodes.length, 0);
+    return new LabTree(nodes);
+  }
+
+  int size() {
+    return colors.length;
+  }
+
+  List<IndexedColor> colors() {
+    return Arrays.asList(colors);
+  }
+
+  void search(final double queryL, final double queryA, final double queryB, final double shareWeight,
+              final Predicate<IndexedColor> live, final NearestProducts nearest) {
+    search(0, colors.length, 0, queryL, queryA, queryB, shareWeight, live, nearest);
+  }
+
+  private void search(final int from, final int to, final int depth, final double queryL, final double queryA,
+                      final double queryB, final double shareWeight, final Predicate<IndexedColor> live,
+                      final NearestProducts nearest) {
+    if (from >= to) {
+      return;
+    }
+
+    final int node = (from + to) >>> 1;
+    final double deltaL = queryL - l[node];
+    final double deltaA = queryA - a[node];
+    final double deltaB = queryB - b[node];
+    final IndexedColor color = colors[node];
+    if (live.test(color)) {
+      nearest.offer(color, Math.sqrt(deltaL * deltaL + deltaA * deltaA + deltaB * deltaB)
+        + shareWeight * (1 - color.getShare()));
+    }
+
+    final int axis = depth % 3;
+    final double planeDistance = axis == 0 ? deltaL : axis == 1 ? deltaA : deltaB;
+    final boolean lowerFirst = planeDistance < 0;
+    if (lowerFirst) {
+      search(from, node, depth + 1, queryL, queryA, queryB, shareWeight, live, nearest);
+    } else {
+      search(node + 1, to, depth + 1, queryL, queryA, queryB, shareWeight, live, nearest);
+    }
+
+    // the far side can only hold a closer match if the splitting plane plus its smallest share penalty is closer
+    final int farFrom = lowerFirst ? node + 1 : from;
+    final int farTo = lowerFirst ? to : node;
+    if (farFrom < farTo && Math.abs(planeDistance)
+      + shareWeight * (1 - maxShare[(farFrom + farTo) >>> 1]) < nearest.worstDistance()) {
+      search(farFrom, farTo, depth + 1, queryL, queryA, queryB, shareWeight, live, nearest);
+    }
+  }
+
+  private double computeMaxShare(final int from, final int to) {
+    if (from >= to) {
+      return 0;
+    }
+    final int node = (from + to) >>> 1;
+    maxShare[node] = Math.max(colors[node].getShare(),
+      Math.max(computeMaxShare(from, node), computeMaxShare(node + 1, to)));
+    return maxShare[node];
+  }
+
+  private static void partition(final IndexedColor[] nodes, final int from, final int to, final int depth) {
+    if (to - from <= 1) {
+      return;
+    }
+    final int node = (from + to) >>> 1;
+    select(nodes, from, to - 1, node, depth % 3);
+    partition(nodes, from, node, depth + 1);
+    partition(nodes, node + 1, to, depth + 1);
+  }
+
+  // quickselect, afterwards the element at k is in place and no element left of it has a larger coordinate
+  private static void select(final IndexedColor[] nodes, int left, int right, final int k, final int axis) {
+    while (left < right) {
+      final double pivot = nodes[(left + right) >>> 1].coordinate(axis);
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (nodes[i].coordinate(axis) < pivot) {
+          i++;
+        }
+        while (nodes[j].coordinate(axis) > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          final IndexedColor swap = nodes[i];
+          nodes[i++] = nodes[j];
+          nodes[j--] = swap;
+        }
+      }
+      if (k <= j) {
+        right = j;
+      } else if (k >= i) {
+        left = i;
+      } else {
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import de.fbeutel.coloranalyzer.color.domain.RgbColor;
+import de.fbeutel.coloranalyzer.product.domain.ProductMatch;
+
+// the k closest distinct products seen so far, a product counts with its closest color only
+final class NearestProducts {
+
+  private final int limit;
+
+  // farthest candidate first, so it can be replaced cheaply
+  private final PriorityQueue<Candidate> candidates =
+    new PriorityQueue<>(Comparator.comparingDouble((Candidate candidate) -> candidate.distance).reversed());
+  private final Map<String, Candidate> candidatesByProduct = new HashMap<>();
+
+  NearestProducts(final int limit) {
+    this.limit = limit;
+  }
+
+  double worstDistance() {
+    return candidates.size() < limit ? Double.POSITIVE_INFINITY : candidates.peek().distance;
+  }
+
+  void offer(final IndexedColor color, final double distance) {
+    if (distance >= worstDistance()) {
+      return;
+    }
+
+    final Candidate existing = candidatesByProduct.get(color.getProductId());
+    if (existing != null) {
+      if (distance < existing.distance) {
+        candidates.remove(existing);
+        add(new Candidate(color, distance));
+      }
+      return;
+    }
+
+    add(new Candidate(color, distance));
+    if (candidates.size() > limit) {
+      candidatesByProduct.remove(candidates.poll().color.getProductId());
+    }
+  }
+
+  List<ProductMatch> matches() {
+    return candidates.stream()
+      .sorted(Comparator.comparingDouble(candidate -> candidate.distance))
+      .map(candidate -> ProductMatch.builder()
+        .productId(candidate.color.getProductId())
+        .distance(candidate.distance)
+        .color(RgbColor.fromPackedRgb(candidate.color.getColor()).rgbString())
+        .share(candidate.color.getShare())
+        .build())
+      .toList();
+  }
+
+  private void add(final Candidate candidate) {
+    candidates.add(candidate);
+    candidatesByProduct.put(candidate.color.getProductId(), candidate);
+  }
+
+  private static final class Candidate {
+
+    private final IndexedColor color;
+    private final double distance;
+
+    private Candidate(final IndexedColor color, final double distance) {
+      this.color = color;
+      this.distance = distance;
+    }
+  }
+}
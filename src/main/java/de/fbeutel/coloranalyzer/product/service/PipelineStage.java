@@ -0,0 +1,58 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PipelineStage {
+
+  private final ExecutorService executor;
+
+  private PipelineStage(final ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  public static PipelineStage bounded(final String name, final int threads, final int queueCapacity) {
+    final AtomicInteger threadCounter = new AtomicInteger();
+    return new PipelineStage(new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<>(queueCapacity),
+      runnable -> new Thread(runnable, "import-" + name + "-" + threadCounter.incrementAndGet()),
+      (runnable, rejectingExecutor) -> {
+        // a full queue blocks the submitting upstream stage instead of rejecting the task, a stopped stage never
+        // runs it, so it is rejected like by any other executor
+        if (rejectingExecutor.isShutdown()) {
+          throw new RejectedExecutionException("stage " + name + " is shut down");
+        }
+        try {
+          rejectingExecutor.getQueue().put(runnable);
+        } catch (InterruptedException exception) {
+          Thread.currentThread().interrupt();
+          throw new RejectedExecutionException("interrupted while waiting for stage " + name, exception);
+        }
+      }));
+  }
+
+  public static PipelineStage virtual(final String name) {
+    // no queue to bound: the in flight product permits limit the tasks, the per host limits the actual requests
+    return new PipelineStage(Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+      .name("import-" + name + "-", 1)
+      .factory()));
+  }
+
+  public static PipelineStage forMode(final ExecutorMode mode, final String name, final int threads,
+                                      final int queueCapacity) {
+    return mode == ExecutorMode.VIRTUAL ? virtual(name) : bounded(name, threads, queueCapacity);
+  }
+
+  public void submit(final Runnable task) {
+    executor.execute(task);
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,61 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
+
+@Slf4j
+@Service
+public class PixelBufferCache {
+
+  private final long maxBytes;
+
+  // access ordered, the eldest entry is the least recently used one; guarded by this
+  private final LinkedHashMap<String, PixelBuffer> buffers = new LinkedHashMap<>(16, 0.75f, true);
+  private long cachedBytes;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public PixelBufferCache(@Value("${color-analyzer.image.pixel-cache-max-bytes:268435456}") final long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  public synchronized PixelBuffer get(final String imageId) {
+    final PixelBuffer buffer = buffers.get(imageId);
+    (buffer != null ? hits : misses).incrementAndGet();
+    return buffer;
+  }
+
+  public synchronized void put(final String imageId, final PixelBuffer buffer) {
+    if (bytes(buffer) > maxBytes) {
+      return;
+    }
+
+    final PixelBuffer previousBuffer = buffers.put(imageId, buffer);
+    cachedBytes += bytes(buffer) - (previousBuffer != null ? bytes(previousBuffer) : 0);
+
+    final Iterator<PixelBuffer> leastRecentlyUsed = buffers.values().iterator();
+    while (cachedBytes > maxBytes && leastRecentlyUsed.hasNext()) {
+      cachedBytes -= bytes(leastRecentlyUsed.next());
+      leastRecentlyUsed.remove();
+    }
+  }
+
+  public String statistics() {
+    synchronized (this) {
+      return "hits=" + hits.get() + ", misses=" + misses.get() + ", entries=" + buffers.size() + ", bytes=" + cachedBytes;
+    }
+  }
+
+  private static long bytes(final PixelBuffer buffer) {
+    return 4L * buffer.size();
+  }
+}
@@ -0,0 +1,221 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorDistributionEntry;
+import de.fbeutel.coloranalyzer.color.service.ColorConversionService;
+import de.fbeutel.coloranalyzer.product.domain.Product;
+import de.fbeutel.coloranalyzer.product.domain.ProductMatch;
+import de.fbeutel.coloranalyzer.product.domain.ProductRepository;
+import de.fbeutel.coloranalyzer.product.domain.ProductStoredEvent;
+
+@Slf4j
+@Service
+public class ProductColorIndex implements ApplicationRunner {
+
+  private final ProductRepository productRepository;
+  private final ColorConversionService colorConversionService;
+  private final SearchProperties searchProperties;
+
+  // loading and rebuilding run here, one at a time, so only this thread ever replaces the tree
+  private final ExecutorService maintenanceExecutor = Executors.newSingleThreadExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "product-color-index");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final Map<String, Integer> generations = new ConcurrentHashMap<>();
+
+  // colors stored since the last rebuild, scanned linearly next to the tree
+  private final List<IndexedColor> pending = new CopyOnWriteArrayList<>();
+  private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+  private volatile LabTree tree = LabTree.EMPTY;
+  private volatile boolean loaded;
+
+  public ProductColorIndex(final ProductRepository productRepository,
+                           final ColorConversionService colorConversionService,
+                           final SearchProperties searchProperties) {
+    this.productRepository = productRepository;
+    this.colorConversionService = colorConversionService;
+    this.searchProperties = searchProperties;
+  }
+
+  // loads in the background, queries are answered from the products indexed so far until then
+  @Override
+  public void run(final ApplicationArguments args) {
+    maintenanceExecutor.submit(this::load);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    maintenanceExecutor.shutdownNow();
+  }
+
+  @EventListener
+  public void onProductsStored(final ProductStoredEvent event) {
+    index(event.getProducts());
+  }
+
+  public void index(final Collection<Product> products) {
+    // one append per batch, every append copies the pending list
+    final List<IndexedColor> colors = new ArrayList<>();
+    for (final Product product : products) {
+      colors.addAll(indexedColors(product));
+    }
+    pending.addAll(colors);
+    scheduleRebuild();
+  }
+
+  public List<ProductMatch> nearest(final int packedRgb, final int limit) {
+    final long packedLab = colorConversionService.toPackedLab(packedRgb);
+    final double queryL = ColorConversionService.labL(packedLab);
+    final double queryA = ColorConversionService.labA(packedLab);
+    final double queryB = ColorConversionService.labB(packedLab);
+    final double shareWeight = searchProperties.getShareWeight();
+
+    final NearestProducts nearest = new NearestProducts(Math.min(limit, searchProperties.getMaxResults()));
+    tree.search(queryL, queryA, queryB, shareWeight, this::isLive, nearest);
+    for (final IndexedColor color : pending) {
+      if (isLive(color)) {
+        final double deltaL = queryL - color.getL();
+        final double deltaA = queryA - color.getA();
+        final double deltaB = queryB - color.getB();
+        nearest.offer(color, Math.sqrt(deltaL * deltaL + deltaA * deltaA + deltaB * deltaB)
+          + shareWeight * (1 - color.getShare()));
+      }
+    }
+    return nearest.matches();
+  }
+
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  public int size() {
+    return generations.size();
+  }
+
+  // loads the stored products and waits for it, after any load or rebuild queued before
+  void loadNow() {
+    try {
+      maintenanceExecutor.submit(this::load).get();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while loading the product color index", exception);
+    } catch (ExecutionException exception) {
+      throw new IllegalStateException("could not load the product color index", exception.getCause());
+    }
+  }
+
+  private void load() {
+    final long startTime = System.currentTimeMillis();
+    final List<IndexedColor> colors = new ArrayList<>();
+    try (Stream<Product> products = productRepository.streamAllBy()) {
+      products.forEach(product -> {
+        // a product stored while loading is already indexed with its newer palette
+        if (generations.putIfAbsent(product.getId(), 1) == null) {
+          colors.addAll(indexedColors(product, 1));
+        }
+      });
+      rebuild(colors);
+      loaded = true;
+      scheduleRebuild();
+      log.info("loaded product color index with " + size() + " products and " + tree.size() + " colors in "
+        + (System.currentTimeMillis() - startTime) + " ms");
+    } catch (RuntimeException exception) {
+      log.error("could not load product color index, only newly stored products are searchable", exception);
+    }
+  }
+
+  // the new tree is published before the merged colors leave the pending list, a concurrent query may see a color
+  // twice but never misses one
+  private void rebuild(final List<IndexedColor> colors) {
+    final List<IndexedColor> merged = List.copyOf(pending);
+    final List<IndexedColor> liveColors = Stream.of(tree.colors(), colors, merged)
+      .flatMap(List::stream)
+      .filter(this::isLive)
+      .toList();
+
+    tree = LabTree.build(liveColors);
+
+    final Set<IndexedColor> mergedColors = Collections.newSetFromMap(new IdentityHashMap<>());
+    mergedColors.addAll(merged);
+    pending.removeIf(mergedColors::contains);
+  }
+
+  // colors stored while a rebuild runs stay pending, so a finished rebuild checks whether the next one is due
+  private void scheduleRebuild() {
+    if (pending.size() >= searchProperties.getRebuildThreshold() && rebuildScheduled.compareAndSet(false, true)) {
+      maintenanceExecutor.submit(() -> {
+        try {
+          rebuild(List.of());
+        } finally {
+          rebuildScheduled.set(false);
+        }
+        scheduleRebuild();
+      });
+    }
+  }
+
+  private List<IndexedColor> indexedColors(final Product product) {
+    // a product stored without a palette still retires the colors of its previous generation
+    return indexedColors(product, generations.merge(product.getId(), 1, Integer::sum));
+  }
+
+  private List<IndexedColor> indexedColors(final Product product, final int generation) {
+    if (product.getProductImage() == null || product.getProductImage().getColorDistribution() == null) {
+      return List.of();
+    }
+
+    final List<ColorDistributionEntry> entries = product.getProductImage().getColorDistribution()
+      .getColorDistributionEntries();
+    final double shareAmount = entries.stream().mapToInt(ColorDistributionEntry::getShare).sum();
+
+    return entries.stream()
+      .filter(entry -> entry.getShare() / shareAmount >= searchProperties.getMinShare())
+      .sorted(Comparator.reverseOrder())
+      .limit(searchProperties.getMaxColors())
+      .map(entry -> {
+        final long packedLab = colorConversionService.toPackedLab(entry.getColor().toPackedRgb());
+        return IndexedColor.builder()
+          .productId(product.getId())
+          .generation(generation)
+          .color(entry.getColor().toPackedRgb())
+          .share(entry.getShare() / shareAmount)
+          .l(ColorConversionService.labL(packedLab))
+          .a(ColorConversionService.labA(packedLab))
+          .b(ColorConversionService.labB(packedLab))
+          .build();
+      })
+      .toList();
+  }
+
+  private boolean isLive(final IndexedColor color) {
+    final Integer generation = generations.get(color.getProductId());
+    return generation != null && generation == color.getGeneration();
+  }
+}
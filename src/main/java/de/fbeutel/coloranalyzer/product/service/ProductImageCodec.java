@@ -0,0 +1,201 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorDistribution;
+import de.fbeutel.coloranalyzer.color.domain.ColorDistributionEntry;
+import de.fbeutel.coloranalyzer.color.domain.ColorTileVersion;
+import de.fbeutel.coloranalyzer.color.domain.RgbColor;
+import de.fbeutel.coloranalyzer.color.service.ColorTileVersionRegistry;
+import de.fbeutel.coloranalyzer.product.domain.ProductImage;
+
+// writes product images in the configured layout and reads either layout, so both can live in one collection
+class ProductImageCodec {
+
+  static final String FORMAT = "format";
+
+  private static final String ID = "_id";
+  private static final String URL = "url";
+  private static final String CATALOG_VERSION = "catalogVersion";
+  private static final String COLOR_DISTRIBUTION = "colorDistribution";
+  private static final String COLOR_DISTRIBUTION_ENTRIES = "colorDistributionEntries";
+  private static final String COLOR = "color";
+  private static final String SHARE = "share";
+  static final String IMAGE_SCORES = "imageScores";
+  private static final String PALETTE = "palette";
+  static final String SCORES = "scores";
+
+  private final StorageFormat format;
+  private final Supplier<ColorTileVersionRegistry> colorTileVersionRegistry;
+
+  // scores of tiles missing from the catalog version an image was encoded with, reported by the migration
+  private final AtomicLong droppedScores = new AtomicLong();
+
+  ProductImageCodec(final StorageFormat format, final Supplier<ColorTileVersionRegistry> colorTileVersionRegistry) {
+    this.format = format;
+    this.colorTileVersionRegistry = colorTileVersionRegistry;
+  }
+
+  Document encode(final ProductImage image) {
+    final Document document = new Document();
+    document.put(ID, image.getId());
+    document.put(URL, image.getUrl());
+    if (format == StorageFormat.COMPACT) {
+      encodeCompact(image, document);
+    } else {
+      encodeDocument(image, document);
+    }
+    return document;
+  }
+
+  long droppedScores() {
+    return droppedScores.get();
+  }
+
+  ProductImage decode(final Document document) {
+    final ProductImage.ProductImageBuilder image = ProductImage.builder()
+      .id(document.getString(ID))
+      .url(document.getString(URL));
+    if (StorageFormat.COMPACT.name().equals(document.getString(FORMAT))) {
+      decodeCompact(document, image);
+    } else {
+      decodeDocument(document, image);
+    }
+    return image.build();
+  }
+
+  // palette as packed rgb and share int pairs, scores as one float per tile of the catalog version
+  private void encodeCompact(final ProductImage image, final Document document) {
+    document.put(FORMAT, StorageFormat.COMPACT.name());
+
+    if (image.getColorDistribution() != null) {
+      final List<ColorDistributionEntry> entries = image.getColorDistribution().getColorDistributionEntries();
+      final ByteBuffer palette = ByteBuffer.allocate(entries.size() * 2 * Integer.BYTES);
+      for (final ColorDistributionEntry entry : entries) {
+        palette.putInt(entry.getColor().toPackedRgb()).putInt(entry.getShare());
+      }
+      document.put(PALETTE, new Binary(palette.array()));
+    }
+
+    if (image.getImageScores() != null) {
+      // images stored before versions were tracked are assigned to the current catalog; without any catalog their
+      // scores cannot be mapped to tile slots, so they are kept by name until a catalog is loaded and they are rewritten
+      final Optional<ColorTileVersion> version = image.getCatalogVersion() != null
+        ? Optional.of(colorTileVersionRegistry.get().get(image.getCatalogVersion()))
+        : colorTileVersionRegistry.get().findCurrent();
+      if (version.isEmpty()) {
+        document.put(IMAGE_SCORES, new Document(image.getImageScores()));
+        return;
+      }
+
+      // scores of tiles which are not in the version are dropped and counted, tiles without a score are stored as NaN
+      final ByteBuffer scores = ByteBuffer.allocate(version.get().size() * Float.BYTES);
+      int storedScores = 0;
+      for (final String name : version.get().getNames()) {
+        final Double score = image.getImageScores().get(name);
+        scores.putFloat(score != null ? score.floatValue() : Float.NaN);
+        storedScores += score != null ? 1 : 0;
+      }
+      droppedScores.addAndGet(image.getImageScores().size() - storedScores);
+      document.put(CATALOG_VERSION, version.get().getVersion());
+      document.put(SCORES, new Binary(scores.array()));
+    }
+  }
+
+  private void decodeCompact(final Document document, final ProductImage.ProductImageBuilder image) {
+    final Binary palette = document.get(PALETTE, Binary.class);
+    if (palette != null) {
+      final ByteBuffer buffer = ByteBuffer.wrap(palette.getData());
+      final List<ColorDistributionEntry> entries = new ArrayList<>(buffer.remaining() / (2 * Integer.BYTES));
+      while (buffer.hasRemaining()) {
+        entries.add(ColorDistributionEntry.builder()
+          .color(RgbColor.fromPackedRgb(buffer.getInt()))
+          .share(buffer.getInt())
+          .build());
+      }
+      image.colorDistribution(ColorDistribution.builder()
+        .colorDistributionEntries(entries)
+        .build());
+    }
+
+    final Binary scores = document.get(SCORES, Binary.class);
+    if (scores != null) {
+      final String catalogVersion = document.getString(CATALOG_VERSION);
+      final String[] names = colorTileVersionRegistry.get().get(catalogVersion).getNames();
+      final ByteBuffer buffer = ByteBuffer.wrap(scores.getData());
+      final Map<String, Double> imageScores = new HashMap<>();
+      for (final String name : names) {
+        final float score = buffer.getFloat();
+        if (!Float.isNaN(score)) {
+          imageScores.put(name, (double) score);
+        }
+      }
+      image.catalogVersion(catalogVersion).imageScores(imageScores);
+    } else {
+      decodeImageScores(document, image);
+    }
+  }
+
+  // the same layout the default mapping produced before this codec existed
+  private void encodeDocument(final ProductImage image, final Document document) {
+    if (image.getColorDistribution() != null) {
+      final List<Document> entries = new ArrayList<>();
+      for (final ColorDistributionEntry entry : image.getColorDistribution().getColorDistributionEntries()) {
+        entries.add(new Document(COLOR, new Document("r", entry.getColor().getR())
+          .append("g", entry.getColor().getG())
+          .append("b", entry.getColor().getB()))
+          .append(SHARE, entry.getShare()));
+      }
+      document.put(COLOR_DISTRIBUTION, new Document(COLOR_DISTRIBUTION_ENTRIES, entries));
+    }
+    if (image.getImageScores() != null) {
+      document.put(IMAGE_SCORES, new Document(image.getImageScores()));
+    }
+    if (image.getCatalogVersion() != null) {
+      document.put(CATALOG_VERSION, image.getCatalogVersion());
+    }
+  }
+
+  private void decodeDocument(final Document document, final ProductImage.ProductImageBuilder image) {
+    final Document colorDistribution = document.get(COLOR_DISTRIBUTION, Document.class);
+    if (colorDistribution != null) {
+      final List<ColorDistributionEntry> entries = new ArrayList<>();
+      for (final Document entry : colorDistribution.getList(COLOR_DISTRIBUTION_ENTRIES, Document.class)) {
+        final Document color = entry.get(COLOR, Document.class);
+        entries.add(ColorDistributionEntry.builder()
+          .color(RgbColor.builder()
+            .r(color.get("r", Number.class).longValue())
+            .g(color.get("g", Number.class).longValue())
+            .b(color.get("b", Number.class).longValue())
+            .build())
+          .share(entry.get(SHARE, Number.class).intValue())
+          .build());
+      }
+      image.colorDistribution(ColorDistribution.builder()
+        .colorDistributionEntries(entries)
+        .build());
+    }
+
+    decodeImageScores(document, image);
+    image.catalogVersion(document.getString(CATALOG_VERSION));
+  }
+
+  private void decodeImageScores(final Document document, final ProductImage.ProductImageBuilder image) {
+    final Document imageScores = document.get(IMAGE_SCORES, Document.class);
+    if (imageScores != null) {
+      final Map<String, Double> scores = new HashMap<>();
+      imageScores.forEach((name, score) -> scores.put(name, ((Number) score).doubleValue()));
+      image.imageScores(scores);
+    }
+  }
+}
@@ -1,29 +1,81 @@
 package de.fbeutel.coloranalyzer.product.service;
 
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
 import de.fbeutel.coloranalyzer.product.domain.Product;
-import de.fbeutel.coloranalyzer.product.domain.ProductRepository;
-
-import java.util.Optional;
+import de.fbeutel.coloranalyzer.product.domain.ProductStoredEvent;
 
 @Slf4j
 @Service
 public class ProductService {
 
-  private final ProductRepository productRepository;
+  private final MongoTemplate mongoTemplate;
+  private final ApplicationEventPublisher eventPublisher;
 
-  public ProductService(final ProductRepository productRepository) {
-    this.productRepository = productRepository;
+  private final Timer existenceCheckTimer;
+  private final Timer flushTimer;
+  private final DistributionSummary flushSize;
+  private final Counter persistedProducts;
+
+  public ProductService(final MongoTemplate mongoTemplate, final ApplicationEventPublisher eventPublisher,
+                        final MeterRegistry meterRegistry) {
+    this.mongoTemplate = mongoTemplate;
+    this.eventPublisher = eventPublisher;
+    this.existenceCheckTimer = Timer.builder("coloranalyzer.products.existence.check")
+      .description("batched $in queries for already imported product ids")
+      .register(meterRegistry);
+    this.flushTimer = Timer.builder("coloranalyzer.products.flush")
+      .description("unordered bulk upserts of analysed products")
+      .register(meterRegistry);
+    this.flushSize = DistributionSummary.builder("coloranalyzer.products.flush.size")
+      .description("products per bulk upsert")
+      .register(meterRegistry);
+    this.persistedProducts = Counter.builder("coloranalyzer.products.persisted")
+      .description("products written by bulk upserts")
+      .register(meterRegistry);
   }
 
-  public void create(final Product product) {
-    productRepository.save(product);
+  public Set<String> findExistingIds(final Collection<String> ids) {
+    return existenceCheckTimer.record(() -> new HashSet<>(
+      mongoTemplate.findDistinct(query(where("_id").in(ids)), "_id", Product.class, String.class)));
   }
 
-  public Optional<Product> findOne(final String id) {
-    return productRepository.findById(id);
+  // replacing by id makes a retried batch idempotent, unordered lets mongo apply the writes in parallel
+  public void upsertAll(final List<Product> products) {
+    if (products.isEmpty()) {
+      return;
+    }
+
+    flushTimer.record(() -> {
+      final BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+      for (final Product product : products) {
+        bulkOperations.replaceOne(query(where("_id").is(product.getId())), product,
+          FindAndReplaceOptions.options().upsert());
+      }
+      bulkOperations.execute();
+    });
+    flushSize.record(products.size());
+    persistedProducts.increment(products.size());
+    eventPublisher.publishEvent(ProductStoredEvent.builder()
+      .products(products)
+      .build());
   }
 }
@@ -0,0 +1,65 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.util.List;
+
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+import de.fbeutel.coloranalyzer.color.service.ColorTileVersionRegistry;
+import de.fbeutel.coloranalyzer.product.domain.ProductImage;
+
+@Configuration
+public class ProductStorageConfiguration {
+
+  // the registry itself is stored through the mongo template these conversions belong to, so it is resolved lazily
+  @Bean
+  ProductImageCodec productImageCodec(final StorageProperties storageProperties,
+                                      final ObjectProvider<ColorTileVersionRegistry> colorTileVersionRegistry) {
+    return new ProductImageCodec(storageProperties.getFormat(), colorTileVersionRegistry::getObject);
+  }
+
+  @Bean
+  public MongoCustomConversions mongoCustomConversions(final ProductImageCodec productImageCodec) {
+    return customConversions(productImageCodec);
+  }
+
+  static MongoCustomConversions customConversions(final ProductImageCodec codec) {
+    return new MongoCustomConversions(List.of(new ProductImageWriter(codec), new ProductImageReader(codec)));
+  }
+
+  @WritingConverter
+  static class ProductImageWriter implements Converter<ProductImage, Document> {
+
+    private final ProductImageCodec codec;
+
+    ProductImageWriter(final ProductImageCodec codec) {
+      this.codec = codec;
+    }
+
+    @Override
+    public Document convert(final ProductImage image) {
+      return codec.encode(image);
+    }
+  }
+
+  @ReadingConverter
+  static class ProductImageReader implements Converter<Document, ProductImage> {
+
+    private final ProductImageCodec codec;
+
+    ProductImageReader(final ProductImageCodec codec) {
+      this.codec = codec;
+    }
+
+    @Override
+    public ProductImage convert(final Document document) {
+      return codec.decode(document);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import de.fbeutel.coloranalyzer.product.domain.Product;
+
+@Slf4j
+@Service
+public class ProductStorageMigration implements ApplicationRunner {
+
+  private static final String FORMAT_FIELD = "productImage." + ProductImageCodec.FORMAT;
+  private static final String IMAGE_SCORES_FIELD = "productImage." + ProductImageCodec.IMAGE_SCORES;
+  private static final String SCORES_FIELD = "productImage." + ProductImageCodec.SCORES;
+
+  private final MongoTemplate mongoTemplate;
+  private final ProductService productService;
+  private final StorageProperties storageProperties;
+  private final ProductImageCodec productImageCodec;
+
+  ProductStorageMigration(final MongoTemplate mongoTemplate, final ProductService productService,
+                          final StorageProperties storageProperties, final ProductImageCodec productImageCodec) {
+    this.mongoTemplate = mongoTemplate;
+    this.productService = productService;
+    this.storageProperties = storageProperties;
+    this.productImageCodec = productImageCodec;
+  }
+
+  // application runners finish before the ready event starts the import
+  @Override
+  public void run(final ApplicationArguments args) {
+    if (storageProperties.isMigrateOnStartup()) {
+      migrate();
+    }
+  }
+
+  // reads decode either layout and writes encode the configured one, so rewriting a product migrates it; an
+  // interrupted migration simply continues with the products that are still in the other layout
+  public long migrate() {
+    final StorageFormat format = storageProperties.getFormat();
+    final Criteria otherLayout = where("productImage").exists(true);
+    if (format == StorageFormat.COMPACT) {
+      // compact images written without a catalog still keep their scores by name
+      otherLayout.orOperator(where(FORMAT_FIELD).ne(StorageFormat.COMPACT.name()),
+        where(FORMAT_FIELD).is(StorageFormat.COMPACT.name()).and(IMAGE_SCORES_FIELD).exists(true)
+          .and(SCORES_FIELD).exists(false));
+    } else {
+      otherLayout.and(FORMAT_FIELD).is(StorageFormat.COMPACT.name());
+    }
+
+    log.info("migrating product images to the " + format + " layout");
+    final long startTime = System.currentTimeMillis();
+    final long droppedScoresBefore = productImageCodec.droppedScores();
+    long migrated = 0;
+    try (Stream<Product> products = mongoTemplate.stream(query(otherLayout), Product.class)) {
+      final List<Product> batch = new ArrayList<>(storageProperties.getMigrationBatchSize());
+      for (final Product product : (Iterable<Product>) products::iterator) {
+        batch.add(product);
+        if (batch.size() == storageProperties.getMigrationBatchSize()) {
+          productService.upsertAll(batch);
+          migrated += batch.size();
+          batch.clear();
+        }
+      }
+      productService.upsertAll(batch);
+      migrated += batch.size();
+    }
+
+    log.info("migrated " + migrated + " products to the " + format + " layout in "
+      + (System.currentTimeMillis() - startTime) + " ms");
+    final long droppedScores = productImageCodec.droppedScores() - droppedScoresBefore;
+    if (droppedScores > 0) {
+      log.warn("dropped " + droppedScores + " scores of tiles which are not in the catalog the products were assigned"
+        + " to, the rescoring job recalculates them");
+    }
+    return migrated;
+  }
+}
@@ -0,0 +1,91 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.net.URI;
+import java.time.Duration;
+
+import javax.imageio.stream.ImageInputStream;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import de.fbeutel.coloranalyzer.product.domain.ProductImage;
+
+@Service
+@ConditionalOnProperty(name = "color-analyzer.connector.mode", havingValue = "reactive")
+public class ReactiveImageServerConnector implements ImageServerConnector {
+
+  private final ConnectionProvider connectionProvider;
+  private final WebClient webClient;
+  private final int maxWidth;
+  private final int maxHeight;
+  private final ImageCache imageCache;
+  private final Duration readTimeout;
+
+  public ReactiveImageServerConnector(final WebClient.Builder webClientBuilder,
+                                      final ConnectorProperties connectorProperties, final ImageCache imageCache,
+                                      @Value("${color-analyzer.image.max-width:500}") final int maxWidth,
+                                      @Value("${color-analyzer.image.max-height:500}") final int maxHeight) {
+    this.connectionProvider = ConnectionProvider.builder("image-server-connector")
+      .maxConnections(connectorProperties.getMaxConcurrentRequestsPerHost())
+      .pendingAcquireMaxCount(-1)
+      .build();
+    // images for the cache are aggregated in memory, they are larger than the default codec limit
+    this.webClient = webClientBuilder
+      .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+      .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(-1))
+      .build();
+    this.maxWidth = maxWidth;
+    this.maxHeight = maxHeight;
+    this.imageCache = imageCache;
+    this.readTimeout = connectorProperties.getImageReadTimeout();
+  }
+
+  @Override
+  public ImageInputStream downloadImage(final ProductImage imageToFetch) {
+    final URI imageUri = ImageServerConnector.imageUri(imageToFetch, maxWidth, maxHeight);
+    if (imageCache.isEnabled()) {
+      // the cache serves hits without any request and fetches misses and revalidations through this connector
+      return new ByteBufferImageInputStream(imageCache.read(
+        ImageServerConnector.cacheKey(imageToFetch, maxWidth, maxHeight), imageUri, this::fetch));
+    }
+
+    // returns once the headers arrived, the image is decoded from the body buffers while they are received
+    final ResponseEntity<Flux<DataBuffer>> response = webClient.get()
+      .uri(imageUri)
+      .retrieve()
+      .toEntityFlux(DataBuffer.class)
+      .block(readTimeout);
+    if (response == null || response.getBody() == null) {
+      throw new IllegalStateException("empty response during image download of " + imageUri);
+    }
+    return new DataBufferImageInputStream(response.getBody(), response.getHeaders().getContentLength(), readTimeout,
+      imageUri);
+  }
+
+  @PreDestroy
+  public void disposeConnections() {
+    connectionProvider.dispose();
+  }
+
+  // the cache hashes and stores complete images, so its requests are answered with the whole body
+  private ResponseEntity<byte[]> fetch(final RequestEntity<Void> request) {
+    return webClient.get()
+      .uri(request.getUrl())
+      .headers(headers -> headers.addAll(request.getHeaders()))
+      .retrieve()
+      .toEntity(byte[].class)
+      .block(readTimeout);
+  }
+}
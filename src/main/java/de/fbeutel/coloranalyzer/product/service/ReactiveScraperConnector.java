@@ -0,0 +1,75 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.util.List;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import de.fbeutel.coloranalyzer.product.domain.ProductData;
+import de.fbeutel.coloranalyzer.product.domain.ProductUrls;
+
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "color-analyzer.connector.mode", havingValue = "reactive")
+public class ReactiveScraperConnector implements ScraperConnector {
+
+  private final ConnectionProvider connectionProvider;
+  private final WebClient webClient;
+  private final ConnectorProperties connectorProperties;
+
+  public ReactiveScraperConnector(final WebClient.Builder webClientBuilder,
+                                  final ConnectorProperties connectorProperties) {
+    // reactor netty pools connections per remote host, so the pool size is the per host request limit
+    this.connectionProvider = ConnectionProvider.builder("scraper-connector")
+      .maxConnections(connectorProperties.getMaxConcurrentRequestsPerHost())
+      .pendingAcquireMaxCount(-1)
+      .build();
+    this.webClient = webClientBuilder
+      .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+      .build();
+    this.connectorProperties = connectorProperties;
+  }
+
+  @PreDestroy
+  public void disposeConnections() {
+    connectionProvider.dispose();
+  }
+
+  @Override
+  public List<String> fetchProductUrls(final String searchWord) {
+    // flatMapSequential keeps page order while up to page-concurrency pages are in flight
+    return Flux.range(1, connectorProperties.getSearchResultPages())
+      .flatMapSequential(pageNumber -> fetchProductUrls(searchWord, pageNumber), connectorProperties.getPageConcurrency())
+      .concatMapIterable(ProductUrls::getUrls)
+      .collectList()
+      .block();
+  }
+
+  @Override
+  public ProductData fetchProductData(final String urlToScrape) {
+    return webClient.get()
+      .uri(ScraperUris.productDataUri(connectorProperties.getScraperBaseUrl(), urlToScrape))
+      .retrieve()
+      .bodyToMono(ProductData.class)
+      .block();
+  }
+
+  private Mono<ProductUrls> fetchProductUrls(final String searchWord, final int pageNumber) {
+    return webClient.get()
+      .uri(ScraperUris.productLinksUri(connectorProperties.getScraperBaseUrl(), searchWord, pageNumber))
+      .retrieve()
+      .bodyToMono(ProductUrls.class)
+      .doOnError(exception -> log.error("error during product url fetching of page " + pageNumber + " for " + searchWord,
+        exception));
+  }
+}
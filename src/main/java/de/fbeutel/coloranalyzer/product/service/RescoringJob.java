@@ -0,0 +1,353 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import jakarta.annotation.PreDestroy;
+
+import org.bson.Document;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorTileCatalog;
+import de.fbeutel.coloranalyzer.color.domain.ColorTileVersion;
+import de.fbeutel.coloranalyzer.color.domain.TileScores;
+import de.fbeutel.coloranalyzer.color.service.ColorTileService;
+import de.fbeutel.coloranalyzer.color.service.ColorTileVersionRegistry;
+import de.fbeutel.coloranalyzer.color.service.ImageScoringService;
+import de.fbeutel.coloranalyzer.product.domain.Product;
+import de.fbeutel.coloranalyzer.product.domain.ProductImage;
+import de.fbeutel.coloranalyzer.product.domain.ProductStoredEvent;
+import de.fbeutel.coloranalyzer.product.domain.RescoringCheckpoint;
+
+// brings the scores of stored products up to the current tile catalog, only tiles which were added or recolored since
+// the catalog version of a product are scored, the palette is taken from mongo instead of downloading the image again
+@Slf4j
+@Service
+public class RescoringJob {
+
+  private static final String CATALOG_VERSION_FIELD = "productImage.catalogVersion";
+
+  private final MongoTemplate mongoTemplate;
+  private final ColorTileService colorTileService;
+  private final ColorTileVersionRegistry colorTileVersionRegistry;
+  private final ImageScoringService imageScoringService;
+  private final ApplicationEventPublisher eventPublisher;
+  private final RescoringProperties rescoringProperties;
+  private final StorageProperties storageProperties;
+
+  private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "rescoring-job");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicBoolean running = new AtomicBoolean();
+  private volatile String completedVersion;
+
+  public RescoringJob(final MongoTemplate mongoTemplate, final ColorTileService colorTileService,
+                      final ColorTileVersionRegistry colorTileVersionRegistry,
+                      final ImageScoringService imageScoringService, final ApplicationEventPublisher eventPublisher,
+                      final RescoringProperties rescoringProperties, final StorageProperties storageProperties) {
+    this.mongoTemplate = mongoTemplate;
+    this.colorTileService = colorTileService;
+    this.colorTileVersionRegistry = colorTileVersionRegistry;
+    this.imageScoringService = imageScoringService;
+    this.eventPublisher = eventPublisher;
+    this.rescoringProperties = rescoringProperties;
+    this.storageProperties = storageProperties;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    jobExecutor.shutdownNow();
+  }
+
+  // the job runs on its own thread, the scheduler thread is shared with the tile catalog refresh
+  @Scheduled(fixedDelayString = "${color-analyzer.rescoring.check-interval-ms:60000}")
+  public void rescoreIfCatalogChanged() {
+    final ColorTileCatalog catalog = colorTileService.getCatalog();
+    if (!rescoringProperties.isEnabled() || catalog.getVersion() == null
+      || catalog.getVersion().equals(completedVersion) || !running.compareAndSet(false, true)) {
+      return;
+    }
+
+    jobExecutor.submit(() -> {
+      try {
+        rescore(catalog);
+      } catch (RuntimeException exception) {
+        log.error("error during rescoring against tile catalog " + catalog.getVersion(), exception);
+      } finally {
+        running.set(false);
+      }
+    });
+  }
+
+  // resumes from the checkpoint of the catalog version, if a previous run was interrupted
+  public RescoringCheckpoint rescore(final ColorTileCatalog catalog) {
+    final ColorTileVersion target = colorTileVersionRegistry.register(catalog);
+    final RescoringCheckpoint storedCheckpoint = mongoTemplate.findById(target.getVersion(), RescoringCheckpoint.class);
+    if (storedCheckpoint != null && storedCheckpoint.getCompletedAt() != null) {
+      completedVersion = target.getVersion();
+      return storedCheckpoint;
+    }
+
+    RescoringCheckpoint checkpoint = storedCheckpoint != null ? storedCheckpoint : RescoringCheckpoint.builder()
+      .catalogVersion(target.getVersion())
+      .startedAt(Instant.now())
+      .build();
+    log.info("rescoring products against tile catalog " + target.getVersion()
+      + (checkpoint.getLastProductId() != null ? ", resuming after product " + checkpoint.getLastProductId() : ""));
+
+    // products without a catalog version have to be scored against every tile, which is opt-in
+    final Criteria outdated = rescoringProperties.isRescoreUnversioned()
+      ? where(CATALOG_VERSION_FIELD).ne(target.getVersion())
+      : where(CATALOG_VERSION_FIELD).nin(target.getVersion(), null);
+    if (checkpoint.getLastProductId() != null) {
+      outdated.and("_id").gt(checkpoint.getLastProductId());
+    }
+    final Query outdatedProducts = query(outdated).with(Sort.by("_id"));
+    if (!rescoringProperties.isRescoreUnversioned()) {
+      final long unversionedProducts = mongoTemplate.count(query(where(CATALOG_VERSION_FIELD).is(null)), Product.class);
+      if (unversionedProducts > 0) {
+        log.info("not rescoring " + unversionedProducts + " products without a catalog version, "
+          + "color-analyzer.rescoring.rescore-unversioned rescores them against every tile");
+      }
+    }
+
+    final ExecutorService scoringExecutor = Executors.newFixedThreadPool(rescoringProperties.getThreads());
+    final Map<String, TileDelta> deltas = new ConcurrentHashMap<>();
+    final Deque<Batch> batches = new ArrayDeque<>();
+    try (Stream<Document> documents = mongoTemplate.stream(outdatedProducts, Document.class,
+      mongoTemplate.getCollectionName(Product.class))) {
+      List<Document> batch = new ArrayList<>(rescoringProperties.getBatchSize());
+      for (final Document document : (Iterable<Document>) documents::iterator) {
+        batch.add(document);
+        if (batch.size() == rescoringProperties.getBatchSize()) {
+          batches.add(submit(batch, catalog, target, deltas, scoringExecutor));
+          batch = new ArrayList<>(rescoringProperties.getBatchSize());
+          // batches finish out of order, the checkpoint only moves past the oldest one
+          while (batches.size() > 2 * rescoringProperties.getThreads() || !batches.isEmpty() && batches.peek().isDone()) {
+            checkpoint = complete(batches.poll(), checkpoint);
+          }
+        }
+      }
+      if (!batch.isEmpty()) {
+        batches.add(submit(batch, catalog, target, deltas, scoringExecutor));
+      }
+      while (!batches.isEmpty()) {
+        checkpoint = complete(batches.poll(), checkpoint);
+      }
+    } finally {
+      scoringExecutor.shutdownNow();
+    }
+
+    checkpoint = mongoTemplate.save(checkpoint.toBuilder()
+      .updatedAt(Instant.now())
+      .completedAt(Instant.now())
+      .build());
+    completedVersion = target.getVersion();
+    log.info("rescored " + checkpoint.getRescoredProducts() + " of " + checkpoint.getProcessedProducts()
+      + " products against tile catalog " + target.getVersion());
+    if (checkpoint.getSkippedProducts() > 0) {
+      log.warn("skipped " + checkpoint.getSkippedProducts() + " products without a color distribution, they keep "
+        + "their scores until they are imported again");
+    }
+    return checkpoint;
+  }
+
+  private Batch submit(final List<Document> documents, final ColorTileCatalog catalog, final ColorTileVersion target,
+                       final Map<String, TileDelta> deltas, final ExecutorService scoringExecutor) {
+    final String lastProductId = documents.get(documents.size() - 1).getString("_id");
+    return new Batch(CompletableFuture.supplyAsync(() -> rescore(documents, catalog, target, deltas), scoringExecutor),
+      lastProductId, documents.size());
+  }
+
+  private RescoringCheckpoint complete(final Batch batch, final RescoringCheckpoint checkpoint) {
+    final BatchResult result = batch.result.join();
+    return mongoTemplate.save(checkpoint.toBuilder()
+      .lastProductId(batch.lastProductId)
+      .processedProducts(checkpoint.getProcessedProducts() + batch.size)
+      .rescoredProducts(checkpoint.getRescoredProducts() + result.rescoredProducts)
+      .skippedProducts(checkpoint.getSkippedProducts() + result.skippedProducts)
+      .updatedAt(Instant.now())
+      .build());
+  }
+
+  private BatchResult rescore(final List<Document> documents, final ColorTileCatalog catalog,
+                              final ColorTileVersion target, final Map<String, TileDelta> deltas) {
+    final BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+      mongoTemplate.getCollectionName(Product.class));
+    final List<String> updatedIds = new ArrayList<>();
+    int skippedProducts = 0;
+
+    for (final Document document : documents) {
+      final Document imageDocument = document.get("productImage", Document.class);
+      final Product product = mongoTemplate.getConverter().read(Product.class, document);
+      final ProductImage image = product.getProductImage();
+      if (image == null || image.getColorDistribution() == null) {
+        skippedProducts++;
+        continue;
+      }
+
+      final TileDelta delta = deltas.computeIfAbsent(Objects.toString(image.getCatalogVersion(), ""),
+        version -> tileDelta(image.getCatalogVersion(), catalog));
+      final TileScores changedScores = imageScoringService.calculateScores(image.getColorDistribution(),
+        delta.changedTiles);
+
+      final Map<String, Double> imageScores = new HashMap<>();
+      if (!delta.allTiles && image.getImageScores() != null) {
+        imageScores.putAll(image.getImageScores());
+        imageScores.keySet().removeAll(delta.removedTiles);
+      }
+      for (int tile = 0; tile < changedScores.size(); tile++) {
+        imageScores.put(changedScores.getNames()[tile], changedScores.getScores()[tile]);
+      }
+      final ProductImage rescoredImage = image.toBuilder()
+        .imageScores(imageScores)
+        .catalogVersion(target.getVersion())
+        .build();
+
+      // the filter on the previous version turns the update into a no-op if an import replaced the product meanwhile
+      bulkOperations.updateOne(query(where("_id").is(product.getId()).and(CATALOG_VERSION_FIELD)
+        .is(image.getCatalogVersion())), scoreUpdate(imageDocument, delta, changedScores, rescoredImage));
+      updatedIds.add(product.getId());
+    }
+
+    if (updatedIds.isEmpty()) {
+      return new BatchResult(0, skippedProducts);
+    }
+    bulkOperations.execute();
+
+    // the bulk result only counts the matched updates, the products are read again to publish what is actually stored
+    final List<Product> rescoredProducts = mongoTemplate.find(query(where("_id").in(updatedIds)
+      .and(CATALOG_VERSION_FIELD).is(target.getVersion())), Product.class);
+    if (!rescoredProducts.isEmpty()) {
+      eventPublisher.publishEvent(ProductStoredEvent.builder()
+        .products(rescoredProducts)
+        .build());
+    }
+    return new BatchResult(rescoredProducts.size(), skippedProducts);
+  }
+
+  // document layout images get one $set per changed tile, compact images have a single score array to replace
+  private Update scoreUpdate(final Document imageDocument, final TileDelta delta, final TileScores changedScores,
+                             final ProductImage rescoredImage) {
+    final StorageFormat storedFormat = StorageFormat.COMPACT.name().equals(imageDocument.getString(ProductImageCodec.FORMAT))
+      ? StorageFormat.COMPACT
+      : StorageFormat.DOCUMENT;
+    final Update update = new Update();
+
+    if (storedFormat != storageProperties.getFormat()) {
+      // written in the configured layout as a whole, which migrates the image on the way
+      return update.set("productImage", mongoTemplate.getConverter().convertToMongoType(rescoredImage));
+    }
+    if (storedFormat == StorageFormat.COMPACT) {
+      final Document encodedImage = (Document) mongoTemplate.getConverter().convertToMongoType(rescoredImage);
+      // images written without a catalog kept their scores by name, the array replaces them
+      return update.set("productImage." + ProductImageCodec.SCORES, encodedImage.get(ProductImageCodec.SCORES))
+        .unset("productImage." + ProductImageCodec.IMAGE_SCORES)
+        .set(CATALOG_VERSION_FIELD, rescoredImage.getCatalogVersion());
+    }
+
+    if (delta.allTiles) {
+      return update.set("productImage.imageScores", new Document(rescoredImage.getImageScores()))
+        .set(CATALOG_VERSION_FIELD, rescoredImage.getCatalogVersion());
+    }
+    for (int tile = 0; tile < changedScores.size(); tile++) {
+      update.set("productImage.imageScores." + changedScores.getNames()[tile], changedScores.getScores()[tile]);
+    }
+    delta.removedTiles.forEach(tile -> update.unset("productImage.imageScores." + tile));
+    return update.set(CATALOG_VERSION_FIELD, rescoredImage.getCatalogVersion());
+  }
+
+  // products without a known catalog version are scored against every tile and lose the scores of other tiles
+  private TileDelta tileDelta(final String previousVersion, final ColorTileCatalog catalog) {
+    final Map<String, Integer> previousColors = new HashMap<>();
+    final ColorTileVersion previous = previousVersion != null
+      ? colorTileVersionRegistry.find(previousVersion).orElse(null)
+      : null;
+    if (previous != null) {
+      for (int tile = 0; tile < previous.size(); tile++) {
+        previousColors.put(previous.getNames()[tile], previous.getColors()[tile]);
+      }
+    }
+
+    final int[] changedTiles = IntStream.range(0, catalog.size())
+      .filter(tile -> !Integer.valueOf(catalog.getColors()[tile]).equals(previousColors.get(catalog.getNames()[tile])))
+      .toArray();
+    final Set<String> removedTiles = new HashSet<>(previousColors.keySet());
+    removedTiles.removeAll(List.of(catalog.getNames()));
+
+    log.info("tile catalog " + (previous != null ? previousVersion : "unknown") + " -> " + catalog.getVersion() + ": "
+      + changedTiles.length + " tiles added or recolored, " + removedTiles.size() + " removed");
+    return new TileDelta(catalog.select(changedTiles), removedTiles, previous == null);
+  }
+
+  private static final class TileDelta {
+
+    private final ColorTileCatalog changedTiles;
+    private final Set<String> removedTiles;
+    private final boolean allTiles;
+
+    private TileDelta(final ColorTileCatalog changedTiles, final Set<String> removedTiles, final boolean allTiles) {
+      this.changedTiles = changedTiles;
+      this.removedTiles = removedTiles;
+      this.allTiles = allTiles;
+    }
+  }
+
+  private static final class Batch {
+
+    private final CompletableFuture<BatchResult> result;
+    private final String lastProductId;
+    private final int size;
+
+    private Batch(final CompletableFuture<BatchResult> result, final String lastProductId, final int size) {
+      this.result = result;
+      this.lastProductId = lastProductId;
+      this.size = size;
+    }
+
+    private boolean isDone() {
+      return result.isDone();
+    }
+  }
+
+  private static final class BatchResult {
+
+    private final int rescoredProducts;
+    private final int skippedProducts;
+
+    private BatchResult(final int rescoredProducts, final int skippedProducts) {
+      this.rescoredProducts = rescoredProducts;
+      this.skippedProducts = skippedProducts;
+    }
+  }
+}
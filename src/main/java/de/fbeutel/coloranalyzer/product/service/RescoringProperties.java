@@ -0,0 +1,23 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "color-analyzer.rescoring")
+public class RescoringProperties {
+
+  // rescore stored products whenever the tile catalog version changes, checked every check-interval-ms
+  private boolean enabled = true;
+  private long checkIntervalMs = 60000;
+
+  // products per bulk update, batches are scored on threads in parallel
+  private int batchSize = 500;
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  // products stored before catalog versions were tracked have no delta to score, they are rescored against every tile
+  private boolean rescoreUnversioned = false;
+}
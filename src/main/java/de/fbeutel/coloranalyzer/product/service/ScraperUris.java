@@ -0,0 +1,31 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static java.net.URLEncoder.encode;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.URI;
+
+import org.springframework.web.util.UriComponentsBuilder;
+
+final class ScraperUris {
+
+  private ScraperUris() {
+  }
+
+  static URI productLinksUri(final String scraperBaseUrl, final String searchWord, final int pageNumber) {
+    final String urlToScrape = encode("https://www.otto.de/suche/" + searchWord + "?ps=72&p=" + pageNumber, UTF_8);
+    return UriComponentsBuilder.fromUriString(scraperBaseUrl)
+      .path("/scrape/productLinks")
+      .queryParam("url", urlToScrape)
+      .build()
+      .toUri();
+  }
+
+  static URI productDataUri(final String scraperBaseUrl, final String urlToScrape) {
+    return UriComponentsBuilder.fromUriString(scraperBaseUrl)
+      .path("/scrape/productData")
+      .queryParam("url", encode(urlToScrape, UTF_8))
+      .build()
+      .toUri();
+  }
+}
@@ -0,0 +1,27 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "color-analyzer.search")
+public class SearchProperties {
+
+  // palette colors below this share of the palette are not indexed, at most max-colors per product
+  private double minShare = 0.05;
+  private int maxColors = 5;
+
+  // added to the lab distance of a match for every missing share percent point, in delta e per 100 %
+  private double shareWeight = 10;
+
+  // colors of newly stored products are scanned linearly until this many are merged into the tree
+  private int rebuildThreshold = 4096;
+
+  // tile scores of newly stored products stay in per tile skip lists until this many are merged into the arrays
+  private int tileRebuildThreshold = 65536;
+
+  private int maxResults = 100;
+}
@@ -0,0 +1,10 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+public enum StorageFormat {
+
+  // nested palette entries with r/g/b fields and one score field per tile name
+  DOCUMENT,
+
+  // palette and scores packed into binary fields, scores are ordered by the tile catalog version
+  COMPACT
+}
@@ -0,0 +1,19 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "color-analyzer.storage")
+public class StorageProperties {
+
+  // layout of written product images, reads always accept both layouts
+  private StorageFormat format = StorageFormat.DOCUMENT;
+
+  // rewrites every product stored in the other layout before the import starts
+  private boolean migrateOnStartup = false;
+  private int migrationBatchSize = 500;
+}
@@ -0,0 +1,427 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import de.fbeutel.coloranalyzer.product.domain.Product;
+import de.fbeutel.coloranalyzer.product.domain.ProductRepository;
+import de.fbeutel.coloranalyzer.product.domain.ProductStoredEvent;
+import de.fbeutel.coloranalyzer.product.domain.TileScoreMatch;
+
+// per tile, the products ordered by their score: a sorted primitive array rebuilt in the background plus a skip list
+// of the scores stored since. an entry only counts while it equals the current score of its product, so replaced
+// scores never have to be removed from the arrays
+@Slf4j
+@Service
+public class TileScoreIndex implements ApplicationRunner {
+
+  private static final Comparator<TileEntry> ORDER =
+    (first, second) -> compare(first.score, first.product, second.score, second.product);
+
+  // sorts before every product with the same score, starts a range scan
+  private static final ProductEntry RANGE_START = new ProductEntry("");
+
+  private final ProductRepository productRepository;
+  private final SearchProperties searchProperties;
+
+  // loading and rebuilding run here, one at a time, so only this thread ever replaces the arrays
+  private final ExecutorService maintenanceExecutor = Executors.newSingleThreadExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "tile-score-index");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final Map<String, ProductEntry> products = new ConcurrentHashMap<>();
+  private final Map<String, Column> columnsByTile = new ConcurrentHashMap<>();
+  private final List<Column> columns = new CopyOnWriteArrayList<>();
+
+  private final AtomicInteger pendingEntries = new AtomicInteger();
+  private final AtomicLong indexedEntries = new AtomicLong();
+  private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+  private volatile boolean loaded;
+
+  public TileScoreIndex(final ProductRepository productRepository, final SearchProperties searchProperties) {
+    this.productRepository = productRepository;
+    this.searchProperties = searchProperties;
+  }
+
+  // loads in the background, queries are answered from the products indexed so far until then
+  @Override
+  public void run(final ApplicationArguments args) {
+    maintenanceExecutor.submit(this::load);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    maintenanceExecutor.shutdownNow();
+  }
+
+  @EventListener
+  public void onProductsStored(final ProductStoredEvent event) {
+    index(event.getProducts());
+  }
+
+  public void index(final Collection<Product> storedProducts) {
+    int addedEntries = 0;
+    for (final Product product : storedProducts) {
+      final ProductEntry entry = products.computeIfAbsent(product.getId(), ProductEntry::new);
+      synchronized (entry) {
+        final float[] scores = scores(product);
+        for (int column = 0; column < scores.length; column++) {
+          // an unchanged score is still indexed by its earlier entry
+          if (!Float.isNaN(scores[column])
+            && Float.floatToIntBits(scores[column]) != Float.floatToIntBits(entry.score(column))) {
+            // an equal pending entry is replaced, so a rebuild which merged the earlier one does not remove it
+            final TileEntry tileEntry = new TileEntry(scores[column], entry);
+            if (columns.get(column).pending.put(tileEntry, tileEntry) == null) {
+              addedEntries++;
+            }
+          }
+        }
+        entry.scores = scores;
+      }
+    }
+
+    pendingEntries.addAndGet(addedEntries);
+    scheduleRebuild();
+  }
+
+  // the products with the lowest scores for a tile within [minScore, maxScore], empty for an unknown tile
+  public Optional<List<TileScoreMatch>> best(final String tile, final int offset, final int limit,
+                                             final double minScore, final double maxScore) {
+    final Column column = columnsByTile.get(tile);
+    if (column == null) {
+      return Optional.empty();
+    }
+
+    final Snapshot snapshot = column.snapshot;
+    final int count = Math.min(limit, searchProperties.getMaxResults());
+    final List<TileScoreMatch> matches = new ArrayList<>(count);
+    int skipped = 0;
+
+    int snapshotIndex = snapshot.lowerBound(minScore);
+    final Iterator<TileEntry> pending = column.pending
+      .tailMap(new TileEntry((float) Math.max(minScore, -Float.MAX_VALUE), RANGE_START), true)
+      .values()
+      .iterator();
+    TileEntry pendingEntry = nextLive(column, pending);
+
+    while (matches.size() < count) {
+      while (snapshotIndex < snapshot.size() && !snapshot.isLive(column, snapshotIndex)) {
+        snapshotIndex++;
+      }
+
+      // merge both ascending sequences, an entry in both only counts once
+      final TileEntry snapshotEntry = snapshotIndex < snapshot.size() ? snapshot.entry(snapshotIndex) : null;
+      final TileEntry entry;
+      if (snapshotEntry == null && pendingEntry == null) {
+        break;
+      } else if (pendingEntry == null) {
+        entry = snapshotEntry;
+        snapshotIndex++;
+      } else if (snapshotEntry == null) {
+        entry = pendingEntry;
+        pendingEntry = nextLive(column, pending);
+      } else {
+        final int order = ORDER.compare(snapshotEntry, pendingEntry);
+        entry = order <= 0 ? snapshotEntry : pendingEntry;
+        if (order <= 0) {
+          snapshotIndex++;
+        }
+        if (order >= 0) {
+          pendingEntry = nextLive(column, pending);
+        }
+      }
+
+      if (entry.score > maxScore) {
+        break;
+      }
+      if (skipped < offset) {
+        skipped++;
+      } else {
+        matches.add(TileScoreMatch.builder()
+          .productId(entry.product.id)
+          .score(entry.score)
+          .build());
+      }
+    }
+    return Optional.of(matches);
+  }
+
+  public List<String> tiles() {
+    return columns.stream().map(column -> column.tile).toList();
+  }
+
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  int pendingEntries() {
+    return pendingEntries.get();
+  }
+
+  // merges every pending score into the arrays and waits for it, after any load or rebuild queued before
+  void rebuildNow() {
+    try {
+      maintenanceExecutor.submit(() -> rebuild(List.of())).get();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while rebuilding the tile score index", exception);
+    } catch (ExecutionException exception) {
+      throw new IllegalStateException("could not rebuild the tile score index", exception.getCause());
+    }
+  }
+
+  private void load() {
+    final long startTime = System.currentTimeMillis();
+    final List<ProductEntry> loadedProducts = new ArrayList<>();
+    try (Stream<Product> storedProducts = productRepository.streamAllBy()) {
+      storedProducts.forEach(product -> {
+        final ProductEntry entry = new ProductEntry(product.getId());
+        entry.scores = scores(product);
+        // a product stored while loading is already indexed with its newer scores
+        if (products.putIfAbsent(product.getId(), entry) == null) {
+          loadedProducts.add(entry);
+        }
+      });
+      rebuild(loadedProducts);
+      loaded = true;
+      log.info("loaded tile score index with " + loadedProducts.size() + " products and " + columns.size()
+        + " tiles in " + (System.currentTimeMillis() - startTime) + " ms");
+      scheduleRebuild();
+    } catch (RuntimeException exception) {
+      log.error("could not load tile score index, only newly stored products are searchable", exception);
+    }
+  }
+
+  // stored scores arriving while a rebuild runs stay pending, so a finished rebuild checks whether the next one is due;
+  // a rebuild copies every array, waiting for a fixed fraction of the indexed entries keeps that cost per stored
+  // score constant as the index grows
+  private void scheduleRebuild() {
+    final long threshold = Math.max(searchProperties.getTileRebuildThreshold(), indexedEntries.get() / 32);
+    if (pendingEntries.get() >= threshold && rebuildScheduled.compareAndSet(false, true)) {
+      maintenanceExecutor.submit(() -> {
+        try {
+          rebuild(List.of());
+        } finally {
+          rebuildScheduled.set(false);
+        }
+        scheduleRebuild();
+      });
+    }
+  }
+
+  // tiles are independent of each other and rebuilt in parallel
+  private void rebuild(final List<ProductEntry> loadedProducts) {
+    columns.parallelStream().forEach(column -> rebuild(column, loadedProducts));
+  }
+
+  // the new array is published before the merged entries leave the skip list, a concurrent query may see an entry
+  // in both, which the merge collapses, but never misses one
+  private void rebuild(final Column column, final List<ProductEntry> loadedProducts) {
+    // skip list iteration is ascending, so only loaded products need sorting
+    final List<TileEntry> merged = new ArrayList<>(column.pending.values());
+    final List<TileEntry> additions = new ArrayList<>(merged);
+    if (!loadedProducts.isEmpty()) {
+      for (final ProductEntry product : loadedProducts) {
+        if (!Float.isNaN(product.score(column.index))) {
+          additions.add(new TileEntry(product.score(column.index), product));
+        }
+      }
+      additions.sort(ORDER);
+    }
+
+    // linear merge of the current array and the additions, dropping replaced scores and duplicates
+    final Snapshot snapshot = column.snapshot;
+    final float[] scores = new float[snapshot.size() + additions.size()];
+    final ProductEntry[] entryProducts = new ProductEntry[scores.length];
+    int size = 0;
+    int snapshotIndex = 0;
+    int additionIndex = 0;
+    while (snapshotIndex < snapshot.size() || additionIndex < additions.size()) {
+      final float score;
+      final ProductEntry product;
+      if (additionIndex == additions.size() || snapshotIndex < snapshot.size()
+        && compare(snapshot.scores[snapshotIndex], snapshot.products[snapshotIndex],
+        additions.get(additionIndex).score, additions.get(additionIndex).product) <= 0) {
+        score = snapshot.scores[snapshotIndex];
+        product = snapshot.products[snapshotIndex++];
+      } else {
+        score = additions.get(additionIndex).score;
+        product = additions.get(additionIndex++).product;
+      }
+
+      if (Float.floatToIntBits(product.score(column.index)) != Float.floatToIntBits(score)
+        || size > 0 && entryProducts[size - 1] == product && scores[size - 1] == score) {
+        continue;
+      }
+      scores[size] = score;
+      entryProducts[size++] = product;
+    }
+    indexedEntries.addAndGet(size - snapshot.size());
+    column.snapshot = new Snapshot(scores, entryProducts, size);
+
+    // only the merged instances leave, an entry stored again since then replaced its instance and stays pending
+    int removedEntries = 0;
+    for (final TileEntry entry : merged) {
+      if (column.pending.remove(entry, entry)) {
+        removedEntries++;
+      }
+    }
+    pendingEntries.addAndGet(-removedEntries);
+  }
+
+  private float[] scores(final Product product) {
+    if (product.getProductImage() == null || product.getProductImage().getImageScores() == null) {
+      return new float[0];
+    }
+
+    final Map<String, Double> imageScores = product.getProductImage().getImageScores();
+    imageScores.keySet().forEach(this::column);
+    final float[] scores = new float[columns.size()];
+    Arrays.fill(scores, Float.NaN);
+    imageScores.forEach((tile, score) -> scores[column(tile).index] = score.floatValue());
+    return scores;
+  }
+
+  private Column column(final String tile) {
+    final Column column = columnsByTile.get(tile);
+    if (column != null) {
+      return column;
+    }
+    synchronized (columns) {
+      return columnsByTile.computeIfAbsent(tile, name -> {
+        final Column newColumn = new Column(columns.size(), name);
+        columns.add(newColumn);
+        return newColumn;
+      });
+    }
+  }
+
+  private static int compare(final float firstScore, final ProductEntry firstProduct, final float secondScore,
+                             final ProductEntry secondProduct) {
+    final int order = Float.compare(firstScore, secondScore);
+    return order != 0 ? order : firstProduct.id.compareTo(secondProduct.id);
+  }
+
+  private static TileEntry nextLive(final Column column, final Iterator<TileEntry> entries) {
+    while (entries.hasNext()) {
+      final TileEntry entry = entries.next();
+      if (entry.isLive(column.index)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  private static final class ProductEntry {
+
+    private final String id;
+
+    // scores by column index, NaN for tiles without a score; replaced as a whole on every update
+    private volatile float[] scores = new float[0];
+
+    private ProductEntry(final String id) {
+      this.id = id;
+    }
+
+    private float score(final int column) {
+      final float[] currentScores = scores;
+      return column < currentScores.length ? currentScores[column] : Float.NaN;
+    }
+  }
+
+  private static final class TileEntry {
+
+    private final float score;
+    private final ProductEntry product;
+
+    private TileEntry(final float score, final ProductEntry product) {
+      this.score = score;
+      this.product = product;
+    }
+
+    private boolean isLive(final int column) {
+      return Float.floatToIntBits(product.score(column)) == Float.floatToIntBits(score);
+    }
+  }
+
+  private static final class Column {
+
+    private final int index;
+    private final String tile;
+    // keyed and valued by the same entry, the value is the instance stored last
+    private final ConcurrentSkipListMap<TileEntry, TileEntry> pending = new ConcurrentSkipListMap<>(ORDER);
+    private volatile Snapshot snapshot = new Snapshot(new float[0], new ProductEntry[0], 0);
+
+    private Column(final int index, final String tile) {
+      this.index = index;
+      this.tile = tile;
+    }
+  }
+
+  private static final class Snapshot {
+
+    private final float[] scores;
+    private final ProductEntry[] products;
+    private final int size;
+
+    private Snapshot(final float[] scores, final ProductEntry[] products, final int size) {
+      this.scores = scores;
+      this.products = products;
+      this.size = size;
+    }
+
+    private int size() {
+      return size;
+    }
+
+    private TileEntry entry(final int index) {
+      return new TileEntry(scores[index], products[index]);
+    }
+
+    private boolean isLive(final Column column, final int index) {
+      return Float.floatToIntBits(products[index].score(column.index)) == Float.floatToIntBits(scores[index]);
+    }
+
+    // first index with a score of at least minScore
+    private int lowerBound(final double minScore) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        final int middle = (low + high) >>> 1;
+        if (scores[middle] < minScore) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+  }
+}
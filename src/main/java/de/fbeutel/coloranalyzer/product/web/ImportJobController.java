@@ -0,0 +1,62 @@
+package de.fbeutel.coloranalyzer.product.web;
+
+import java.net.URI;
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import de.fbeutel.coloranalyzer.product.domain.ImportJob;
+import de.fbeutel.coloranalyzer.product.domain.ImportJobProgress;
+import de.fbeutel.coloranalyzer.product.service.ImportJobRunner;
+import de.fbeutel.coloranalyzer.product.service.ImportJobService;
+import de.fbeutel.coloranalyzer.product.service.ImportProperties;
+
+@RestController
+@RequestMapping("/imports")
+public class ImportJobController {
+
+  private final ImportJobRunner importJobRunner;
+  private final ImportJobService importJobService;
+  private final ImportProperties importProperties;
+
+  public ImportJobController(final ImportJobRunner importJobRunner, final ImportJobService importJobService,
+                             final ImportProperties importProperties) {
+    this.importJobRunner = importJobRunner;
+    this.importJobService = importJobService;
+    this.importProperties = importProperties;
+  }
+
+  // e.g. POST /imports?searchWords=hose,kleid, without search words the configured ones are imported
+  @PostMapping
+  public ResponseEntity<ImportJob> start(@RequestParam(required = false) final List<String> searchWords) {
+    final List<String> words = searchWords == null || searchWords.isEmpty()
+      ? importProperties.getSearchWords()
+      : searchWords;
+    if (words.stream().anyMatch(String::isBlank)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "search words must not be blank");
+    }
+
+    final ImportJob job = importJobRunner.submit(words);
+    return ResponseEntity.created(URI.create("/imports/" + job.getId())).body(job);
+  }
+
+  @GetMapping
+  public List<ImportJob> jobs() {
+    return importJobService.findAll();
+  }
+
+  // per search word whether it was discovered, and the number of products in every state
+  @GetMapping("/{id}")
+  public ImportJobProgress progress(@PathVariable final String id) {
+    return importJobService.progress(id)
+      .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "unknown import job " + id));
+  }
+}
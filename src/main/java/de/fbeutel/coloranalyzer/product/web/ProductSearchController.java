@@ -0,0 +1,38 @@
+package de.fbeutel.coloranalyzer.product.web;
+
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import de.fbeutel.coloranalyzer.product.domain.ProductMatch;
+import de.fbeutel.coloranalyzer.product.service.ProductColorIndex;
+
+@RestController
+@RequestMapping("/products")
+public class ProductSearchController {
+
+  private final ProductColorIndex productColorIndex;
+
+  public ProductSearchController(final ProductColorIndex productColorIndex) {
+    this.productColorIndex = productColorIndex;
+  }
+
+  // color as hex rgb, e.g. /products/search?color=ff8800&limit=20
+  @GetMapping("/search")
+  public List<ProductMatch> search(@RequestParam final String color,
+                                   @RequestParam(defaultValue = "10") final int limit) {
+    final String hex = color.startsWith("#") ? color.substring(1) : color;
+    if (!hex.matches("[0-9a-fA-F]{6}")) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "color must be a hex rgb value like ff8800");
+    }
+    if (limit < 1) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+    }
+    return productColorIndex.nearest(Integer.parseInt(hex, 16), limit);
+  }
+}
@@ -0,0 +1,44 @@
+package de.fbeutel.coloranalyzer.product.web;
+
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import de.fbeutel.coloranalyzer.product.domain.TileScoreMatch;
+import de.fbeutel.coloranalyzer.product.service.TileScoreIndex;
+
+@RestController
+@RequestMapping("/tiles")
+public class TileScoreController {
+
+  private final TileScoreIndex tileScoreIndex;
+
+  public TileScoreController(final TileScoreIndex tileScoreIndex) {
+    this.tileScoreIndex = tileScoreIndex;
+  }
+
+  @GetMapping
+  public List<String> tiles() {
+    return tileScoreIndex.tiles();
+  }
+
+  // best matching products first, e.g. /tiles/red-1/products?offset=20&limit=20&maxScore=15
+  @GetMapping("/{tile}/products")
+  public List<TileScoreMatch> bestProducts(@PathVariable final String tile,
+                                           @RequestParam(defaultValue = "0") final int offset,
+                                           @RequestParam(defaultValue = "20") final int limit,
+                                           @RequestParam(defaultValue = "-Infinity") final double minScore,
+                                           @RequestParam(defaultValue = "Infinity") final double maxScore) {
+    if (offset < 0 || limit < 1) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "offset must not be negative and limit must be positive");
+    }
+    return tileScoreIndex.best(tile, offset, limit, minScore, maxScore)
+      .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "unknown tile " + tile));
+  }
+}
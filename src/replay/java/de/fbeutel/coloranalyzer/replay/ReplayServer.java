@@ -0,0 +1,308 @@
+package de.fbeutel.coloranalyzer.replay;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// stands in for the scraper, the tile service and the image server: in record mode it forwards every request to the
+// real service and archives the response, in replay mode it answers from the archive only, so an import runs without
+// any network and its throughput is limited by the pipeline instead of the remote services
+public class ReplayServer {
+
+  private static final String ENTRY_SUFFIX = ".http";
+
+  private final Mode mode;
+  private final Path archive;
+  // path prefix on this server -> base url of the real service, the longest matching prefix wins
+  private final Map<String, String> routes;
+  private final long latencyNanos;
+  private final long jitterNanos;
+  private final long requestIntervalNanos;
+
+  private final HttpClient httpClient = HttpClient.newBuilder()
+    .followRedirects(HttpClient.Redirect.NORMAL)
+    .connectTimeout(Duration.ofSeconds(10))
+    .build();
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong nextRequestSlot = new AtomicLong(System.nanoTime());
+  private final AtomicLong served = new AtomicLong();
+  private final AtomicLong missing = new AtomicLong();
+  private HttpServer server;
+
+  ReplayServer(final Mode mode, final Path archive, final Map<String, String> routes, final long latencyNanos,
+               final long jitterNanos, final double requestsPerSecond) {
+    this.mode = mode;
+    this.archive = archive;
+    this.routes = routes;
+    this.latencyNanos = latencyNanos;
+    this.jitterNanos = jitterNanos;
+    this.requestIntervalNanos = requestsPerSecond > 0 ? (long) (1e9 / requestsPerSecond) : 0;
+  }
+
+  // --mode=record|replay --archive=data/replay --port=8099 --rate=<requests per second, 0 = unlimited>
+  // --latency=<ms> --jitter=<ms> --route=<prefix>=<base url> (repeatable, replaces the default routes)
+  public static void main(final String[] args) throws IOException {
+    final Map<String, String> options = new LinkedHashMap<>();
+    final Map<String, String> routes = new LinkedHashMap<>();
+    for (final String arg : args) {
+      final String[] option = arg.replaceFirst("^--", "").split("=", 2);
+      if (option.length != 2) {
+        throw new IllegalArgumentException("options are passed as --name=value, got " + arg);
+      }
+      if (option[0].equals("route")) {
+        final String[] route = option[1].split("=", 2);
+        if (route.length != 2) {
+          throw new IllegalArgumentException("routes are passed as --route=<prefix>=<base url>, got " + arg);
+        }
+        routes.put(route[0], route[1]);
+      } else {
+        options.put(option[0], option[1]);
+      }
+    }
+    if (routes.isEmpty()) {
+      routes.put("/scraper", "http://localhost:3000");
+      routes.put("/tiles", "http://localhost:8090/tiles");
+      routes.put("/images/", "https://i.otto.de/i/otto/");
+    }
+
+    final ReplayServer server = new ReplayServer(
+      Mode.valueOf(options.getOrDefault("mode", "replay").toUpperCase()),
+      Paths.get(options.getOrDefault("archive", "data/replay")),
+      routes,
+      Duration.ofMillis(Long.parseLong(options.getOrDefault("latency", "0"))).toNanos(),
+      Duration.ofMillis(Long.parseLong(options.getOrDefault("jitter", "0"))).toNanos(),
+      Double.parseDouble(options.getOrDefault("rate", "0")));
+    server.start(Integer.parseInt(options.getOrDefault("port", "8099")));
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.printf(
+      "served %d responses, %d requests were not archived%n", server.served.get(), server.missing.get())));
+  }
+
+  void start(final int port) throws IOException {
+    Files.createDirectories(archive);
+    if (mode == Mode.REPLAY) {
+      loadArchive();
+    }
+
+    server = HttpServer.create(new InetSocketAddress(port), 0);
+    // latency is simulated by sleeping, a virtual thread per request keeps that from limiting concurrency
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext("/", this::handle);
+    server.start();
+    System.out.printf("%s server on port %d, archive %s, %d archived responses, routes %s%n",
+      mode.name().toLowerCase(), port(), archive.toAbsolutePath(), entries.size(), routes);
+  }
+
+  void stop() {
+    server.stop(0);
+  }
+
+  int port() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(final HttpExchange exchange) throws IOException {
+    try (exchange) {
+      final String key = exchange.getRequestMethod() + " " + exchange.getRequestURI().toString();
+      final Entry entry = mode == Mode.RECORD ? record(key, exchange) : entries.get(key);
+
+      if (entry == null) {
+        missing.incrementAndGet();
+        System.err.println("not archived: " + key);
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+
+      if (mode == Mode.REPLAY) {
+        delay();
+      }
+      if (entry.contentType != null) {
+        exchange.getResponseHeaders().set("Content-Type", entry.contentType);
+      }
+      exchange.sendResponseHeaders(entry.status, entry.body.length == 0 ? -1 : entry.body.length);
+      if (entry.body.length > 0) {
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+          responseBody.write(entry.body);
+        }
+      }
+      served.incrementAndGet();
+    } catch (IOException | RuntimeException exception) {
+      System.err.println("error answering " + exchange.getRequestURI() + ": " + exception);
+      throw exception;
+    }
+  }
+
+  // conditional request headers are not forwarded, so the archive always holds complete responses
+  private Entry record(final String key, final HttpExchange exchange) throws IOException {
+    final URI upstreamUri = upstreamUri(exchange.getRequestURI());
+    if (upstreamUri == null) {
+      return null;
+    }
+
+    final HttpRequest.Builder request = HttpRequest.newBuilder(upstreamUri)
+      .timeout(Duration.ofSeconds(60))
+      .method(exchange.getRequestMethod(), HttpRequest.BodyPublishers.ofByteArray(
+        exchange.getRequestBody().readAllBytes()));
+    final String accept = exchange.getRequestHeaders().getFirst("Accept");
+    if (accept != null) {
+      request.header("Accept", accept);
+    }
+
+    final HttpResponse<byte[]> response;
+    try {
+      response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while forwarding " + key, exception);
+    }
+
+    final Entry entry = new Entry(key, response.statusCode(),
+      response.headers().firstValue("Content-Type").orElse(null), response.body());
+    write(entry);
+    entries.put(key, entry);
+    return entry;
+  }
+
+  private URI upstreamUri(final URI requestUri) {
+    final String path = requestUri.getRawPath();
+    return routes.entrySet().stream()
+      .filter(route -> path.startsWith(route.getKey()))
+      .max(Comparator.comparingInt(route -> route.getKey().length()))
+      .map(route -> URI.create(route.getValue() + path.substring(route.getKey().length())
+        + (requestUri.getRawQuery() != null ? "?" + requestUri.getRawQuery() : "")))
+      .orElse(null);
+  }
+
+  // requests are spaced to the configured rate across all connections, then each one waits for the latency
+  private void delay() {
+    long waitNanos = 0;
+    if (requestIntervalNanos > 0) {
+      final long now = System.nanoTime();
+      final long slot = nextRequestSlot.getAndUpdate(next -> Math.max(next, now) + requestIntervalNanos);
+      waitNanos = Math.max(0, slot - now);
+    }
+    waitNanos += latencyNanos + (jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos) : 0);
+
+    if (waitNanos > 0) {
+      try {
+        Thread.sleep(Duration.ofNanos(waitNanos));
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  // one file per response: the request line, status and content type as a text header, a blank line, then the body
+  private void write(final Entry entry) throws IOException {
+    final byte[] header = (entry.key + "\n" + entry.status + "\n" + (entry.contentType != null ? entry.contentType : "")
+      + "\n\n").getBytes(UTF_8);
+    final byte[] content = new byte[header.length + entry.body.length];
+    System.arraycopy(header, 0, content, 0, header.length);
+    System.arraycopy(entry.body, 0, content, header.length, entry.body.length);
+
+    final Path file = archive.resolve(hash(entry.key) + ENTRY_SUFFIX);
+    final Path temporaryFile = Files.createTempFile(archive, "entry", ".tmp");
+    Files.write(temporaryFile, content);
+    Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  // the whole archive is held in memory, replayed responses never wait on the disk either
+  private void loadArchive() throws IOException {
+    final List<Path> files;
+    try (Stream<Path> archiveFiles = Files.list(archive)) {
+      files = archiveFiles.filter(file -> file.toString().endsWith(ENTRY_SUFFIX)).toList();
+    }
+
+    for (final Path file : files) {
+      final Entry entry = readEntry(file);
+      entries.put(entry.key, entry);
+    }
+  }
+
+  // a truncated or hand edited entry fails the start with its file name instead of replaying a partial archive
+  private static Entry readEntry(final Path file) throws IOException {
+    final byte[] content = Files.readAllBytes(file);
+    final List<String> header = new ArrayList<>();
+    int lineStart = 0;
+    int position = 0;
+    while (header.size() < 4) {
+      if (position == content.length) {
+        throw new IOException("malformed archive entry " + file + ": the header ends after " + header.size()
+          + " of 4 lines (request line, status, content type, blank line)");
+      }
+      if (content[position] == '\n') {
+        header.add(new String(content, lineStart, position - lineStart, UTF_8));
+        lineStart = position + 1;
+      }
+      position++;
+    }
+
+    if (!header.get(0).matches("[A-Z]+ \\S+") || !header.get(3).isEmpty()) {
+      throw new IOException("malformed archive entry " + file + ": expected a request line and a blank line after "
+        + "the content type, got " + header);
+    }
+    final int status;
+    try {
+      status = Integer.parseInt(header.get(1));
+    } catch (NumberFormatException exception) {
+      throw new IOException("malformed archive entry " + file + ": invalid status " + header.get(1), exception);
+    }
+
+    final byte[] body = new byte[content.length - position];
+    System.arraycopy(content, position, body, 0, body.length);
+    return new Entry(header.get(0), status, header.get(2).isEmpty() ? null : header.get(2), body);
+  }
+
+  private static String hash(final String key) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(key.getBytes(UTF_8)));
+    } catch (NoSuchAlgorithmException exception) {
+      throw new IllegalStateException(exception);
+    }
+  }
+
+  enum Mode {
+    RECORD, REPLAY
+  }
+
+  private static final class Entry {
+
+    private final String key;
+    private final int status;
+    private final String contentType;
+    private final byte[] body;
+
+    private Entry(final String key, final int status, final String contentType, final byte[] body) {
+      this.key = key;
+      this.status = status;
+      this.contentType = contentType;
+      this.body = body;
+    }
+  }
+}
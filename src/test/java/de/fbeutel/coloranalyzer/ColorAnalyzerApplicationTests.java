@@ -1,11 +1,8 @@
 package de.fbeutel.coloranalyzer;
 
-import org.junit.Test;
-import org.junit.runner.RunWith;
+import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.test.context.junit4.SpringRunner;
 
-@RunWith(SpringRunner.class)
 @SpringBootTest
 public class ColorAnalyzerApplicationTests {
 
@@ -13,4 +10,3 @@ public class ColorAnalyzerApplicationTests {
   public void contextLoads() {
   }
 }
-
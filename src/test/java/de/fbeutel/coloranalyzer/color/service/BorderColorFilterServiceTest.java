@@ -0,0 +1,85 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import static de.fbeutel.coloranalyzer.color.service.ImageBorderService.ALLOWED_BORDER_COLOR_DISTANCE;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.fbeutel.coloranalyzer.color.domain.BorderColorFilter;
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
+
+public class BorderColorFilterServiceTest {
+
+  // every color this far from the border color in each channel is compared with the scalar distance
+  private static final int NEIGHBOURHOOD = 24;
+
+  private final ColorConversionService colorConversionService = new ColorConversionService(false);
+  private final ColorDistanceService colorDistanceService = new ColorDistanceService(colorConversionService);
+  private final BorderColorFilterService borderColorFilterService =
+    new BorderColorFilterService(colorConversionService, colorDistanceService);
+
+  @Test
+  public void filterMatchesTheScalarDistanceAroundTheBorderColor() {
+    for (final int borderColor : new int[] {0xffffff, 0x000000, 0x808080, 0xf4f0e8, 0xc81e3c, 0x0a64c8}) {
+      final BorderColorFilter filter = borderColorFilterService.borderColorFilter(borderColor);
+      int borderColors = 0;
+      for (int red = clamp(PixelBuffer.red(borderColor) - NEIGHBOURHOOD);
+           red <= clamp(PixelBuffer.red(borderColor) + NEIGHBOURHOOD); red++) {
+        for (int green = clamp(PixelBuffer.green(borderColor) - NEIGHBOURHOOD);
+             green <= clamp(PixelBuffer.green(borderColor) + NEIGHBOURHOOD); green++) {
+          for (int blue = clamp(PixelBuffer.blue(borderColor) - NEIGHBOURHOOD);
+               blue <= clamp(PixelBuffer.blue(borderColor) + NEIGHBOURHOOD); blue++) {
+            final int color = PixelBuffer.pack(red, green, blue);
+            final boolean expected = isBorderColor(borderColor, color);
+            assertEquals(expected, filter.isBorderColor(color),
+              String.format("color %06x with border color %06x", color, borderColor));
+            borderColors += expected ? 1 : 0;
+          }
+        }
+      }
+      assertTrue(borderColors > 1, String.format("border color %06x matches only itself", borderColor));
+    }
+  }
+
+  @Test
+  public void filterMatchesTheScalarDistanceForRandomColors() {
+    final Random random = new Random(42);
+    final int borderColor = 0xf4f0e8;
+    final BorderColorFilter filter = borderColorFilterService.borderColorFilter(borderColor);
+    for (int sample = 0; sample < 200_000; sample++) {
+      final int color = random.nextInt(0x1000000);
+      assertEquals(isBorderColor(borderColor, color), filter.isBorderColor(color),
+        String.format("color %06x", color));
+    }
+  }
+
+  @Test
+  public void shadesOfTheBorderColorAreFilteredAndDistinctColorsAreKept() {
+    final BorderColorFilter white = borderColorFilterService.borderColorFilter(0xffffff);
+    assertTrue(white.isBorderColor(0xffffff));
+    assertTrue(white.isBorderColor(0xfefefe));
+    assertTrue(white.isBorderColor(0xfcfdfe));
+    assertFalse(white.isBorderColor(0xe0e0e0));
+    assertFalse(white.isBorderColor(0xffff00));
+    assertFalse(white.isBorderColor(0x000000));
+  }
+
+  @Test
+  public void filtersAreCachedPerBorderColor() {
+    assertSame(borderColorFilterService.borderColorFilter(0x808080), borderColorFilterService.borderColorFilter(0x808080));
+  }
+
+  private boolean isBorderColor(final int borderColor, final int color) {
+    return !(colorDistanceService.calculateDistance(borderColor, color) > ALLOWED_BORDER_COLOR_DISTANCE);
+  }
+
+  private static int clamp(final int channel) {
+    return Math.max(0, Math.min(255, channel));
+  }
+}
@@ -0,0 +1,70 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.fbeutel.coloranalyzer.color.domain.LabColor;
+import de.fbeutel.coloranalyzer.color.domain.RgbColor;
+
+public class ColorConversionServiceTest {
+
+  // half of the hundredths the packed lab components are rounded to
+  private static final double MAX_ERROR = 0.005 + 1e-9;
+
+  private final ColorConversionService colorConversionService = new ColorConversionService(false);
+
+  @Test
+  public void packedLabIsWithinRoundingOfTheExactConversionForAllColors() {
+    double maxError = 0;
+    for (int rgb = 0; rgb < 0x1000000; rgb++) {
+      final double[] exact = ColorConversionService.computeLab(rgb);
+      final long packedLab = ColorConversionService.computePackedLab(rgb);
+      maxError = Math.max(maxError, Math.abs(exact[0] - ColorConversionService.labL(packedLab)));
+      maxError = Math.max(maxError, Math.abs(exact[1] - ColorConversionService.labA(packedLab)));
+      maxError = Math.max(maxError, Math.abs(exact[2] - ColorConversionService.labB(packedLab)));
+    }
+    assertTrue(maxError <= MAX_ERROR, "max lab error " + maxError);
+  }
+
+  @Test
+  public void cachedConversionsMatchThePackedConversion() {
+    final Random random = new Random(42);
+    final float[] out = new float[3];
+    for (int sample = 0; sample < 100_000; sample++) {
+      final int rgb = random.nextInt(0x1000000);
+      final long packedLab = ColorConversionService.computePackedLab(rgb);
+
+      // the first call fills the slot, the second one reads it
+      for (int call = 0; call < 2; call++) {
+        assertEquals(packedLab, colorConversionService.toPackedLab(rgb));
+        final LabColor lab = colorConversionService.toLab(RgbColor.fromPackedRgb(rgb));
+        assertEquals(ColorConversionService.labL(packedLab), lab.getL());
+        assertEquals(ColorConversionService.labA(packedLab), lab.getA());
+        assertEquals(ColorConversionService.labB(packedLab), lab.getB());
+        colorConversionService.toLab(rgb, out);
+        assertEquals((float) lab.getL(), out[0]);
+        assertEquals((float) lab.getA(), out[1]);
+        assertEquals((float) lab.getB(), out[2]);
+      }
+    }
+  }
+
+  @Test
+  public void referenceColorsConvertToTheirKnownLabValues() {
+    assertLab(0xffffff, 100, 0, 0);
+    assertLab(0x000000, 0, 0, 0);
+    assertLab(0xff0000, 53.24, 80.09, 67.20);
+    assertLab(0x0000ff, 32.30, 79.19, -107.86);
+  }
+
+  private void assertLab(final int rgb, final double l, final double a, final double b) {
+    final LabColor lab = colorConversionService.toLab(RgbColor.fromPackedRgb(rgb));
+    assertEquals(l, lab.getL(), 0.05);
+    assertEquals(a, lab.getA(), 0.05);
+    assertEquals(b, lab.getB(), 0.05);
+  }
+}
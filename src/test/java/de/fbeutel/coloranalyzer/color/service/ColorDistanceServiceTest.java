@@ -0,0 +1,51 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.fbeutel.coloranalyzer.color.domain.LabColor;
+import de.fbeutel.coloranalyzer.color.domain.RgbColor;
+
+public class ColorDistanceServiceTest {
+
+  private static final int BLOCK_SIZE = 4096;
+
+  private final ColorConversionService colorConversionService = new ColorConversionService(false);
+  private final ColorDistanceService colorDistanceService = new ColorDistanceService(colorConversionService);
+
+  @Test
+  public void batchDistancesMatchScalarDistances() {
+    final Random random = new Random(42);
+    final LabColor[] references = {
+      colorConversionService.toLab(RgbColor.builder().r(255).g(255).b(255).build()),
+      colorConversionService.toLab(RgbColor.builder().r(0).g(0).b(0).build()),
+      colorConversionService.toLab(RgbColor.builder().r(200).g(30).b(60).build()),
+      LabColor.builder().l(50).a(0).b(0).build()
+    };
+
+    final LabColor[] colors = new LabColor[BLOCK_SIZE];
+    final double[] lightness = new double[BLOCK_SIZE];
+    final double[] a = new double[BLOCK_SIZE];
+    final double[] b = new double[BLOCK_SIZE];
+    for (int index = 0; index < BLOCK_SIZE; index++) {
+      colors[index] = index % 8 == 0 ? references[index / 8 % references.length] : colorConversionService.toLab(
+        RgbColor.fromPackedRgb(random.nextInt(0x1000000)));
+      lightness[index] = colors[index].getL();
+      a[index] = colors[index].getA();
+      b[index] = colors[index].getB();
+    }
+
+    final double[] distances = new double[BLOCK_SIZE];
+    for (final LabColor reference : references) {
+      colorDistanceService.calculateDistances(reference, lightness, a, b, BLOCK_SIZE, distances);
+
+      for (int index = 0; index < BLOCK_SIZE; index++) {
+        assertEquals(colorDistanceService.calculateDistance(colors[index], reference), distances[index], 1e-9,
+          colors[index] + " to " + reference);
+      }
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorPalette;
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
+import de.fbeutel.coloranalyzer.color.domain.RgbColor;
+
+public class ColorGroupingServiceTest {
+
+  private final ImageService imageService = new ImageService();
+  private final ColorConversionService colorConversionService = new ColorConversionService(false);
+  private final ColorDistanceService colorDistanceService = new ColorDistanceService(colorConversionService);
+  private final ColorGroupingService colorGroupingService =
+    new ColorGroupingService(imageService, colorDistanceService, 5, 10, false);
+
+  @Test
+  public void neighbourGroupingMatchesTheListImplementation() {
+    final Random random = new Random(42);
+    int merges = 0;
+    for (int sample = 0; sample < 500; sample++) {
+      final ColorPalette palette = clusteredPalette(random, 32);
+
+      final ColorPalette grouped = colorGroupingService.groupColors(palette);
+      final ColorPalette expected = listGrouping(palette);
+      assertArrayEquals(expected.getColors(), grouped.getColors(), "palette " + sample);
+      assertArrayEquals(expected.getShares(), grouped.getShares(), "palette " + sample);
+      merges += palette.size() - grouped.size();
+    }
+    assertTrue(merges > 500, "too few merges to compare: " + merges);
+  }
+
+  @Test
+  public void allPairsGroupingKeepsEveryShareAndStopsAtTheThresholds() {
+    final ColorGroupingService allPairs = new ColorGroupingService(imageService, colorDistanceService, 5, 10, true);
+    final Random random = new Random(7);
+    for (int sample = 0; sample < 200; sample++) {
+      final ColorPalette palette = clusteredPalette(random, 32);
+
+      final ColorPalette grouped = allPairs.groupColors(palette);
+      assertEquals(Arrays.stream(palette.getShares()).sum(), Arrays.stream(grouped.getShares()).sum());
+      assertTrue(grouped.size() >= Math.min(5, palette.size()));
+      if (grouped.size() > 5) {
+        // stopped by the distance, so no two remaining groups are close enough to merge
+        for (int first = 0; first < grouped.size(); first++) {
+          for (int second = first + 1; second < grouped.size(); second++) {
+            assertTrue(colorDistanceService.calculateDistance(grouped.getColors()[first],
+              grouped.getColors()[second]) > 10);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void smallPalettesAreLeftAlone() {
+    final ColorPalette palette = new ColorPalette(new int[] {0xff0000, 0xfe0000, 0xfd0000}, new int[] {1, 2, 3});
+
+    final ColorPalette grouped = colorGroupingService.groupColors(palette);
+    assertArrayEquals(palette.getColors(), grouped.getColors());
+    assertArrayEquals(palette.getShares(), grouped.getShares());
+    assertEquals(0, colorGroupingService.groupColors(new ColorPalette(new int[0], new int[0])).size());
+  }
+
+  // a few base colors with shades around them, so some neighbours are close enough to merge
+  private ColorPalette clusteredPalette(final Random random, final int size) {
+    final int[] baseColors = new int[2 + random.nextInt(4)];
+    for (int index = 0; index < baseColors.length; index++) {
+      baseColors[index] = random.nextInt(0x1000000);
+    }
+    final int[] colors = new int[size];
+    final int[] shares = new int[size];
+    for (int index = 0; index < size; index++) {
+      final int baseColor = baseColors[random.nextInt(baseColors.length)];
+      colors[index] = PixelBuffer.pack(shade(random, PixelBuffer.red(baseColor)),
+        shade(random, PixelBuffer.green(baseColor)), shade(random, PixelBuffer.blue(baseColor)));
+      shares[index] = 1 + random.nextInt(1000);
+    }
+    return new ColorPalette(colors, shares);
+  }
+
+  private int shade(final Random random, final int channel) {
+    return Math.max(0, Math.min(255, channel + random.nextInt(25) - 12));
+  }
+
+  // the grouping as it was done on a list of colors before the distance heap: merge the closest list neighbours,
+  // remove both and append their mean color, distances are taken from the same lab cache as the service
+  private ColorPalette listGrouping(final ColorPalette palette) {
+    final List<RgbColor> colors = new ArrayList<>();
+    final List<Integer> shares = new ArrayList<>();
+    for (int index = 0; index < palette.size(); index++) {
+      colors.add(RgbColor.fromPackedRgb(palette.getColors()[index]));
+      shares.add(palette.getShares()[index]);
+    }
+
+    int iterator = 0;
+    while (colors.size() > 5 && iterator <= 100) {
+      int bestIndex = 0;
+      double bestDistance = Double.MAX_VALUE;
+      for (int index = 0; index < colors.size() - 1; index++) {
+        final double distance = colorDistanceService.calculateDistance(colors.get(index).toPackedRgb(),
+          colors.get(index + 1).toPackedRgb());
+        if (distance < bestDistance) {
+          bestIndex = index;
+          bestDistance = distance;
+        }
+      }
+      if (bestDistance > 10) {
+        break;
+      }
+
+      final RgbColor meanColor = imageService.getMeanColor(colors.get(bestIndex), colors.get(bestIndex + 1));
+      final int share = shares.get(bestIndex) + shares.get(bestIndex + 1);
+      colors.subList(bestIndex, bestIndex + 2).clear();
+      shares.subList(bestIndex, bestIndex + 2).clear();
+      colors.add(meanColor);
+      shares.add(share);
+      iterator++;
+    }
+
+    return new ColorPalette(colors.stream().mapToInt(RgbColor::toPackedRgb).toArray(),
+      shares.stream().mapToInt(Integer::intValue).toArray());
+  }
+}
@@ -0,0 +1,157 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorTileCatalog;
+
+public class ColorTileServiceTest {
+
+  private static final String TILES = "{\"Feinsteinzeug\":[{\"name\":\"Weiss\",\"color\":{\"r\":250,\"g\":250,\"b\":250}},"
+    + "{\"name\":\"Rot\",\"color\":{\"r\":200,\"g\":30,\"b\":40}}]}";
+
+  private final ColorConversionService colorConversionService = new ColorConversionService(false);
+  private final AtomicInteger requests = new AtomicInteger();
+
+  @TempDir
+  Path snapshotDirectory;
+
+  private HttpServer stubServer;
+  private String tiles = TILES;
+
+  @BeforeEach
+  public void startStubServer() throws IOException {
+    stubServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    stubServer.createContext("/tiles", this::tiles);
+    stubServer.start();
+  }
+
+  @AfterEach
+  public void stopStubServer() {
+    stubServer.stop(0);
+  }
+
+  @Test
+  public void startupDoesNotAskTheTileService() {
+    final ColorTileService colorTileService = colorTileService(Duration.ZERO);
+
+    assertEquals(0, requests.get());
+    assertSame(ColorTileCatalog.EMPTY, colorTileService.getCatalog());
+  }
+
+  @Test
+  public void scoringWaitsForACatalogAndFailsWithoutOne() {
+    stubServer.stop(0);
+    final ColorTileService colorTileService = colorTileService(Duration.ofMillis(50));
+
+    colorTileService.refresh();
+    assertThrows(IllegalStateException.class, colorTileService::awaitCatalog);
+  }
+
+  @Test
+  public void refreshedCatalogIsStoredAndLoadedOnTheNextStartup() {
+    final ColorTileService colorTileService = colorTileService(Duration.ZERO);
+    colorTileService.refresh();
+
+    final ColorTileCatalog catalog = colorTileService.awaitCatalog();
+    assertEquals(2, catalog.size());
+    assertNotNull(catalog.getVersion());
+    assertTrue(Files.isRegularFile(snapshotDirectory.resolve("color-tiles.json")));
+
+    stubServer.stop(0);
+    final ColorTileCatalog restoredCatalog = colorTileService(Duration.ZERO).awaitCatalog();
+    assertEquals(catalog.getVersion(), restoredCatalog.getVersion());
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  public void emptyTileListsAreNeverUsedForScoring() {
+    tiles = "{\"Feinsteinzeug\":[]}";
+    final ColorTileService colorTileService = colorTileService(Duration.ZERO);
+    colorTileService.refresh();
+    assertThrows(IllegalStateException.class, colorTileService::awaitCatalog);
+
+    tiles = TILES;
+    colorTileService.refresh();
+    final ColorTileCatalog catalog = colorTileService.awaitCatalog();
+
+    tiles = "{}";
+    colorTileService.refresh();
+    assertSame(catalog, colorTileService.awaitCatalog());
+  }
+
+  @Test
+  public void catalogListenersSeeEveryCatalogBeforeItIsUsed() {
+    final ColorTileService colorTileService = colorTileService(Duration.ZERO);
+    final List<String> versions = new ArrayList<>();
+    colorTileService.addCatalogListener(catalog -> {
+      assertNotEquals(catalog.getVersion(), colorTileService.getCatalog().getVersion());
+      versions.add(catalog.getVersion());
+    });
+    colorTileService.refresh();
+    tiles = "{\"Feinsteinzeug\":[{\"name\":\"Schwarz\",\"color\":{\"r\":10,\"g\":10,\"b\":10}}]}";
+    colorTileService.refresh();
+    assertEquals(2, versions.size());
+    assertEquals(versions.get(1), colorTileService.awaitCatalog().getVersion());
+
+    // a catalog loaded from the snapshot is handed to listeners added after the startup
+    final List<String> restoredVersions = new ArrayList<>();
+    colorTileService(Duration.ZERO).addCatalogListener(catalog -> restoredVersions.add(catalog.getVersion()));
+    assertEquals(List.of(versions.get(1)), restoredVersions);
+  }
+
+  @Test
+  public void failingCatalogListenersKeepThePreviousCatalog() {
+    final ColorTileService colorTileService = colorTileService(Duration.ZERO);
+    colorTileService.addCatalogListener(catalog -> {
+      throw new IllegalStateException("mongo down");
+    });
+
+    assertThrows(IllegalStateException.class, colorTileService::refresh);
+    assertSame(ColorTileCatalog.EMPTY, colorTileService.getCatalog());
+  }
+
+  private ColorTileService colorTileService(final Duration awaitTimeout) {
+    final ColorTileProperties colorTileProperties = new ColorTileProperties();
+    colorTileProperties.setUrl("http://localhost:" + stubServer.getAddress().getPort() + "/tiles");
+    colorTileProperties.setSnapshotFile(snapshotDirectory.resolve("color-tiles.json").toString());
+    colorTileProperties.setAwaitTimeout(awaitTimeout);
+    return new ColorTileService(new RestTemplateBuilder(), new ObjectMapper(), colorConversionService,
+      colorTileProperties);
+  }
+
+  private void tiles(final HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    final byte[] body = tiles.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream responseBody = exchange.getResponseBody()) {
+      responseBody.write(body);
+    }
+  }
+}
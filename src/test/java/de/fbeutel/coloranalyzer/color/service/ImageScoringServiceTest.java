@@ -0,0 +1,118 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorDistribution;
+import de.fbeutel.coloranalyzer.color.domain.ColorDistributionEntry;
+import de.fbeutel.coloranalyzer.color.domain.ColorTileCatalog;
+import de.fbeutel.coloranalyzer.color.domain.LabColor;
+import de.fbeutel.coloranalyzer.color.domain.RgbColor;
+import de.fbeutel.coloranalyzer.color.domain.TileScores;
+
+public class ImageScoringServiceTest {
+
+  private static final int TILES = 3000;
+
+  private final ColorConversionService colorConversionService = new ColorConversionService(false);
+  private final ColorDistanceService colorDistanceService = new ColorDistanceService(colorConversionService);
+  private final ColorTileCatalog catalog = randomCatalog(new Random(42));
+
+  @Test
+  public void kernelMatchesThePerPairScoring() {
+    final ImageScoringService imageScoringService = imageScoringService(Integer.MAX_VALUE);
+    final Random random = new Random(7);
+    for (int sample = 0; sample < 50; sample++) {
+      final ColorDistribution distribution = randomDistribution(random);
+
+      final TileScores tileScores = imageScoringService.calculateScores(distribution, catalog);
+      final double[] expected = perPairScores(distribution);
+      assertEquals(catalog.getVersion(), tileScores.getCatalogVersion());
+      for (int tile = 0; tile < TILES; tile++) {
+        assertEquals(expected[tile], tileScores.getScores()[tile], 1e-9, "tile " + tile + " of sample " + sample);
+      }
+    }
+  }
+
+  @Test
+  public void parallelScoringEqualsSequentialScoring() {
+    final ColorDistribution distribution = randomDistribution(new Random(11));
+
+    assertArrayEquals(imageScoringService(Integer.MAX_VALUE).calculateScores(distribution, catalog).getScores(),
+      imageScoringService(1).calculateScores(distribution, catalog).getScores());
+  }
+
+  private ImageScoringService imageScoringService(final int parallelThresholdTiles) {
+    return new ImageScoringService(colorDistanceService, colorConversionService, mock(ColorTileService.class),
+      parallelThresholdTiles);
+  }
+
+  // the scoring before the distance kernel: the share weighted distance from every palette entry to the tile, with
+  // the palette entry as the first color of the distance
+  private double[] perPairScores(final ColorDistribution distribution) {
+    final List<ColorDistributionEntry> entries = distribution.getColorDistributionEntries();
+    final double shareAmount = entries.stream()
+      .mapToInt(ColorDistributionEntry::getShare)
+      .sum();
+    final LabColor[] entryColors = entries.stream()
+      .map(entry -> colorConversionService.toLab(entry.getColor()))
+      .toArray(LabColor[]::new);
+
+    final double[] scores = new double[catalog.size()];
+    for (int tile = 0; tile < catalog.size(); tile++) {
+      double score = 0;
+      for (int entry = 0; entry < entryColors.length; entry++) {
+        final double colorPercentageOfImage = entries.get(entry).getShare() / shareAmount;
+        score += colorPercentageOfImage * colorDistanceService.calculateDistance(entryColors[entry].getL(),
+          entryColors[entry].getA(), entryColors[entry].getB(), catalog.getLightness()[tile], catalog.getA()[tile],
+          catalog.getB()[tile]);
+      }
+      scores[tile] = score;
+    }
+    return scores;
+  }
+
+  private ColorDistribution randomDistribution(final Random random) {
+    final List<ColorDistributionEntry> entries = new ArrayList<>();
+    for (int entry = 0; entry < 1 + random.nextInt(8); entry++) {
+      entries.add(ColorDistributionEntry.builder()
+        .color(RgbColor.fromPackedRgb(random.nextInt(0x1000000)))
+        .share(1 + random.nextInt(10_000))
+        .build());
+    }
+    return ColorDistribution.builder()
+      .colorDistributionEntries(entries)
+      .build();
+  }
+
+  private ColorTileCatalog randomCatalog(final Random random) {
+    final String[] names = new String[TILES];
+    final int[] colors = new int[TILES];
+    final double[] lightness = new double[TILES];
+    final double[] a = new double[TILES];
+    final double[] b = new double[TILES];
+    for (int tile = 0; tile < TILES; tile++) {
+      names[tile] = "tile-" + tile;
+      colors[tile] = random.nextInt(0x1000000);
+      final long packedLab = colorConversionService.toPackedLab(colors[tile]);
+      lightness[tile] = ColorConversionService.labL(packedLab);
+      a[tile] = ColorConversionService.labA(packedLab);
+      b[tile] = ColorConversionService.labB(packedLab);
+    }
+    return ColorTileCatalog.builder()
+      .version("random")
+      .names(names)
+      .colors(colors)
+      .lightness(lightness)
+      .a(a)
+      .b(b)
+      .build();
+  }
+}
@@ -0,0 +1,89 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.jupiter.api.Test;
+
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
+
+public class ImageServiceTest {
+
+  private static final int[] IMAGE_TYPES = {
+    BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE,
+    BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+    BufferedImage.TYPE_4BYTE_ABGR_PRE, BufferedImage.TYPE_USHORT_565_RGB, BufferedImage.TYPE_USHORT_555_RGB,
+    BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY, BufferedImage.TYPE_BYTE_BINARY,
+    BufferedImage.TYPE_BYTE_INDEXED
+  };
+
+  private final ImageService imageService = new ImageService();
+
+  @Test
+  public void pixelBufferMatchesGetRgbForEveryImageType() {
+    for (final int imageType : IMAGE_TYPES) {
+      assertMatchesGetRgb(randomImage(imageType, 37, 23), "image type " + imageType);
+    }
+  }
+
+  @Test
+  public void pixelBufferMatchesGetRgbForSubimages() {
+    for (final int imageType : IMAGE_TYPES) {
+      final BufferedImage image = randomImage(imageType, 37, 23);
+      assertMatchesGetRgb(image.getSubimage(5, 3, 20, 12), "inner subimage of image type " + imageType);
+      assertMatchesGetRgb(image.getSubimage(0, 0, 20, 23), "subimage with row padding of image type " + imageType);
+      assertMatchesGetRgb(image.getSubimage(0, 4, 37, 19), "lower subimage of image type " + imageType);
+    }
+  }
+
+  @Test
+  public void pixelBufferMatchesGetRgbForDecodedImages() throws IOException {
+    for (final int imageType : new int[] {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+      BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_BYTE_INDEXED}) {
+      for (final String format : new String[] {"png", "bmp"}) {
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        if (!ImageIO.write(randomImage(imageType, 37, 23), format, encoded)) {
+          continue;
+        }
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(encoded.toByteArray()))) {
+          final BufferedImage decoded = imageService.decode(input, 0);
+          assertMatchesGetRgb(decoded, format + " decoded to image type " + decoded.getType());
+        }
+      }
+    }
+  }
+
+  private void assertMatchesGetRgb(final BufferedImage image, final String description) {
+    final PixelBuffer pixels = imageService.toPixelBuffer(image);
+    assertEquals(image.getWidth(), pixels.getWidth(), description);
+    assertEquals(image.getHeight(), pixels.getHeight(), description);
+
+    final int[] expected = new int[image.getWidth() * image.getHeight()];
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        expected[y * image.getWidth() + x] = image.getRGB(x, y) & 0xffffff;
+      }
+    }
+    assertArrayEquals(expected, pixels.getPixels(), description);
+  }
+
+  private BufferedImage randomImage(final int imageType, final int width, final int height) {
+    final Random random = new Random(imageType);
+    final BufferedImage image = new BufferedImage(width, height, imageType);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, random.nextInt());
+      }
+    }
+    return image;
+  }
+}
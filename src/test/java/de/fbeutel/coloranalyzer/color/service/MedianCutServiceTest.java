@@ -0,0 +1,133 @@
+package de.fbeutel.coloranalyzer.color.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorHistogram;
+import de.fbeutel.coloranalyzer.color.domain.ColorPalette;
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
+
+public class MedianCutServiceTest {
+
+  private final MedianCutService medianCutService = new MedianCutService();
+
+  @Test
+  public void emptyHistogramGivesAnEmptyPalette() {
+    assertEquals(0, medianCutService.quantize(new ColorHistogram(), 16).size());
+  }
+
+  @Test
+  public void singleColorIsNotCut() {
+    final ColorHistogram histogram = histogram(new int[] {0x336699}, new int[] {500});
+
+    final ColorPalette palette = medianCutService.quantize(histogram, 16);
+    assertArrayEquals(new int[] {0x336699}, palette.getColors());
+    assertArrayEquals(new int[] {500}, palette.getShares());
+  }
+
+  @Test
+  public void wellSeparatedColorsAreFoundWithTheirShares() {
+    final int[] colors = {0xff0000, 0x00ff00, 0x0000ff, 0xffff00};
+    final int[] counts = {400, 300, 200, 100};
+
+    final ColorPalette palette = medianCutService.quantize(histogram(colors, counts), 4);
+    assertEquals(4, palette.size());
+    for (int index = 0; index < colors.length; index++) {
+      final int paletteIndex = indexOf(palette.getColors(), colors[index]);
+      assertTrue(paletteIndex >= 0, String.format("color %06x missing from the palette", colors[index]));
+      assertEquals(counts[index], palette.getShares()[paletteIndex]);
+    }
+  }
+
+  @Test
+  public void paletteColorsAreTheExactMeansOfTheirPixels() {
+    // two clusters of shades, each inside a single histogram bin
+    final Random random = new Random(42);
+    final ColorHistogram histogram = new ColorHistogram();
+    long[] darkSums = new long[3];
+    long[] lightSums = new long[3];
+    for (int pixel = 0; pixel < 1000; pixel++) {
+      final int dark = PixelBuffer.pack(8 + random.nextInt(8), 16 + random.nextInt(8), 24 + random.nextInt(8));
+      final int light = PixelBuffer.pack(200 + random.nextInt(8), 208 + random.nextInt(8), 216 + random.nextInt(8));
+      histogram.add(dark);
+      histogram.add(light);
+      darkSums = add(darkSums, dark);
+      lightSums = add(lightSums, light);
+    }
+
+    final ColorPalette palette = medianCutService.quantize(histogram, 8);
+    assertEquals(2, palette.size());
+    assertTrue(indexOf(palette.getColors(), mean(darkSums, 1000)) >= 0);
+    assertTrue(indexOf(palette.getColors(), mean(lightSums, 1000)) >= 0);
+  }
+
+  @Test
+  public void paletteRespectsTheColorLimitAndKeepsEveryPixel() {
+    final Random random = new Random(7);
+    final ColorHistogram histogram = new ColorHistogram();
+    for (int pixel = 0; pixel < 50_000; pixel++) {
+      histogram.add(random.nextInt(0x1000000));
+    }
+
+    for (final int maxColors : new int[] {1, 2, 5, 16, 64}) {
+      final ColorPalette palette = medianCutService.quantize(histogram, maxColors);
+      assertTrue(palette.size() <= maxColors);
+      assertEquals(Math.min(maxColors, 64), palette.size());
+      assertEquals(50_000, Arrays.stream(palette.getShares()).sum());
+    }
+  }
+
+  @Test
+  public void mergedHistogramsEqualOneHistogramOfAllPixels() {
+    final Random random = new Random(11);
+    final ColorHistogram all = new ColorHistogram();
+    final ColorHistogram upper = new ColorHistogram();
+    final ColorHistogram lower = new ColorHistogram();
+    for (int pixel = 0; pixel < 10_000; pixel++) {
+      final int color = random.nextInt(0x1000000);
+      all.add(color);
+      (pixel % 2 == 0 ? upper : lower).add(color);
+    }
+    upper.addAll(lower);
+
+    assertEquals(all.getTotalCount(), upper.getTotalCount());
+    assertArrayEquals(all.getCounts(), upper.getCounts());
+    assertArrayEquals(all.getRedSums(), upper.getRedSums());
+    assertArrayEquals(all.getGreenSums(), upper.getGreenSums());
+    assertArrayEquals(all.getBlueSums(), upper.getBlueSums());
+  }
+
+  private ColorHistogram histogram(final int[] colors, final int[] counts) {
+    final ColorHistogram histogram = new ColorHistogram();
+    for (int index = 0; index < colors.length; index++) {
+      for (int count = 0; count < counts[index]; count++) {
+        histogram.add(colors[index]);
+      }
+    }
+    return histogram;
+  }
+
+  private long[] add(final long[] sums, final int color) {
+    return new long[] {sums[0] + PixelBuffer.red(color), sums[1] + PixelBuffer.green(color),
+      sums[2] + PixelBuffer.blue(color)};
+  }
+
+  private int mean(final long[] sums, final int count) {
+    return PixelBuffer.pack((int) (sums[0] / count), (int) (sums[1] / count), (int) (sums[2] / count));
+  }
+
+  private int indexOf(final int[] colors, final int color) {
+    for (int index = 0; index < colors.length; index++) {
+      if (colors[index] == color) {
+        return index;
+      }
+    }
+    return -1;
+  }
+}
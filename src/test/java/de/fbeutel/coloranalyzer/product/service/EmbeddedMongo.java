@@ -0,0 +1,72 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import de.fbeutel.coloranalyzer.color.service.ColorTileVersionRegistry;
+
+// an in memory mongo server per test, registered with @RegisterExtension; it is started before the @BeforeEach methods
+// of the test, so they can already use it
+public class EmbeddedMongo implements BeforeEachCallback, AfterEachCallback {
+
+  private static final String DATABASE = "colorAnalyzer";
+
+  private MongoServer mongoServer;
+  private MongoClient mongoClient;
+
+  @Override
+  public void beforeEach(final ExtensionContext context) {
+    mongoServer = new MongoServer(new MemoryBackend());
+    mongoClient = MongoClients.create("mongodb:/" + mongoServer.bind());
+  }
+
+  @Override
+  public void afterEach(final ExtensionContext context) {
+    mongoClient.close();
+    mongoServer.shutdown();
+  }
+
+  public MongoDatabase database() {
+    return mongoClient.getDatabase(DATABASE);
+  }
+
+  public MongoTemplate mongoTemplate() {
+    return new MongoTemplate(mongoClient, DATABASE);
+  }
+
+  // product images are stored in the given layout, like with the converters of ProductStorageConfiguration
+  public MongoTemplate mongoTemplate(final StorageFormat format,
+                                     final Supplier<ColorTileVersionRegistry> colorTileVersionRegistry) {
+    return mongoTemplate(new ProductImageCodec(format, colorTileVersionRegistry));
+  }
+
+  public MongoTemplate mongoTemplate(final ProductImageCodec codec) {
+    final SimpleMongoClientDatabaseFactory databaseFactory = new SimpleMongoClientDatabaseFactory(mongoClient, DATABASE);
+    final MongoCustomConversions conversions = ProductStorageConfiguration.customConversions(codec);
+
+    final MongoMappingContext mappingContext = new MongoMappingContext();
+    mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+    mappingContext.afterPropertiesSet();
+
+    final MappingMongoConverter converter = new MappingMongoConverter(new DefaultDbRefResolver(databaseFactory),
+      mappingContext);
+    converter.setCustomConversions(conversions);
+    converter.afterPropertiesSet();
+    return new MongoTemplate(databaseFactory, converter);
+  }
+}
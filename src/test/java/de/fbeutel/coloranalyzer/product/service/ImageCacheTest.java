@@ -0,0 +1,232 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.fbeutel.coloranalyzer.product.domain.ImageCacheStatistics;
+
+public class ImageCacheTest {
+
+  private static final int IMAGE_SIZE = 1000;
+
+  private final ImageCacheProperties properties = new ImageCacheProperties();
+  private final Map<String, byte[]> images = new ConcurrentHashMap<>();
+  private final Map<String, Runnable> beforeNotModified = new ConcurrentHashMap<>();
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger conditionalRequests = new AtomicInteger();
+
+  @TempDir
+  Path cacheDirectory;
+
+  private HttpServer stubServer;
+  private ImageCache imageCache;
+
+  @BeforeEach
+  public void startStubServer() throws IOException {
+    stubServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    stubServer.setExecutor(Executors.newCachedThreadPool());
+    stubServer.createContext("/", this::image);
+    stubServer.start();
+
+    properties.setDirectory(cacheDirectory.toString());
+    properties.setMaxSizeBytes(10 * IMAGE_SIZE);
+    Stream.of("a", "b", "c").forEach(image -> images.put(image, image(image)));
+    imageCache = imageCache();
+  }
+
+  @AfterEach
+  public void stopStubServer() {
+    stubServer.stop(0);
+  }
+
+  @Test
+  public void missesAreDownloadedAndHitsAreServedFromDisk() {
+    assertArrayEquals(images.get("a"), read("a"));
+    assertArrayEquals(images.get("a"), read("a"));
+
+    assertEquals(1, requests.get());
+    final ImageCacheStatistics statistics = imageCache.statistics();
+    assertEquals(1, statistics.getMisses());
+    assertEquals(1, statistics.getHits());
+    assertEquals(IMAGE_SIZE, statistics.getSizeBytes());
+  }
+
+  @Test
+  public void staleEntriesAreRevalidated() {
+    properties.setRevalidateAfter(Duration.ZERO);
+    read("a");
+
+    assertArrayEquals(images.get("a"), read("a"));
+    assertEquals(1, conditionalRequests.get());
+    assertEquals(1, imageCache.statistics().getRevalidations());
+
+    // a changed image is downloaded again instead of answered with 304
+    images.put("a", image("changed"));
+    assertArrayEquals(images.get("a"), read("a"));
+    assertEquals(3, requests.get());
+    assertEquals(IMAGE_SIZE, imageCache.statistics().getSizeBytes());
+  }
+
+  @Test
+  public void leastRecentlyUsedEntriesAreEvictedBeyondTheSizeLimit() {
+    properties.setMaxSizeBytes(2 * IMAGE_SIZE);
+    read("a");
+    read("b");
+    // a was used after b, so b is the one to go
+    read("a");
+    read("c");
+
+    final ImageCacheStatistics statistics = imageCache.statistics();
+    assertEquals(1, statistics.getEvictions());
+    assertEquals(2, statistics.getEntries());
+    assertEquals(2 * IMAGE_SIZE, statistics.getSizeBytes());
+
+    read("a");
+    read("c");
+    assertEquals(3, requests.get());
+    read("b");
+    assertEquals(4, requests.get());
+    assertEquals(2, countFiles("blobs"));
+  }
+
+  @Test
+  public void offlineCacheServesHitsAndFailsMisses() {
+    read("a");
+    properties.setOffline(true);
+    properties.setRevalidateAfter(Duration.ZERO);
+
+    // a restarted offline instance still serves everything on disk, even if it is stale
+    imageCache = imageCache();
+    assertArrayEquals(images.get("a"), read("a"));
+    assertThrows(IllegalStateException.class, () -> read("b"));
+    assertEquals(1, requests.get());
+    assertEquals(1, imageCache.statistics().getMisses());
+  }
+
+  @Test
+  public void hitsDoNotFailWithoutTheirEntryFile() throws IOException {
+    read("a");
+    try (Stream<Path> entryFiles = Files.list(cacheDirectory.resolve("entries"))) {
+      for (final Path entryFile : entryFiles.toList()) {
+        Files.delete(entryFile);
+      }
+    }
+
+    assertArrayEquals(images.get("a"), read("a"));
+  }
+
+  @Test
+  public void evictionDuringARevalidationKeepsTheBlobUntilItIsRead() {
+    properties.setMaxSizeBytes(IMAGE_SIZE);
+    properties.setRevalidateAfter(Duration.ZERO);
+    read("a");
+
+    // b is downloaded while a waits for its 304 and evicts a from the full cache
+    beforeNotModified.put("a", () -> read("b"));
+    assertArrayEquals(images.get("a"), read("a"));
+    assertEquals(1, imageCache.statistics().getRevalidations());
+    assertEquals(IMAGE_SIZE, imageCache.statistics().getSizeBytes());
+    assertEquals(1, countFiles("blobs"));
+  }
+
+  @Test
+  public void evictingAPinnedBlobDoesNotEvictFurtherEntries() {
+    properties.setMaxSizeBytes(2 * IMAGE_SIZE);
+    properties.setRevalidateAfter(Duration.ZERO);
+    read("a");
+    read("b");
+
+    // c evicts a while a waits for its 304, a no longer counts towards the size, so b stays
+    final AtomicReference<ImageCacheStatistics> statistics = new AtomicReference<>();
+    beforeNotModified.put("a", () -> {
+      read("b");
+      read("c");
+      statistics.set(imageCache.statistics());
+    });
+    assertArrayEquals(images.get("a"), read("a"));
+    assertEquals(1, statistics.get().getEvictions());
+    assertEquals(2, statistics.get().getEntries());
+    assertEquals(2 * IMAGE_SIZE, statistics.get().getSizeBytes());
+  }
+
+  private ImageCache imageCache() {
+    return new ImageCache(new RestTemplateBuilder(), new ObjectMapper(), properties);
+  }
+
+  private byte[] read(final String image) {
+    final ByteBuffer buffer = imageCache.read(image, URI.create("http://localhost:" + stubServer.getAddress().getPort()
+      + "/" + image));
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private long countFiles(final String directory) {
+    try (Stream<Path> files = Files.list(cacheDirectory.resolve(directory))) {
+      return files.filter(file -> !file.toString().endsWith(".tmp")).count();
+    } catch (IOException exception) {
+      throw new IllegalStateException(exception);
+    }
+  }
+
+  private void image(final HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    final String image = exchange.getRequestURI().getPath().substring(1);
+    final byte[] body = images.get(image);
+    final String etag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+
+    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      conditionalRequests.incrementAndGet();
+      final Runnable action = beforeNotModified.remove(image);
+      if (action != null) {
+        action.run();
+      }
+      exchange.sendResponseHeaders(304, -1);
+      exchange.close();
+      return;
+    }
+
+    exchange.getResponseHeaders().add("ETag", etag);
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream responseBody = exchange.getResponseBody()) {
+      responseBody.write(body);
+    }
+  }
+
+  private static byte[] image(final String content) {
+    final byte[] bytes = new byte[IMAGE_SIZE];
+    final byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+    for (int index = 0; index < bytes.length; index++) {
+      bytes[index] = contentBytes[index % contentBytes.length];
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,249 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import reactor.core.publisher.Flux;
+
+import de.fbeutel.coloranalyzer.product.domain.ProductImage;
+
+public class ImageServerConnectorTest {
+
+  // larger than a netty chunk, so the body arrives in many buffers
+  private static final byte[] IMAGE = randomBytes(300_000);
+
+  private final ImageCache imageCache = mock(ImageCache.class);
+  private final AtomicInteger requests = new AtomicInteger();
+  private final ConnectorProperties connectorProperties = new ConnectorProperties();
+  private final CountDownLatch stalledBodyReleased = new CountDownLatch(1);
+
+  @TempDir
+  Path cacheDirectory;
+
+  private HttpServer stubServer;
+  private ReactiveImageServerConnector reactiveConnector;
+
+  @BeforeEach
+  public void startStubServer() throws IOException {
+    stubServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    stubServer.createContext("/sized", exchange -> respond(exchange, IMAGE.length));
+    // a response length of 0 sends the body chunked, without a content length
+    stubServer.createContext("/chunked", exchange -> respond(exchange, 0));
+    stubServer.createContext("/stalled", exchange -> {
+      requests.incrementAndGet();
+      exchange.sendResponseHeaders(200, IMAGE.length);
+      exchange.getResponseBody().write(IMAGE, 0, 8192);
+      exchange.getResponseBody().flush();
+      awaitQuietly(stalledBodyReleased);
+      exchange.getResponseBody().write(IMAGE, 8192, IMAGE.length - 8192);
+      exchange.close();
+    });
+    stubServer.createContext("/missing", exchange -> {
+      requests.incrementAndGet();
+      exchange.sendResponseHeaders(404, -1);
+      exchange.close();
+    });
+    stubServer.setExecutor(Executors.newCachedThreadPool());
+    stubServer.start();
+
+    connectorProperties.setImageReadTimeout(Duration.ofSeconds(5));
+    reactiveConnector = new ReactiveImageServerConnector(WebClient.builder(), connectorProperties, imageCache, 500, 500);
+  }
+
+  @AfterEach
+  public void stopStubServer() {
+    stalledBodyReleased.countDown();
+    reactiveConnector.disposeConnections();
+    stubServer.stop(0);
+  }
+
+  @Test
+  public void reactiveConnectorReadsImagesWithContentLength() throws IOException {
+    assertArrayEquals(IMAGE, readAll(reactiveConnector.downloadImage(image("/sized"))));
+  }
+
+  @Test
+  public void reactiveConnectorReadsChunkedImages() throws IOException {
+    assertArrayEquals(IMAGE, readAll(reactiveConnector.downloadImage(image("/chunked"))));
+  }
+
+  @Test
+  public void reactiveConnectorHandsOutTheBodyWhileItArrives() throws IOException {
+    try (ImageInputStream imageStream = reactiveConnector.downloadImage(image("/stalled"))) {
+      final byte[] head = new byte[8192];
+      imageStream.readFully(head);
+      assertArrayEquals(Arrays.copyOf(IMAGE, 8192), head);
+
+      stalledBodyReleased.countDown();
+      final byte[] bytes = new byte[IMAGE.length];
+      imageStream.seek(0);
+      imageStream.readFully(bytes);
+      assertArrayEquals(IMAGE, bytes);
+    }
+  }
+
+  @Test
+  public void reactiveConnectorFailsBodiesWhichStopArriving() throws IOException {
+    connectorProperties.setImageReadTimeout(Duration.ofMillis(200));
+    final ReactiveImageServerConnector timingOutConnector = new ReactiveImageServerConnector(WebClient.builder(),
+      connectorProperties, imageCache, 500, 500);
+    try (ImageInputStream imageStream = timingOutConnector.downloadImage(image("/stalled"))) {
+      final IOException exception = assertThrows(IOException.class, () -> imageStream.readFully(new byte[IMAGE.length]));
+      assertTrue(exception.getMessage().contains("/stalled"), exception.getMessage());
+    } finally {
+      timingOutConnector.disposeConnections();
+    }
+  }
+
+  @Test
+  public void bodyChunksAreReleasedOnceFlushedOrClosed() throws IOException {
+    final List<DataBuffer> chunks = IntStream.range(0, 3)
+      .mapToObj(chunk -> (DataBuffer) new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT)
+        .wrap(Arrays.copyOfRange(IMAGE, chunk * 100, chunk * 100 + 100)))
+      .collect(Collectors.toList());
+    final ImageInputStream imageStream = new DataBufferImageInputStream(Flux.fromIterable(chunks), 300,
+      Duration.ofSeconds(1), URI.create("http://images/image-1"));
+
+    imageStream.readFully(new byte[250]);
+    imageStream.flushBefore(150);
+    assertEquals(List.of(0, 1, 1), refCounts(chunks));
+    imageStream.close();
+    assertEquals(List.of(0, 0, 0), refCounts(chunks));
+  }
+
+  @Test
+  public void reactiveConnectorFailsOnErrorResponses() {
+    assertThrows(RuntimeException.class, () -> reactiveConnector.downloadImage(image("/missing")));
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  public void bothConnectorsReadTheSameBytes() throws IOException {
+    final BlockingImageServerConnector blockingConnector = new BlockingImageServerConnector(500, 500,
+      new HostConcurrencyLimiter(new ConnectorProperties()), imageCache);
+
+    assertArrayEquals(readAll(blockingConnector.downloadImage(image("/chunked"))),
+      readAll(reactiveConnector.downloadImage(image("/chunked"))));
+  }
+
+  @Test
+  public void cacheMissesAreFetchedByTheReactiveConnector() throws IOException {
+    final RestTemplate restTemplate = mock(RestTemplate.class);
+    final RestTemplateBuilder restTemplateBuilder = mock(RestTemplateBuilder.class);
+    when(restTemplateBuilder.build()).thenReturn(restTemplate);
+    final ImageCacheProperties cacheProperties = new ImageCacheProperties();
+    cacheProperties.setDirectory(cacheDirectory.toString());
+    final ReactiveImageServerConnector cachingConnector = new ReactiveImageServerConnector(WebClient.builder(),
+      connectorProperties, new ImageCache(restTemplateBuilder, new ObjectMapper(), cacheProperties), 500, 500);
+
+    try {
+      assertArrayEquals(IMAGE, readAll(cachingConnector.downloadImage(image("/chunked"))));
+      assertArrayEquals(IMAGE, readAll(cachingConnector.downloadImage(image("/chunked"))));
+    } finally {
+      cachingConnector.disposeConnections();
+    }
+    assertEquals(1, requests.get());
+    verifyNoInteractions(restTemplate);
+  }
+
+  @Test
+  public void cachedImagesAreServedWithoutARequest() throws IOException {
+    when(imageCache.isEnabled()).thenReturn(true);
+    when(imageCache.read(any(), any(), any())).thenReturn(ByteBuffer.wrap(IMAGE));
+
+    assertArrayEquals(IMAGE, readAll(reactiveConnector.downloadImage(image("/missing"))));
+    assertEquals(0, requests.get());
+  }
+
+  private ProductImage image(final String path) {
+    return ProductImage.builder()
+      .id(path)
+      .url("http://localhost:" + stubServer.getAddress().getPort() + path)
+      .build();
+  }
+
+  private void respond(final HttpExchange exchange, final long responseLength) throws IOException {
+    requests.incrementAndGet();
+    exchange.getResponseHeaders().add("Content-Type", "image/jpeg");
+    exchange.sendResponseHeaders(200, responseLength);
+    try (OutputStream responseBody = exchange.getResponseBody()) {
+      // written in small pieces, so chunked responses consist of many chunks
+      for (int offset = 0; offset < IMAGE.length; offset += 8192) {
+        responseBody.write(IMAGE, offset, Math.min(8192, IMAGE.length - offset));
+        responseBody.flush();
+      }
+    }
+  }
+
+  private static byte[] readAll(final ImageInputStream imageStream) throws IOException {
+    try (imageStream) {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[4096];
+      for (int length = imageStream.read(buffer); length != -1; length = imageStream.read(buffer)) {
+        bytes.write(buffer, 0, length);
+      }
+      return bytes.toByteArray();
+    }
+  }
+
+  private static List<Integer> refCounts(final List<DataBuffer> chunks) {
+    return chunks.stream()
+      .map(chunk -> ((NettyDataBuffer) chunk).getNativeBuffer().refCnt())
+      .collect(Collectors.toList());
+  }
+
+  private static void awaitQuietly(final CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static byte[] randomBytes(final int length) {
+    final byte[] bytes = new byte[length];
+    new Random(42).nextBytes(bytes);
+    return bytes;
+  }
+}
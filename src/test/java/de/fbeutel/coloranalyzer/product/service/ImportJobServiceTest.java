@@ -0,0 +1,254 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import de.fbeutel.coloranalyzer.product.domain.ImportItem;
+import de.fbeutel.coloranalyzer.product.domain.ImportItemState;
+import de.fbeutel.coloranalyzer.product.domain.ImportJob;
+import de.fbeutel.coloranalyzer.product.domain.ImportJobItem;
+import de.fbeutel.coloranalyzer.product.domain.ImportJobProgress;
+import de.fbeutel.coloranalyzer.product.domain.ImportJobStatus;
+import de.fbeutel.coloranalyzer.product.domain.ImportJobWord;
+import de.fbeutel.coloranalyzer.product.domain.ImportOutcome;
+import de.fbeutel.coloranalyzer.product.domain.ProductData;
+
+public class ImportJobServiceTest {
+
+  // an instance with both roles
+  private static final List<ImportItemState> CLAIMED_STATES = Arrays.stream(ImportRole.values())
+    .flatMap(role -> role.getClaimedStates().stream())
+    .toList();
+
+  @RegisterExtension
+  final EmbeddedMongo embeddedMongo = new EmbeddedMongo();
+
+  private MongoTemplate mongoTemplate;
+  private final ImportProperties importProperties = new ImportProperties();
+  // leases expire by moving the clock instead of waiting for them
+  private final Clock clock = mock(Clock.class);
+  private Instant now = Instant.parse("2024-05-01T10:00:00Z");
+  private ImportJobService importJobService;
+
+  @BeforeEach
+  public void createService() {
+    when(clock.instant()).thenAnswer(invocation -> now);
+    mongoTemplate = embeddedMongo.mongoTemplate();
+    importJobService = new ImportJobService(mongoTemplate, importProperties, clock);
+    importJobService.ensureIndexes();
+  }
+
+  @Test
+  public void instancesClaimDisjointWork() {
+    final ImportJob job = importJobService.create(List.of("hose", "kleid"));
+
+    final ImportJobWord first = importJobService.claimWord(job.getId(), "a").orElseThrow();
+    final ImportJobWord second = importJobService.claimWord(job.getId(), "b").orElseThrow();
+    assertNotEquals(first.getSearchWord(), second.getSearchWord());
+    assertTrue(importJobService.claimWord(job.getId(), "c").isEmpty());
+
+    // both search words find url-5 to url-9
+    importJobService.completeWord(first, urls(0, 10));
+    importJobService.completeWord(second, urls(5, 15));
+
+    final List<ImportJobItem> claimedByA = importJobService.claimItems(job.getId(), "a", CLAIMED_STATES, 4);
+    final List<ImportJobItem> claimedByB = importJobService.claimItems(job.getId(), "b", CLAIMED_STATES, 100);
+    assertEquals(4, claimedByA.size());
+    assertEquals(11, claimedByB.size());
+    assertTrue(importJobService.claimItems(job.getId(), "c", CLAIMED_STATES, 100).isEmpty());
+
+    final Set<String> claimed = new HashSet<>();
+    claimedByA.forEach(item -> claimed.add(item.getProductUrl()));
+    claimedByB.forEach(item -> claimed.add(item.getProductUrl()));
+    assertEquals(new HashSet<>(urls(0, 15)), claimed);
+
+    // b restarted: its products go to the next claim, a keeps its own
+    importJobService.releaseLeases("b");
+    final List<ImportJobItem> reclaimed = importJobService.claimItems(job.getId(), "c", CLAIMED_STATES, 100);
+    assertEquals(11, reclaimed.size());
+    assertTrue(reclaimed.stream().allMatch(item -> item.getAttempts() == 2 && item.getLeaseOwner().equals("c")));
+  }
+
+  @Test
+  public void expiredLeasesAreClaimedAgain() {
+    importProperties.setLeaseDuration(Duration.ofSeconds(2));
+    final ImportJob job = importJobService.create(List.of("hose"));
+    importJobService.completeWord(importJobService.claimWord(job.getId(), "a").orElseThrow(), urls(0, 3));
+
+    assertEquals(3, importJobService.claimItems(job.getId(), "a", CLAIMED_STATES, 100).size());
+    assertTrue(importJobService.claimItems(job.getId(), "b", CLAIMED_STATES, 100).isEmpty());
+
+    now = now.plusSeconds(2);
+    assertTrue(importJobService.claimItems(job.getId(), "b", CLAIMED_STATES, 100).isEmpty());
+    now = now.plusMillis(1);
+    assertEquals(3, importJobService.claimItems(job.getId(), "b", CLAIMED_STATES, 100).size());
+  }
+
+  @Test
+  public void resumedProductsKeepTheirProgressUntilTheJobCompletes() {
+    final ImportJob job = importJobService.create(List.of("hose"));
+    importJobService.completeWord(importJobService.claimWord(job.getId(), "a").orElseThrow(), urls(0, 3));
+    importJobService.claimItems(job.getId(), "a", CLAIMED_STATES, 100);
+
+    importJobService.markFetched(job.getId(), fetched("url-0"));
+    importJobService.markFetched(job.getId(), fetched("url-1"));
+    importJobService.markAnalysed(job.getId(), fetched("url-1"));
+    importJobService.markCompleted(job.getId(), List.of(fetched("url-2")), ImportOutcome.NO_ACCEPTABLE_IMAGE);
+    importJobService.releaseLeases("a");
+
+    final List<ImportJobItem> resumed = importJobService.claimItems(job.getId(), "b", CLAIMED_STATES, 100);
+    assertEquals(2, resumed.size());
+    assertTrue(resumed.stream().allMatch(item -> item.getProductData() != null));
+    assertFalse(importJobService.completeIfFinished(job.getId()));
+
+    importJobService.markCompleted(job.getId(), List.of(fetched("url-0"), fetched("url-1")), ImportOutcome.PERSISTED);
+    // a late update of a slower instance does not reopen a stored product
+    importJobService.markAnalysed(job.getId(), fetched("url-0"));
+
+    final ImportJobProgress progress = importJobService.progress(job.getId()).orElseThrow();
+    assertEquals(2L, progress.getItems().get(ImportItemState.STORED));
+    assertEquals(1L, progress.getItems().get(ImportItemState.SKIPPED));
+    assertEquals(3, progress.getWords().get(0).getDiscoveredProducts());
+
+    assertTrue(importJobService.completeIfFinished(job.getId()));
+    assertEquals(ImportJobStatus.COMPLETED, importJobService.progress(job.getId()).orElseThrow().getJob().getStatus());
+    assertTrue(importJobService.findRunning().isEmpty());
+  }
+
+  @Test
+  public void concurrentWorkersClaimEveryHandedOffProductOnce() throws Exception {
+    final ImportJob job = importJobService.create(List.of("hose"));
+    importJobService.completeWord(importJobService.claimWord(job.getId(), "discovery").orElseThrow(), urls(0, 200));
+    importJobService.claimItems(job.getId(), "discovery", ImportRole.DISCOVERY.getClaimedStates(), 200)
+      .forEach(item -> importJobService.markHandedOff(job.getId(), fetched(item.getProductUrl())));
+
+    final Map<String, Integer> claims = new ConcurrentHashMap<>();
+    final ExecutorService workers = Executors.newFixedThreadPool(4);
+    final List<Future<?>> results = new ArrayList<>();
+    for (int worker = 0; worker < 4; worker++) {
+      final String owner = "worker-" + worker;
+      results.add(workers.submit(() -> {
+        List<ImportJobItem> batch;
+        while (!(batch = importJobService.claimItems(job.getId(), owner, ImportRole.ANALYSIS.getClaimedStates(), 7))
+          .isEmpty()) {
+          batch.forEach(item -> claims.merge(item.getProductUrl(), 1, Integer::sum));
+          importJobService.markCompleted(job.getId(), batch.stream().map(item -> fetched(item.getProductUrl()))
+            .toList(), ImportOutcome.PERSISTED);
+        }
+      }));
+    }
+    for (final Future<?> result : results) {
+      result.get(60, TimeUnit.SECONDS);
+    }
+    workers.shutdown();
+
+    assertEquals(200, claims.size());
+    assertTrue(claims.values().stream().allMatch(count -> count == 1));
+    assertTrue(importJobService.completeIfFinished(job.getId()));
+    assertEquals(200L, importJobService.progress(job.getId()).orElseThrow().getItems().get(ImportItemState.STORED));
+  }
+
+  @Test
+  public void failedProductsAreRetriedUntilTheyAreOutOfAttempts() {
+    importProperties.setMaxAttempts(2);
+    importProperties.setRetryDelay(Duration.ZERO);
+    final ImportJob job = importJobService.create(List.of("hose"));
+    importJobService.completeWord(importJobService.claimWord(job.getId(), "a").orElseThrow(), urls(0, 2));
+
+    assertEquals(2, importJobService.claimItems(job.getId(), "a", CLAIMED_STATES, 100).size());
+    importJobService.markCompleted(job.getId(), List.of(fetched("url-0")), ImportOutcome.FAILED);
+    // a restarted instance leaves url-1 to the next claim without a result
+    importJobService.releaseLeases("a");
+    now = now.plusMillis(1);
+
+    final List<ImportJobItem> retried = importJobService.claimItems(job.getId(), "b", CLAIMED_STATES, 100);
+    assertEquals(2, retried.size());
+    assertTrue(retried.stream().allMatch(item -> item.getAttempts() == 2
+      && item.getState() == ImportItemState.DISCOVERED));
+
+    importJobService.markCompleted(job.getId(), List.of(fetched("url-0")), ImportOutcome.FAILED);
+    importJobService.releaseLeases("b");
+    assertTrue(importJobService.claimItems(job.getId(), "c", CLAIMED_STATES, 100).isEmpty());
+
+    assertTrue(importJobService.completeIfFinished(job.getId()));
+    assertEquals(2L, importJobService.progress(job.getId()).orElseThrow().getItems().get(ImportItemState.FAILED));
+  }
+
+  @Test
+  public void failedDiscoveriesAreRetriedUntilTheWordIsOutOfAttempts() {
+    importProperties.setMaxAttempts(2);
+    final ImportJob job = importJobService.create(List.of("hose"));
+
+    final ImportJobWord first = importJobService.claimWord(job.getId(), "a").orElseThrow();
+    assertEquals(1, first.getAttempts());
+    importJobService.releaseWord(first, new IllegalStateException("scraper unavailable"));
+    assertTrue(importJobService.claimWord(job.getId(), "a").isEmpty());
+
+    now = now.plus(importProperties.getPollInterval()).plusMillis(1);
+    final ImportJobWord second = importJobService.claimWord(job.getId(), "b").orElseThrow();
+    assertEquals(2, second.getAttempts());
+    importJobService.releaseWord(second, new IllegalStateException("scraper unavailable"));
+
+    final ImportJobWord failed = importJobService.progress(job.getId()).orElseThrow().getWords().get(0);
+    assertTrue(failed.isDiscovered());
+    assertTrue(failed.getError().contains("scraper unavailable"));
+    assertNull(failed.getLeaseOwner());
+    assertTrue(importJobService.completeIfFinished(job.getId()));
+  }
+
+  @Test
+  public void wordsWhoseLastAttemptRanOutOfItsLeaseAreFailed() {
+    importProperties.setMaxAttempts(1);
+    final ImportJob job = importJobService.create(List.of("hose"));
+    importJobService.claimWord(job.getId(), "a").orElseThrow();
+    assertFalse(importJobService.completeIfFinished(job.getId()));
+
+    // a crashed instance never releases the word
+    now = now.plus(importProperties.getLeaseDuration()).plusMillis(1);
+    assertTrue(importJobService.claimWord(job.getId(), "b").isEmpty());
+    assertTrue(importJobService.completeIfFinished(job.getId()));
+    assertNotNull(importJobService.progress(job.getId()).orElseThrow().getWords().get(0).getError());
+  }
+
+  private ImportItem fetched(final String productUrl) {
+    return ImportItem.builder()
+      .searchWord("hose")
+      .productUrl(productUrl)
+      .productData(ProductData.builder()
+        .id(productUrl)
+        .images(List.of("image-" + productUrl))
+        .build())
+      .build();
+  }
+
+  private List<String> urls(final int from, final int to) {
+    return IntStream.range(from, to).mapToObj(index -> "url-" + index).toList();
+  }
+}
@@ -0,0 +1,203 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.fbeutel.coloranalyzer.color.domain.BorderColorDeterminationResult;
+import de.fbeutel.coloranalyzer.color.domain.PixelBuffer;
+import de.fbeutel.coloranalyzer.color.domain.TileScores;
+import de.fbeutel.coloranalyzer.color.service.ColorDistributionService;
+import de.fbeutel.coloranalyzer.color.service.ImageBorderService;
+import de.fbeutel.coloranalyzer.color.service.ImageScoringService;
+import de.fbeutel.coloranalyzer.color.service.ImageService;
+import de.fbeutel.coloranalyzer.product.domain.ImportItem;
+import de.fbeutel.coloranalyzer.product.domain.ImportOutcome;
+import de.fbeutel.coloranalyzer.product.domain.ProductData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ImportPipelineTest {
+
+  private final ScraperConnector scraperConnector = mock(ScraperConnector.class);
+  private final ProductService productService = mock(ProductService.class);
+  private final ImageServerConnector imageServerConnector = mock(ImageServerConnector.class);
+  private final ImageService imageService = mock(ImageService.class);
+  private final ImageBorderService imageBorderService = mock(ImageBorderService.class);
+  private final ImageScoringService imageScoringService = mock(ImageScoringService.class);
+  private final ImportProperties importProperties = new ImportProperties();
+  private final RecordingProgress progress = new RecordingProgress();
+
+  // product data requests wait for it, so products stay in flight as long as a test needs them to
+  private final CountDownLatch productDataReleased = new CountDownLatch(1);
+
+  private ImportPipeline importPipeline;
+
+  @BeforeEach
+  public void createPipeline() {
+    importProperties.setMaxInFlightProducts(2);
+    importProperties.setExistenceCheckMaxDelay(Duration.ofMillis(10));
+    importProperties.setPersistenceMaxDelay(Duration.ofMillis(10));
+
+    when(scraperConnector.fetchProductData(any())).thenAnswer(invocation -> {
+      productDataReleased.await();
+      return productData(invocation.getArgument(0));
+    });
+
+    final ImageCache imageCache = mock(ImageCache.class);
+    importPipeline = new ImportPipeline(scraperConnector, productService, imageServerConnector,
+      imageService, imageBorderService, mock(ColorDistributionService.class), imageScoringService, importProperties, new ConnectorProperties(), imageCache,
+      new PixelBufferCache(0), new SimpleMeterRegistry());
+  }
+
+  @Test
+  public void admissionBlocksWhileThePipelineIsFull() throws Exception {
+    final ImportPipeline.Run run = importPipeline.start(progress, false);
+    run.admit(item("url-0"));
+    run.admit(item("url-1"));
+    assertEquals(0, run.capacity());
+
+    final CompletableFuture<Void> thirdAdmission = CompletableFuture.runAsync(() -> run.admit(item("url-2")));
+    assertThrows(TimeoutException.class, () -> thirdAdmission.get(200, TimeUnit.MILLISECONDS));
+
+    productDataReleased.countDown();
+    thirdAdmission.get(10, TimeUnit.SECONDS);
+    run.finish();
+
+    assertEquals(Set.of("url-0", "url-1", "url-2"), progress.handedOff.keySet());
+  }
+
+  @Test
+  public void failingStagesCompleteTheirProductsAsFailed() {
+    productDataReleased.countDown();
+    when(productService.findExistingIds(anyCollection())).thenReturn(Set.of("url-existing"));
+    when(imageServerConnector.downloadImage(any())).thenThrow(new IllegalStateException("image server down"));
+    when(scraperConnector.fetchProductData("url-missing")).thenReturn(null);
+
+    final ImportPipeline.Run run = importPipeline.start(progress, true);
+    run.admit(item("url-existing"));
+    run.admit(item("url-download"));
+    run.admit(item("url-missing"));
+    run.finish();
+
+    assertEquals(Map.of(
+      "url-existing", ImportOutcome.EXISTING,
+      "url-download", ImportOutcome.FAILED,
+      "url-missing", ImportOutcome.MISSING_DATA), progress.completed);
+    assertEquals(Set.of("url-existing", "url-download"), progress.fetched.keySet());
+    assertTrue(progress.handedOff.isEmpty());
+  }
+
+  @Test
+  public void persistenceBatchesNeverWaitForMoreProductsThanCanBeInFlight() throws Exception {
+    importProperties.setPersistenceBatchSize(100);
+    importProperties.setPersistenceMaxDelay(Duration.ofMinutes(1));
+    productDataReleased.countDown();
+    when(imageService.toPixelBuffer(any())).thenReturn(new PixelBuffer(1, 1, new int[1]));
+    when(imageBorderService.determineBorderColor(any(PixelBuffer.class))).thenReturn(BorderColorDeterminationResult.builder()
+      .upperEdgeUniformity(1).lowerEdgeUniformity(1).leftEdgeUniformity(1).rightEdgeUniformity(1)
+      .build());
+    when(imageScoringService.calculateScores(any())).thenReturn(TileScores.builder()
+      .catalogVersion("version-1")
+      .names(new String[] {"red"})
+      .scores(new double[] {1.0})
+      .build());
+
+    final ImportPipeline.Run run = importPipeline.start(progress, true);
+    run.admit(item("url-0"));
+    run.admit(item("url-1"));
+
+    // both products fill a batch, the one minute timer never has to flush it
+    CompletableFuture.runAsync(run::finish).get(10, TimeUnit.SECONDS);
+    assertEquals(Map.of("url-0", ImportOutcome.PERSISTED, "url-1", ImportOutcome.PERSISTED), progress.completed);
+    verify(productService).upsertAll(argThat(products -> products.size() == 2));
+  }
+
+  @Test
+  public void failedExistenceChecksCompleteTheWholeBatchAsFailed() {
+    when(productService.findExistingIds(anyCollection())).thenThrow(new IllegalStateException("mongo down"));
+
+    final ImportPipeline.Run run = importPipeline.start(progress, true);
+    // products resumed with their product data skip the product data stage
+    run.admit(item("url-0").toBuilder().productData(productData("url-0")).build());
+    run.admit(item("url-1").toBuilder().productData(productData("url-1")).build());
+    run.finish();
+
+    assertEquals(Map.of("url-0", ImportOutcome.FAILED, "url-1", ImportOutcome.FAILED), progress.completed);
+  }
+
+  @Test
+  public void finishWaitsForAdmittedProductsAndStopsTheStages() throws Exception {
+    final ImportPipeline.Run run = importPipeline.start(progress, false);
+    run.admit(item("url-0"));
+
+    final CompletableFuture<Void> finished = CompletableFuture.runAsync(run::finish);
+    assertThrows(TimeoutException.class, () -> finished.get(200, TimeUnit.MILLISECONDS));
+    assertFalse(progress.handedOff.containsKey("url-0"));
+
+    productDataReleased.countDown();
+    finished.get(10, TimeUnit.SECONDS);
+    assertTrue(progress.handedOff.containsKey("url-0"));
+    assertThrows(RejectedExecutionException.class, () -> run.discover("hose"));
+  }
+
+  private ImportItem item(final String productUrl) {
+    return ImportItem.builder()
+      .searchWord("hose")
+      .productUrl(productUrl)
+      .build();
+  }
+
+  private ProductData productData(final String productUrl) {
+    return ProductData.builder()
+      .id(productUrl)
+      .images(List.of("image-" + productUrl))
+      .build();
+  }
+
+  private static class RecordingProgress implements ImportProgress {
+
+    private final Map<String, ImportItem> fetched = new ConcurrentHashMap<>();
+    private final Map<String, ImportItem> handedOff = new ConcurrentHashMap<>();
+    private final Map<String, ImportOutcome> completed = new ConcurrentHashMap<>();
+
+    @Override
+    public void fetched(final ImportItem item) {
+      fetched.put(item.getProductUrl(), item);
+    }
+
+    @Override
+    public void analysed(final ImportItem item) {
+    }
+
+    @Override
+    public void handedOff(final ImportItem item) {
+      handedOff.put(item.getProductUrl(), item);
+    }
+
+    @Override
+    public void completed(final List<ImportItem> items, final ImportOutcome outcome) {
+      items.forEach(item -> completed.put(item.getProductUrl(), outcome));
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorDistribution;
+import de.fbeutel.coloranalyzer.color.domain.ColorDistributionEntry;
+import de.fbeutel.coloranalyzer.color.domain.RgbColor;
+import de.fbeutel.coloranalyzer.color.service.ColorConversionService;
+import de.fbeutel.coloranalyzer.product.domain.Product;
+import de.fbeutel.coloranalyzer.product.domain.ProductImage;
+import de.fbeutel.coloranalyzer.product.domain.ProductMatch;
+import de.fbeutel.coloranalyzer.product.domain.ProductRepository;
+
+public class ProductColorIndexTest {
+
+  private final ColorConversionService colorConversionService = new ColorConversionService(false);
+  private final SearchProperties searchProperties = new SearchProperties();
+
+  @Test
+  public void nearestMatchesALinearScan() {
+    searchProperties.setRebuildThreshold(1000);
+    final ProductColorIndex index = new ProductColorIndex(null, colorConversionService, searchProperties);
+    final Random random = new Random(42);
+
+    final List<Product> products = new ArrayList<>();
+    for (int product = 0; product < 3000; product++) {
+      products.add(product("product-" + product, random));
+    }
+    for (int batch = 0; batch < products.size(); batch += 100) {
+      index.index(products.subList(batch, batch + 100));
+    }
+    // restore some products with other palettes, only their latest colors may match
+    final List<Product> restoredProducts = new ArrayList<>();
+    for (int product = 0; product < 300; product++) {
+      restoredProducts.add(product("product-" + product * 7, random));
+    }
+    index.index(restoredProducts);
+
+    final Map<String, Product> latestProducts = new HashMap<>();
+    products.forEach(product -> latestProducts.put(product.getId(), product));
+    restoredProducts.forEach(product -> latestProducts.put(product.getId(), product));
+
+    for (int query = 0; query < 50; query++) {
+      final int packedRgb = random.nextInt(0x1000000);
+      final List<ProductMatch> matches = index.nearest(packedRgb, 10);
+      final List<Double> expectedDistances = linearScan(latestProducts.values(), packedRgb);
+
+      assertEquals(10, matches.size());
+      for (int rank = 0; rank < matches.size(); rank++) {
+        assertEquals(expectedDistances.get(rank), matches.get(rank).getDistance(), 1e-9);
+      }
+      assertEquals(10, matches.stream().map(ProductMatch::getProductId).distinct().count());
+    }
+    assertEquals(3000, index.size());
+  }
+
+  @Test
+  public void exactColorIsTheClosestMatch() {
+    final ProductColorIndex index = new ProductColorIndex(null, colorConversionService, searchProperties);
+    final Random random = new Random(7);
+    final List<Product> products = new ArrayList<>();
+    for (int product = 0; product < 500; product++) {
+      products.add(product("product-" + product, random));
+    }
+    index.index(products);
+
+    final ColorDistributionEntry dominantEntry = products.get(123).getProductImage().getColorDistribution()
+      .getColorDistributionEntries().stream()
+      .max(Comparator.naturalOrder())
+      .orElseThrow();
+    final ProductMatch match = index.nearest(dominantEntry.getColor().toPackedRgb(), 1).get(0);
+    assertTrue(match.getDistance() <= searchProperties.getShareWeight());
+  }
+
+  @Test
+  public void productsStoredWhileLoadingKeepTheirNewerPalette() {
+    final Random random = new Random(5);
+    final List<Product> storedProducts = new ArrayList<>();
+    for (int product = 0; product < 50; product++) {
+      storedProducts.add(product("product-" + product, random));
+    }
+    final Product restoredProduct = product("product-0", random);
+
+    final ProductRepository productRepository = mock(ProductRepository.class);
+    final ProductColorIndex index = new ProductColorIndex(productRepository, colorConversionService, searchProperties);
+    // the cursor read the stale palette before the restored product was stored, its event arrives first
+    when(productRepository.streamAllBy()).thenAnswer(invocation -> storedProducts.stream()
+      .peek(product -> {
+        if (product.getId().equals("product-0")) {
+          index.index(List.of(restoredProduct));
+        }
+      }));
+    index.loadNow();
+
+    final Map<String, Product> latestProducts = new HashMap<>();
+    storedProducts.forEach(product -> latestProducts.put(product.getId(), product));
+    latestProducts.put("product-0", restoredProduct);
+    for (final Product product : List.of(storedProducts.get(0), restoredProduct)) {
+      for (final ColorDistributionEntry entry : product.getProductImage().getColorDistribution()
+        .getColorDistributionEntries()) {
+        final int packedRgb = entry.getColor().toPackedRgb();
+        final List<Double> expectedDistances = linearScan(latestProducts.values(), packedRgb);
+        final List<ProductMatch> matches = index.nearest(packedRgb, 10);
+        for (int rank = 0; rank < matches.size(); rank++) {
+          assertEquals(expectedDistances.get(rank), matches.get(rank).getDistance(), 1e-9);
+        }
+      }
+    }
+    assertEquals(50, index.size());
+  }
+
+  // same scoring as the index, every dominant color of every product is compared
+  private List<Double> linearScan(final Iterable<Product> products, final int packedRgb) {
+    final long queryLab = colorConversionService.toPackedLab(packedRgb);
+    final List<Double> distances = new ArrayList<>();
+    for (final Product product : products) {
+      final List<ColorDistributionEntry> entries = product.getProductImage().getColorDistribution()
+        .getColorDistributionEntries();
+      final double shareAmount = entries.stream().mapToInt(ColorDistributionEntry::getShare).sum();
+      distances.add(entries.stream()
+        .filter(entry -> entry.getShare() / shareAmount >= searchProperties.getMinShare())
+        .sorted(Comparator.reverseOrder())
+        .limit(searchProperties.getMaxColors())
+        .mapToDouble(entry -> {
+          final long lab = colorConversionService.toPackedLab(entry.getColor().toPackedRgb());
+          final double deltaL = ColorConversionService.labL(queryLab) - ColorConversionService.labL(lab);
+          final double deltaA = ColorConversionService.labA(queryLab) - ColorConversionService.labA(lab);
+          final double deltaB = ColorConversionService.labB(queryLab) - ColorConversionService.labB(lab);
+          return Math.sqrt(deltaL * deltaL + deltaA * deltaA + deltaB * deltaB)
+            + searchProperties.getShareWeight() * (1 - entry.getShare() / shareAmount);
+        })
+        .min()
+        .orElse(Double.POSITIVE_INFINITY));
+    }
+    return distances.stream().sorted().limit(10).collect(Collectors.toList());
+  }
+
+  private Product product(final String id, final Random random) {
+    final List<ColorDistributionEntry> entries = new ArrayList<>();
+    for (int entry = 0; entry < 8; entry++) {
+      entries.add(ColorDistributionEntry.builder()
+        .color(RgbColor.fromPackedRgb(random.nextInt(0x1000000)))
+        .share(1 + random.nextInt(1000))
+        .build());
+    }
+
+    return Product.builder()
+      .id(id)
+      .productImage(ProductImage.builder()
+        .id("image-" + id)
+        .colorDistribution(ColorDistribution.builder().colorDistributionEntries(entries).build())
+        .build())
+      .build();
+  }
+}
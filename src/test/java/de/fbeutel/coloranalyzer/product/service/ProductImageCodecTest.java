@@ -0,0 +1,191 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorDistribution;
+import de.fbeutel.coloranalyzer.color.domain.ColorDistributionEntry;
+import de.fbeutel.coloranalyzer.color.domain.ColorTileCatalog;
+import de.fbeutel.coloranalyzer.color.domain.RgbColor;
+import de.fbeutel.coloranalyzer.color.service.ColorTileService;
+import de.fbeutel.coloranalyzer.color.service.ColorTileVersionRegistry;
+import de.fbeutel.coloranalyzer.product.domain.Product;
+import de.fbeutel.coloranalyzer.product.domain.ProductImage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ProductImageCodecTest {
+
+  private static final int TILES = 200;
+
+  private final ColorTileCatalog catalog = catalog();
+
+  @RegisterExtension
+  final EmbeddedMongo embeddedMongo = new EmbeddedMongo();
+
+  private ColorTileCatalog currentCatalog = catalog;
+  private ColorTileVersionRegistry colorTileVersionRegistry;
+
+  @BeforeEach
+  public void registerCatalog() {
+    final ColorTileService colorTileService = mock(ColorTileService.class);
+    when(colorTileService.getCatalog()).thenAnswer(invocation -> currentCatalog);
+    colorTileVersionRegistry = new ColorTileVersionRegistry(mongoTemplate(StorageFormat.DOCUMENT), colorTileService);
+  }
+
+  @Test
+  public void compactImagesDecodeToTheStoredImage() {
+    final MongoTemplate mongoTemplate = mongoTemplate(StorageFormat.COMPACT);
+    final Product product = product("product-1", catalog.getVersion());
+    mongoTemplate.save(product);
+
+    final Product storedProduct = mongoTemplate.findById("product-1", Product.class);
+    assertEquals(product.getProductImage().getColorDistribution(),
+      storedProduct.getProductImage().getColorDistribution());
+    assertEquals(catalog.getVersion(), storedProduct.getProductImage().getCatalogVersion());
+    product.getProductImage().getImageScores().forEach((name, score) ->
+      assertEquals(score, storedProduct.getProductImage().getImageScores().get(name), 1e-4));
+  }
+
+  @Test
+  public void compactImagesAreAFractionOfTheDocumentLayout() {
+    mongoTemplate(StorageFormat.DOCUMENT).save(product("product-1", catalog.getVersion()));
+    mongoTemplate(StorageFormat.COMPACT).save(product("product-2", catalog.getVersion()));
+
+    final int documentSize = storedSize("product-1");
+    final int compactSize = storedSize("product-2");
+    assertTrue(compactSize * 4 < documentSize, "compact " + compactSize + " bytes, document " + documentSize + " bytes");
+  }
+
+  @Test
+  public void compactImagesWithoutACatalogKeepTheirScoresByName() {
+    currentCatalog = ColorTileCatalog.EMPTY;
+    final MongoTemplate mongoTemplate = mongoTemplate(StorageFormat.COMPACT);
+    final Product product = product("product-1", null);
+    mongoTemplate.save(product);
+
+    final ProductImage storedImage = mongoTemplate.findById("product-1", Product.class).getProductImage();
+    assertEquals(product.getProductImage().getImageScores(), storedImage.getImageScores());
+    assertNull(storedImage.getCatalogVersion());
+  }
+
+  @Test
+  public void migrationRewritesDocumentImagesWithTheCurrentCatalog() {
+    mongoTemplate(StorageFormat.DOCUMENT).save(product("product-1", null));
+    mongoTemplate(StorageFormat.DOCUMENT).save(product("product-2", null));
+
+    final StorageProperties storageProperties = new StorageProperties();
+    storageProperties.setFormat(StorageFormat.COMPACT);
+    storageProperties.setMigrationBatchSize(1);
+    final ProductImageCodec codec = new ProductImageCodec(StorageFormat.COMPACT, () -> colorTileVersionRegistry);
+    final MongoTemplate mongoTemplate = embeddedMongo.mongoTemplate(codec);
+    final ProductStorageMigration migration = new ProductStorageMigration(mongoTemplate,
+      new ProductService(mongoTemplate, event -> { }, new SimpleMeterRegistry()), storageProperties, codec);
+
+    assertEquals(2, migration.migrate());
+    assertEquals(0, migration.migrate());
+    assertEquals(0, codec.droppedScores());
+    assertEquals(StorageFormat.COMPACT.name(), embeddedMongo.database().getCollection("product")
+      .find(new Document("_id", "product-2")).first().get("productImage", Document.class).getString("format"));
+    assertEquals(catalog.getVersion(),
+      mongoTemplate.findById("product-2", Product.class).getProductImage().getCatalogVersion());
+  }
+
+  @Test
+  public void migrationRewritesCompactImagesStoredWithoutACatalog() {
+    currentCatalog = ColorTileCatalog.EMPTY;
+    mongoTemplate(StorageFormat.COMPACT).save(product("product-1", null));
+    currentCatalog = catalog;
+
+    final StorageProperties storageProperties = new StorageProperties();
+    storageProperties.setFormat(StorageFormat.COMPACT);
+    final ProductImageCodec codec = new ProductImageCodec(StorageFormat.COMPACT, () -> colorTileVersionRegistry);
+    final MongoTemplate mongoTemplate = embeddedMongo.mongoTemplate(codec);
+    final ProductStorageMigration migration = new ProductStorageMigration(mongoTemplate,
+      new ProductService(mongoTemplate, event -> { }, new SimpleMeterRegistry()), storageProperties, codec);
+
+    assertEquals(1, migration.migrate());
+    assertEquals(0, migration.migrate());
+    final Document storedImage = embeddedMongo.database().getCollection("product")
+      .find(new Document("_id", "product-1")).first().get("productImage", Document.class);
+    assertNull(storedImage.get("imageScores"));
+    assertEquals(catalog.getVersion(),
+      mongoTemplate.findById("product-1", Product.class).getProductImage().getCatalogVersion());
+  }
+
+  @Test
+  public void migrationCountsScoresOfTilesMissingFromTheCurrentCatalog() {
+    final Product product = product("product-1", null);
+    product.getProductImage().getImageScores().put("Removed Tile", 1.0);
+    mongoTemplate(StorageFormat.DOCUMENT).save(product);
+
+    final StorageProperties storageProperties = new StorageProperties();
+    storageProperties.setFormat(StorageFormat.COMPACT);
+    final ProductImageCodec codec = new ProductImageCodec(StorageFormat.COMPACT, () -> colorTileVersionRegistry);
+    final MongoTemplate mongoTemplate = embeddedMongo.mongoTemplate(codec);
+    new ProductStorageMigration(mongoTemplate, new ProductService(mongoTemplate, event -> { }, new SimpleMeterRegistry()),
+      storageProperties, codec).migrate();
+
+    assertEquals(1, codec.droppedScores());
+    assertEquals(TILES, mongoTemplate.findById("product-1", Product.class).getProductImage().getImageScores().size());
+  }
+
+  private int storedSize(final String id) {
+    final Document document = embeddedMongo.database().getCollection("product")
+      .find(new Document("_id", id)).first();
+    return new RawBsonDocument(document, new DocumentCodec()).getByteBuffer().remaining();
+  }
+
+  private MongoTemplate mongoTemplate(final StorageFormat format) {
+    return embeddedMongo.mongoTemplate(format, () -> colorTileVersionRegistry);
+  }
+
+  private Product product(final String id, final String catalogVersion) {
+    final List<ColorDistributionEntry> entries = IntStream.range(0, 8)
+      .mapToObj(index -> ColorDistributionEntry.builder()
+        .color(RgbColor.fromPackedRgb(index * 0x1f2f3f))
+        .share(100 - index * 10)
+        .build())
+      .collect(Collectors.toList());
+
+    final Map<String, Double> scores = new HashMap<>();
+    for (int tile = 0; tile < TILES; tile++) {
+      scores.put(catalog.getNames()[tile], tile * 0.37);
+    }
+
+    return Product.builder()
+      .id(id)
+      .productImage(ProductImage.builder()
+        .id("image-" + id)
+        .url("https://images/image-" + id)
+        .colorDistribution(ColorDistribution.builder().colorDistributionEntries(entries).build())
+        .imageScores(scores)
+        .catalogVersion(catalogVersion)
+        .build())
+      .build();
+  }
+
+  private static ColorTileCatalog catalog() {
+    return ColorTileCatalog.EMPTY.toBuilder()
+      .version("0123456789abcdef")
+      .names(IntStream.range(0, TILES).mapToObj(tile -> "Feinsteinzeug Nr. " + tile).toArray(String[]::new))
+      .colors(IntStream.range(0, TILES).map(tile -> tile * 0x010203).toArray())
+      .build();
+  }
+}
@@ -0,0 +1,73 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import de.fbeutel.coloranalyzer.product.domain.Product;
+import de.fbeutel.coloranalyzer.product.domain.ProductImage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ProductServiceTest {
+
+  @RegisterExtension
+  final EmbeddedMongo embeddedMongo = new EmbeddedMongo();
+
+  private MongoTemplate mongoTemplate;
+  private SimpleMeterRegistry meterRegistry;
+  private ProductService productService;
+  private final List<Object> publishedEvents = new ArrayList<>();
+
+  @BeforeEach
+  public void createService() {
+    mongoTemplate = embeddedMongo.mongoTemplate();
+    meterRegistry = new SimpleMeterRegistry();
+    productService = new ProductService(mongoTemplate, publishedEvents::add, meterRegistry);
+  }
+
+  @Test
+  public void upsertAllIsIdempotent() {
+    productService.upsertAll(products(0, 20, 1.0));
+    productService.upsertAll(products(10, 30, 2.0));
+
+    assertEquals(30, mongoTemplate.count(new Query(), Product.class));
+    assertEquals(1.0, mongoTemplate.findById("product-5", Product.class).getProductImage().getImageScores().get("red"));
+    assertEquals(2.0, mongoTemplate.findById("product-15", Product.class).getProductImage().getImageScores().get("red"));
+    assertEquals(40, meterRegistry.get("coloranalyzer.products.persisted").counter().count());
+    assertEquals(2, meterRegistry.get("coloranalyzer.products.flush").timer().count());
+    assertEquals(2, publishedEvents.size());
+  }
+
+  @Test
+  public void findExistingIdsReturnsOnlyStoredIds() {
+    productService.upsertAll(products(0, 10, 1.0));
+
+    final List<String> candidates = IntStream.range(5, 15).mapToObj(index -> "product-" + index).collect(Collectors.toList());
+    assertEquals(Set.of("product-5", "product-6", "product-7", "product-8", "product-9"),
+      productService.findExistingIds(candidates));
+  }
+
+  private List<Product> products(final int from, final int to, final double score) {
+    return IntStream.range(from, to)
+      .mapToObj(index -> Product.builder()
+        .id("product-" + index)
+        .productImage(ProductImage.builder()
+          .id("image-" + index)
+          .url("https://images/image-" + index)
+          .imageScores(Map.of("red", score))
+          .build())
+        .build())
+      .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,289 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.client.MongoCollection;
+
+import de.fbeutel.coloranalyzer.color.domain.ColorDistribution;
+import de.fbeutel.coloranalyzer.color.domain.ColorDistributionEntry;
+import de.fbeutel.coloranalyzer.color.domain.ColorTileCatalog;
+import de.fbeutel.coloranalyzer.color.domain.RgbColor;
+import de.fbeutel.coloranalyzer.color.domain.TileScores;
+import de.fbeutel.coloranalyzer.color.service.ColorConversionService;
+import de.fbeutel.coloranalyzer.color.service.ColorDistanceService;
+import de.fbeutel.coloranalyzer.color.service.ColorTileService;
+import de.fbeutel.coloranalyzer.color.service.ColorTileVersionRegistry;
+import de.fbeutel.coloranalyzer.color.service.ImageScoringService;
+import de.fbeutel.coloranalyzer.product.domain.Product;
+import de.fbeutel.coloranalyzer.product.domain.ProductImage;
+import de.fbeutel.coloranalyzer.product.domain.ProductStoredEvent;
+import de.fbeutel.coloranalyzer.product.domain.RescoringCheckpoint;
+
+public class RescoringJobTest {
+
+  private final ColorConversionService colorConversionService = new ColorConversionService(false);
+  private final ColorTileService colorTileService = mock(ColorTileService.class);
+  private final ImageScoringService imageScoringService = new ImageScoringService(
+    new ColorDistanceService(colorConversionService), colorConversionService, colorTileService, Integer.MAX_VALUE);
+
+  private final ColorTileCatalog previousCatalog = catalog("previous", Map.of(
+    "red", 0xff0000, "green", 0x00ff00, "blue", 0x0000ff, "grey", 0x808080));
+  // green recolored, yellow added, grey removed
+  private final ColorTileCatalog currentCatalog = catalog("current", Map.of(
+    "red", 0xff0000, "green", 0x20c020, "blue", 0x0000ff, "yellow", 0xffff00));
+
+  @RegisterExtension
+  final EmbeddedMongo embeddedMongo = new EmbeddedMongo();
+
+  private ColorTileVersionRegistry colorTileVersionRegistry;
+  private final List<Object> publishedEvents = new ArrayList<>();
+
+  @BeforeEach
+  public void registerPreviousCatalog() {
+    when(colorTileService.getCatalog()).thenReturn(previousCatalog);
+    colorTileVersionRegistry = new ColorTileVersionRegistry(mongoTemplate(StorageFormat.DOCUMENT), colorTileService);
+    colorTileVersionRegistry.register(previousCatalog);
+  }
+
+  @Test
+  public void documentImagesGetTheScoresOfTheCurrentCatalog() {
+    assertRescored(StorageFormat.DOCUMENT);
+  }
+
+  @Test
+  public void compactImagesGetTheScoresOfTheCurrentCatalog() {
+    assertRescored(StorageFormat.COMPACT);
+  }
+
+  @Test
+  public void rescoringResumesAfterTheCheckpoint() {
+    final MongoTemplate mongoTemplate = mongoTemplate(StorageFormat.DOCUMENT);
+    storeProducts(mongoTemplate, 30);
+    colorTileVersionRegistry.register(currentCatalog);
+    mongoTemplate.save(RescoringCheckpoint.builder()
+      .catalogVersion("current")
+      .lastProductId("product-19")
+      .processedProducts(20)
+      .startedAt(Instant.now())
+      .build());
+
+    final RescoringCheckpoint checkpoint = rescoringJob(mongoTemplate, StorageFormat.DOCUMENT).rescore(currentCatalog);
+
+    assertNotNull(checkpoint.getCompletedAt());
+    assertEquals(30, checkpoint.getProcessedProducts());
+    assertEquals(10, checkpoint.getRescoredProducts());
+    assertEquals("previous", mongoTemplate.findById("product-19", Product.class).getProductImage().getCatalogVersion());
+    assertEquals("current", mongoTemplate.findById("product-20", Product.class).getProductImage().getCatalogVersion());
+  }
+
+  @Test
+  public void onlyProductsStillOnTheirVersionArePublished() {
+    final MongoTemplate mongoTemplate = mongoTemplate(StorageFormat.DOCUMENT);
+    storeProducts(mongoTemplate, 12);
+    // an import stores product-00 again while the first batches are scored
+    final AtomicBoolean imported = new AtomicBoolean();
+    final ImageScoringService importingScoringService = new ImageScoringService(
+      new ColorDistanceService(colorConversionService), colorConversionService, colorTileService, Integer.MAX_VALUE) {
+      @Override
+      public TileScores calculateScores(final ColorDistribution colorDistribution, final ColorTileCatalog catalog) {
+        if (imported.compareAndSet(false, true)) {
+          mongoTemplate.updateFirst(query(where("_id").is("product-00")),
+            Update.update("productImage.catalogVersion", "imported"), Product.class);
+        }
+        return super.calculateScores(colorDistribution, catalog);
+      }
+    };
+
+    final RescoringCheckpoint checkpoint = rescoringJob(mongoTemplate, StorageFormat.DOCUMENT, importingScoringService,
+      rescoringProperties()).rescore(currentCatalog);
+
+    assertEquals(11, checkpoint.getRescoredProducts());
+    assertEquals("imported", mongoTemplate.findById("product-00", Product.class).getProductImage().getCatalogVersion());
+    final List<Product> publishedProducts = publishedProducts();
+    assertEquals(11, publishedProducts.size());
+    assertTrue(publishedProducts.stream()
+      .allMatch(product -> !product.getId().equals("product-00")
+        && product.getProductImage().getCatalogVersion().equals("current")));
+  }
+
+  @Test
+  public void productsWithoutAColorDistributionAreCountedAsSkipped() {
+    final MongoTemplate mongoTemplate = mongoTemplate(StorageFormat.DOCUMENT);
+    storeProducts(mongoTemplate, 10);
+    mongoTemplate.updateFirst(query(where("_id").is("product-04")), new Update().unset("productImage.colorDistribution"),
+      Product.class);
+
+    final RescoringCheckpoint checkpoint = rescoringJob(mongoTemplate, StorageFormat.DOCUMENT).rescore(currentCatalog);
+
+    assertEquals(10, checkpoint.getProcessedProducts());
+    assertEquals(9, checkpoint.getRescoredProducts());
+    assertEquals(1, checkpoint.getSkippedProducts());
+  }
+
+  @Test
+  public void productsWithoutACatalogVersionAreOnlyRescoredOnRequest() {
+    final MongoTemplate mongoTemplate = mongoTemplate(StorageFormat.DOCUMENT);
+    storeProducts(mongoTemplate, 10);
+    mongoTemplate.updateMulti(query(where("_id").lt("product-04")), new Update().unset("productImage.catalogVersion"),
+      Product.class);
+
+    assertEquals(6, rescoringJob(mongoTemplate, StorageFormat.DOCUMENT).rescore(currentCatalog).getRescoredProducts());
+    assertNull(mongoTemplate.findById("product-00", Product.class).getProductImage().getCatalogVersion());
+
+    final RescoringProperties rescoringProperties = rescoringProperties();
+    rescoringProperties.setRescoreUnversioned(true);
+    final ColorTileCatalog nextCatalog = currentCatalog.toBuilder().version("next").build();
+    assertEquals(10, rescoringJob(mongoTemplate, StorageFormat.DOCUMENT, imageScoringService, rescoringProperties)
+      .rescore(nextCatalog).getRescoredProducts());
+    assertEquals("next", mongoTemplate.findById("product-00", Product.class).getProductImage().getCatalogVersion());
+  }
+
+  @Test
+  public void compactImagesStoredWithoutACatalogLoseTheirScoresByName() {
+    final MongoTemplate mongoTemplate = mongoTemplate(StorageFormat.COMPACT);
+    storeProducts(mongoTemplate, 4);
+    final MongoCollection<Document> collection = embeddedMongo.database().getCollection("product");
+    collection.updateOne(new Document("_id", "product-00"), new Document("$set",
+      new Document("productImage.imageScores", new Document("red", 1.0)))
+      .append("$unset", new Document("productImage.scores", "").append("productImage.catalogVersion", "")));
+
+    final RescoringProperties rescoringProperties = rescoringProperties();
+    rescoringProperties.setRescoreUnversioned(true);
+    assertEquals(4, rescoringJob(mongoTemplate, StorageFormat.COMPACT, imageScoringService, rescoringProperties)
+      .rescore(currentCatalog).getRescoredProducts());
+
+    final Document storedImage = collection.find(new Document("_id", "product-00")).first()
+      .get("productImage", Document.class);
+    assertNull(storedImage.get("imageScores"));
+    assertNotNull(storedImage.get("scores"));
+    assertEquals("current", storedImage.getString("catalogVersion"));
+  }
+
+  private void assertRescored(final StorageFormat format) {
+    final MongoTemplate mongoTemplate = mongoTemplate(format);
+    final List<Product> products = storeProducts(mongoTemplate, 25);
+
+    final RescoringCheckpoint checkpoint = rescoringJob(mongoTemplate, format).rescore(currentCatalog);
+
+    assertEquals(25, checkpoint.getRescoredProducts());
+    assertEquals("product-24", checkpoint.getLastProductId());
+    for (final Product product : products) {
+      final ProductImage image = mongoTemplate.findById(product.getId(), Product.class).getProductImage();
+      final Map<String, Double> expectedScores = imageScoringService
+        .calculateScores(product.getProductImage().getColorDistribution(), currentCatalog).toMap();
+
+      assertEquals("current", image.getCatalogVersion());
+      assertEquals(expectedScores.keySet(), image.getImageScores().keySet());
+      expectedScores.forEach((tile, score) -> assertEquals(score, image.getImageScores().get(tile), 1e-4));
+      assertEquals(product.getProductImage().getColorDistribution(), image.getColorDistribution());
+    }
+    assertFalse(publishedEvents.isEmpty());
+    assertEquals(25, publishedProducts().size());
+  }
+
+  private List<Product> publishedProducts() {
+    return publishedEvents.stream()
+      .flatMap(event -> ((ProductStoredEvent) event).getProducts().stream())
+      .collect(Collectors.toList());
+  }
+
+  private RescoringJob rescoringJob(final MongoTemplate mongoTemplate, final StorageFormat format) {
+    return rescoringJob(mongoTemplate, format, imageScoringService, rescoringProperties());
+  }
+
+  private RescoringJob rescoringJob(final MongoTemplate mongoTemplate, final StorageFormat format,
+                                    final ImageScoringService imageScoringService,
+                                    final RescoringProperties rescoringProperties) {
+    final StorageProperties storageProperties = new StorageProperties();
+    storageProperties.setFormat(format);
+    return new RescoringJob(mongoTemplate, colorTileService, colorTileVersionRegistry, imageScoringService,
+      publishedEvents::add, rescoringProperties, storageProperties);
+  }
+
+  private RescoringProperties rescoringProperties() {
+    final RescoringProperties rescoringProperties = new RescoringProperties();
+    rescoringProperties.setBatchSize(4);
+    rescoringProperties.setThreads(3);
+    return rescoringProperties;
+  }
+
+  private List<Product> storeProducts(final MongoTemplate mongoTemplate, final int count) {
+    final Random random = new Random(3);
+    final List<Product> products = new ArrayList<>();
+    for (int product = 0; product < count; product++) {
+      final List<ColorDistributionEntry> entries = new ArrayList<>();
+      for (int entry = 0; entry < 5; entry++) {
+        entries.add(ColorDistributionEntry.builder()
+          .color(RgbColor.fromPackedRgb(random.nextInt(0x1000000)))
+          .share(1 + random.nextInt(100))
+          .build());
+      }
+      final ColorDistribution distribution = ColorDistribution.builder().colorDistributionEntries(entries).build();
+
+      products.add(mongoTemplate.save(Product.builder()
+        .id(String.format("product-%02d", product))
+        .productImage(ProductImage.builder()
+          .id("image-" + product)
+          .colorDistribution(distribution)
+          .imageScores(imageScoringService.calculateScores(distribution, previousCatalog).toMap())
+          .catalogVersion("previous")
+          .build())
+        .build()));
+    }
+    return products;
+  }
+
+  private MongoTemplate mongoTemplate(final StorageFormat format) {
+    return embeddedMongo.mongoTemplate(format, () -> colorTileVersionRegistry);
+  }
+
+  private ColorTileCatalog catalog(final String version, final Map<String, Integer> tiles) {
+    final Map<String, Integer> orderedTiles = new LinkedHashMap<>(tiles);
+    final int size = orderedTiles.size();
+    final String[] names = orderedTiles.keySet().toArray(new String[0]);
+    final int[] colors = new int[size];
+    final double[] lightness = new double[size];
+    final double[] a = new double[size];
+    final double[] b = new double[size];
+    for (int tile = 0; tile < size; tile++) {
+      colors[tile] = orderedTiles.get(names[tile]);
+      final long packedLab = colorConversionService.toPackedLab(colors[tile]);
+      lightness[tile] = ColorConversionService.labL(packedLab);
+      a[tile] = ColorConversionService.labA(packedLab);
+      b[tile] = ColorConversionService.labB(packedLab);
+    }
+
+    return ColorTileCatalog.builder()
+      .version(version)
+      .names(names)
+      .colors(colors)
+      .lightness(lightness)
+      .a(a)
+      .b(b)
+      .build();
+  }
+}
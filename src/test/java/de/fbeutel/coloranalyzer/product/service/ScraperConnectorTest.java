@@ -0,0 +1,170 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.fbeutel.coloranalyzer.product.domain.ProductData;
+
+public class ScraperConnectorTest {
+
+  private static final int MAX_CONCURRENT_REQUESTS_PER_HOST = 3;
+  private static final Pattern PAGE_PATTERN = Pattern.compile("p=(\\d+)");
+
+  private final AtomicInteger activeRequests = new AtomicInteger();
+  private final AtomicInteger maxActiveRequests = new AtomicInteger();
+
+  private HttpServer stubServer;
+  private int failingPage;
+
+  @BeforeEach
+  public void startStubServer() throws IOException {
+    stubServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    stubServer.setExecutor(Executors.newCachedThreadPool());
+    stubServer.createContext("/scrape/productLinks", this::productLinks);
+    stubServer.createContext("/scrape/productData", this::productData);
+    stubServer.start();
+  }
+
+  @AfterEach
+  public void stopStubServer() {
+    stubServer.stop(0);
+  }
+
+  @Test
+  public void blockingConnectorFetchesAllPagesInOrder() {
+    assertEquals(expectedUrls(), scraperConnector(ExecutorMode.PLATFORM).fetchProductUrls("kleid"));
+    assertEquals(1, maxActiveRequests.get());
+  }
+
+  @Test
+  public void blockingConnectorInVirtualModeFetchesAllPagesInOrderWithinTheHostLimit() {
+    assertEquals(expectedUrls(), scraperConnector(ExecutorMode.VIRTUAL).fetchProductUrls("kleid"));
+    assertTrue(maxActiveRequests.get() > 1, "pages should be fetched concurrently");
+    assertTrue(maxActiveRequests.get() <= MAX_CONCURRENT_REQUESTS_PER_HOST,
+      "at most " + MAX_CONCURRENT_REQUESTS_PER_HOST + " concurrent requests, was " + maxActiveRequests.get());
+  }
+
+  @Test
+  public void reactiveConnectorFetchesAllPagesInOrderWithinTheHostLimit() {
+    assertEquals(expectedUrls(), new ReactiveScraperConnector(WebClient.builder(), connectorProperties())
+      .fetchProductUrls("kleid"));
+    assertTrue(maxActiveRequests.get() > 1, "pages should be fetched concurrently");
+    assertTrue(maxActiveRequests.get() <= MAX_CONCURRENT_REQUESTS_PER_HOST,
+      "at most " + MAX_CONCURRENT_REQUESTS_PER_HOST + " concurrent requests, was " + maxActiveRequests.get());
+  }
+
+  @Test
+  public void reactiveConnectorFetchesProductData() {
+    final ReactiveScraperConnector scraperConnector = new ReactiveScraperConnector(WebClient.builder(),
+      connectorProperties());
+    try {
+      final ProductData productData = scraperConnector.fetchProductData("https://www.otto.de/p/kleid-123");
+      assertEquals("kleid-123", productData.getId());
+      assertEquals(List.of("image-1", "image-2"), productData.getImages());
+    } finally {
+      scraperConnector.disposeConnections();
+    }
+  }
+
+  @Test
+  public void reactiveConnectorFailsWhenAPageFails() {
+    failingPage = 3;
+    final ReactiveScraperConnector scraperConnector = new ReactiveScraperConnector(WebClient.builder(),
+      connectorProperties());
+    try {
+      assertThrows(WebClientResponseException.class, () -> scraperConnector.fetchProductUrls("kleid"));
+    } finally {
+      scraperConnector.disposeConnections();
+    }
+  }
+
+  private ScraperConnector scraperConnector(final ExecutorMode executorMode) {
+    final ConnectorProperties connectorProperties = connectorProperties();
+    final ImportProperties importProperties = new ImportProperties();
+    importProperties.setExecutorMode(executorMode);
+
+    return new BlockingScraperConnector(new RestTemplateBuilder(), connectorProperties,
+      new HostConcurrencyLimiter(connectorProperties), importProperties);
+  }
+
+  private ConnectorProperties connectorProperties() {
+    final ConnectorProperties connectorProperties = new ConnectorProperties();
+    connectorProperties.setScraperBaseUrl("http://localhost:" + stubServer.getAddress().getPort());
+    connectorProperties.setMaxConcurrentRequestsPerHost(MAX_CONCURRENT_REQUESTS_PER_HOST);
+    connectorProperties.setPageConcurrency(connectorProperties.getSearchResultPages());
+    return connectorProperties;
+  }
+
+  private List<String> expectedUrls() {
+    final List<String> urls = new ArrayList<>();
+    for (int page = 1; page <= 8; page++) {
+      urls.add("/p/" + page + "-a");
+      urls.add("/p/" + page + "-b");
+    }
+    return urls;
+  }
+
+  private void productLinks(final HttpExchange exchange) throws IOException {
+    final int active = activeRequests.incrementAndGet();
+    maxActiveRequests.accumulateAndGet(active, Math::max);
+    try {
+      // the connector encodes the scraped url before the uri builder encodes the whole query again
+      final String query = URLDecoder.decode(exchange.getRequestURI().getQuery(), StandardCharsets.UTF_8);
+      final Matcher matcher = PAGE_PATTERN.matcher(query);
+      final String page = matcher.find() ? matcher.group(1) : "0";
+      Thread.sleep(100);
+      if (page.equals(String.valueOf(failingPage))) {
+        exchange.sendResponseHeaders(502, -1);
+        return;
+      }
+
+      final byte[] body = ("{\"urls\":[\"/p/" + page + "-a\",\"/p/" + page + "-b\"]}").getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream responseBody = exchange.getResponseBody()) {
+        responseBody.write(body);
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      exchange.sendResponseHeaders(500, -1);
+    } finally {
+      activeRequests.decrementAndGet();
+      exchange.close();
+    }
+  }
+
+  private void productData(final HttpExchange exchange) throws IOException {
+    final String url = URLDecoder.decode(exchange.getRequestURI().getQuery(), StandardCharsets.UTF_8);
+    final String id = url.substring(url.lastIndexOf('/') + 1);
+    final byte[] body = ("{\"id\":\"" + id + "\",\"images\":[\"image-1\",\"image-2\"]}")
+      .getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream responseBody = exchange.getResponseBody()) {
+      responseBody.write(body);
+    }
+  }
+}
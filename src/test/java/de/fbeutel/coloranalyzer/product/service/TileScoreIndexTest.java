@@ -0,0 +1,134 @@
+package de.fbeutel.coloranalyzer.product.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import de.fbeutel.coloranalyzer.product.domain.Product;
+import de.fbeutel.coloranalyzer.product.domain.ProductImage;
+import de.fbeutel.coloranalyzer.product.domain.TileScoreMatch;
+
+public class TileScoreIndexTest {
+
+  private static final List<String> TILES = List.of("red-1", "green-1", "blue-1", "grey-1");
+
+  private final SearchProperties searchProperties = new SearchProperties();
+  private final Random random = new Random(11);
+
+  @Test
+  public void bestProductsMatchASortedScan() {
+    searchProperties.setTileRebuildThreshold(2000);
+    final TileScoreIndex index = new TileScoreIndex(null, searchProperties);
+    final Map<String, Product> latestProducts = new HashMap<>();
+
+    for (int batch = 0; batch < 20; batch++) {
+      final List<Product> products = new ArrayList<>();
+      for (int product = 0; product < 100; product++) {
+        // later batches store some of the earlier products again with new scores
+        final int id = batch < 10 ? batch * 100 + product : random.nextInt(1000);
+        products.add(product("product-" + id));
+      }
+      index.index(products);
+      products.forEach(product -> latestProducts.put(product.getId(), product));
+      // queries merge the rebuilt arrays with the scores stored since
+      if (batch % 5 == 0) {
+        index.rebuildNow();
+      }
+    }
+
+    assertMatchesASortedScan(index, latestProducts);
+
+    // and once every stored score is in the arrays
+    index.rebuildNow();
+    assertMatchesASortedScan(index, latestProducts);
+  }
+
+  @Test
+  public void productsReturningToAPendingScoreStayIndexed() throws Exception {
+    searchProperties.setTileRebuildThreshold(Integer.MAX_VALUE);
+    final TileScoreIndex index = new TileScoreIndex(null, searchProperties);
+    final Product first = product("product-1");
+    final Product second = product("product-1");
+
+    // rebuilds merge the pending entries while the product keeps switching between two scores
+    final CompletableFuture<Void> rebuilds = CompletableFuture.runAsync(() -> {
+      for (int rebuild = 0; rebuild < 200; rebuild++) {
+        index.rebuildNow();
+      }
+    });
+    while (!rebuilds.isDone()) {
+      index.index(List.of(second));
+      index.index(List.of(first));
+    }
+    rebuilds.get();
+    index.rebuildNow();
+
+    assertEquals(0, index.pendingEntries());
+    for (final String tile : TILES) {
+      assertEquals(List.of(TileScoreMatch.builder()
+        .productId("product-1")
+        .score(first.getProductImage().getImageScores().get(tile).floatValue())
+        .build()), index.best(tile, 0, 10, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY).orElseThrow());
+    }
+  }
+
+  @Test
+  public void unknownTileHasNoResult() {
+    final TileScoreIndex index = new TileScoreIndex(null, searchProperties);
+    index.index(List.of(product("product-1")));
+
+    assertTrue(index.best("purple-9", 0, 10, 0, 100).isEmpty());
+  }
+
+  private void assertMatchesASortedScan(final TileScoreIndex index, final Map<String, Product> latestProducts) {
+    for (final String tile : TILES) {
+      final List<TileScoreMatch> expected = sortedScan(latestProducts, tile);
+
+      assertEquals(expected.subList(0, 20), index.best(tile, 0, 20, Double.NEGATIVE_INFINITY,
+        Double.POSITIVE_INFINITY).orElseThrow());
+      assertEquals(expected.subList(40, 60), index.best(tile, 40, 20, Double.NEGATIVE_INFINITY,
+        Double.POSITIVE_INFINITY).orElseThrow());
+
+      final List<TileScoreMatch> range = index.best(tile, 0, 100, 20, 22).orElseThrow();
+      assertEquals(expected.stream()
+        .filter(match -> match.getScore() >= 20 && match.getScore() <= 22)
+        .limit(100)
+        .collect(Collectors.toList()), range);
+      assertTrue(range.stream().allMatch(match -> match.getScore() >= 20 && match.getScore() <= 22));
+    }
+  }
+
+  private List<TileScoreMatch> sortedScan(final Map<String, Product> products, final String tile) {
+    return products.values().stream()
+      .map(product -> TileScoreMatch.builder()
+        .productId(product.getId())
+        .score(product.getProductImage().getImageScores().get(tile).floatValue())
+        .build())
+      .sorted(Comparator.comparingDouble(TileScoreMatch::getScore).thenComparing(TileScoreMatch::getProductId))
+      .collect(Collectors.toList());
+  }
+
+  private Product product(final String id) {
+    final Map<String, Double> scores = new HashMap<>();
+    // coarse scores, so many products share a score and the product id decides the order
+    TILES.forEach(tile -> scores.put(tile, random.nextInt(400) / 10.0));
+
+    return Product.builder()
+      .id(id)
+      .productImage(ProductImage.builder()
+        .id("image-" + id)
+        .imageScores(scores)
+        .build())
+      .build();
+  }
+}
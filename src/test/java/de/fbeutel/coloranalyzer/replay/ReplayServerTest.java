@@ -0,0 +1,140 @@
+package de.fbeutel.coloranalyzer.replay;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class ReplayServerTest {
+
+  private static final byte[] IMAGE = randomBytes(100_000);
+  private static final List<String> PATHS = List.of("/scraper/search?q=hose&page=2", "/images/image-1.jpg",
+    "/images/missing.jpg", "/tiles");
+
+  private final HttpClient httpClient = HttpClient.newHttpClient();
+  private final AtomicInteger upstreamRequests = new AtomicInteger();
+
+  @TempDir
+  Path archive;
+
+  private HttpServer upstream;
+  private ReplayServer replayServer;
+
+  @BeforeEach
+  public void startUpstream() throws IOException {
+    upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    upstream.createContext("/scraper", exchange -> respond(exchange, 200, "application/json",
+      ("{\"query\":\"" + exchange.getRequestURI().getQuery() + "\"}").getBytes(UTF_8)));
+    upstream.createContext("/otto/image-1.jpg", exchange -> respond(exchange, 200, "image/jpeg", IMAGE));
+    upstream.createContext("/otto/missing.jpg", exchange -> respond(exchange, 404, null, new byte[0]));
+    upstream.createContext("/tiles", exchange -> respond(exchange, 200, "application/json", "{}".getBytes(UTF_8)));
+    upstream.start();
+  }
+
+  @AfterEach
+  public void stopServers() {
+    if (replayServer != null) {
+      replayServer.stop();
+    }
+    upstream.stop(0);
+  }
+
+  @Test
+  public void replayedResponsesEqualTheRecordedOnes() throws IOException {
+    final String upstreamUrl = "http://localhost:" + upstream.getAddress().getPort();
+    replayServer = server(ReplayServer.Mode.RECORD, Map.of("/scraper", upstreamUrl + "/scraper",
+      "/images/", upstreamUrl + "/otto/", "/tiles", upstreamUrl + "/tiles"));
+    final List<HttpResponse<byte[]>> recorded = PATHS.stream().map(this::get).toList();
+    replayServer.stop();
+    upstream.stop(0);
+
+    replayServer = server(ReplayServer.Mode.REPLAY, Map.of());
+    for (int request = 0; request < PATHS.size(); request++) {
+      final HttpResponse<byte[]> replayed = get(PATHS.get(request));
+      assertEquals(recorded.get(request).statusCode(), replayed.statusCode(), PATHS.get(request));
+      assertEquals(recorded.get(request).headers().firstValue("Content-Type"),
+        replayed.headers().firstValue("Content-Type"), PATHS.get(request));
+      assertArrayEquals(recorded.get(request).body(), replayed.body(), PATHS.get(request));
+    }
+    assertArrayEquals(IMAGE, get("/images/image-1.jpg").body());
+    assertEquals(404, get("/images/image-2.jpg").statusCode());
+    assertEquals(PATHS.size(), upstreamRequests.get());
+  }
+
+  @Test
+  public void malformedArchiveEntriesFailTheStart() throws IOException {
+    Files.write(archive.resolve("truncated.http"), "GET /tiles\n200\n".getBytes(UTF_8));
+    final ReplayServer server = new ReplayServer(ReplayServer.Mode.REPLAY, archive, Map.of(), 0, 0, 0);
+
+    final IOException exception = assertThrows(IOException.class, () -> server.start(0));
+    assertTrue(exception.getMessage().contains("truncated.http"), exception.getMessage());
+  }
+
+  @Test
+  public void archiveEntriesWithoutAValidStatusFailTheStart() throws IOException {
+    Files.write(archive.resolve("status.http"), "GET /tiles\nok\napplication/json\n\n{}".getBytes(UTF_8));
+    final ReplayServer server = new ReplayServer(ReplayServer.Mode.REPLAY, archive, Map.of(), 0, 0, 0);
+
+    final IOException exception = assertThrows(IOException.class, () -> server.start(0));
+    assertTrue(exception.getMessage().contains("status.http"), exception.getMessage());
+  }
+
+  private ReplayServer server(final ReplayServer.Mode mode, final Map<String, String> routes) throws IOException {
+    final ReplayServer server = new ReplayServer(mode, archive, routes, 0, 0, 0);
+    server.start(0);
+    return server;
+  }
+
+  private HttpResponse<byte[]> get(final String path) {
+    try {
+      return httpClient.send(HttpRequest.newBuilder(URI.create("http://localhost:" + replayServer.port() + path))
+        .build(), HttpResponse.BodyHandlers.ofByteArray());
+    } catch (IOException exception) {
+      throw new IllegalStateException(exception);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(exception);
+    }
+  }
+
+  private void respond(final HttpExchange exchange, final int status, final String contentType, final byte[] body)
+    throws IOException {
+    upstreamRequests.incrementAndGet();
+    if (contentType != null) {
+      exchange.getResponseHeaders().add("Content-Type", contentType);
+    }
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    try (OutputStream responseBody = exchange.getResponseBody()) {
+      responseBody.write(body);
+    }
+  }
+
+  private static byte[] randomBytes(final int length) {
+    final byte[] bytes = new byte[length];
+    new Random(42).nextBytes(bytes);
+    return bytes;
+  }
+}